@@ -24,21 +24,19 @@ public final class R {
         public static final int activity_vertical_margin=0x7f050001;
     }
     public static final class drawable {
-        public static final int floor_texture_0=0x7f020000;
-        public static final int floor_texture_1=0x7f020001;
-        public static final int floor_texture_2=0x7f020002;
-        public static final int floor_texture_3=0x7f020003;
-        public static final int floor_texture_4=0x7f020004;
-        public static final int floor_texture_5=0x7f020005;
-        public static final int foi_texture=0x7f020006;
-        public static final int ic_launcher=0x7f020007;
+        public static final int foi_texture=0x7f020000;
+        public static final int ic_launcher=0x7f020001;
     }
     public static final class id {
         public static final int btn_play=0x7f090000;
         public static final int button_camera=0x7f090008;
         public static final int button_choose_floor_texture=0x7f090007;
         public static final int button_gallery=0x7f090009;
+        public static final int frame_stats=0x7f09000a;
         public static final int gl_surface_view=0x7f090006;
+        public static final int menu_export_frame_stats=0x7f09000d;
+        public static final int menu_frame_stats=0x7f09000b;
+        public static final int menu_gpu_timing=0x7f09000c;
         public static final int textView1=0x7f090002;
         public static final int textView2=0x7f090003;
         public static final int textView3=0x7f090001;
@@ -49,19 +47,21 @@ public final class R {
         public static final int activity_main=0x7f030000;
         public static final int activity_play=0x7f030001;
     }
+    public static final class menu {
+        public static final int play=0x7f0a0000;
+    }
     public static final class raw {
-        public static final int color_fragment_shader=0x7f040000;
-        public static final int color_vertex_shader=0x7f040001;
-        public static final int lesson_seven_fragment_shader=0x7f040002;
-        public static final int lesson_seven_vertex_shader=0x7f040003;
-        public static final int per_pixel_fragment_shader=0x7f040004;
-        public static final int per_pixel_fragment_shader_no_tex=0x7f040005;
-        public static final int per_pixel_fragment_shader_tex_and_light=0x7f040006;
-        public static final int per_pixel_vertex_shader=0x7f040007;
-        public static final int per_pixel_vertex_shader_no_tex=0x7f040008;
-        public static final int per_pixel_vertex_shader_tex_and_light=0x7f040009;
-        public static final int point_fragment_shader=0x7f04000a;
-        public static final int point_vertex_shader=0x7f04000b;
+        public static final int floor_texture_0=0x7f040000;
+        public static final int floor_texture_1=0x7f040001;
+        public static final int floor_texture_2=0x7f040002;
+        public static final int floor_texture_3=0x7f040003;
+        public static final int floor_texture_4=0x7f040004;
+        public static final int floor_texture_5=0x7f040005;
+        public static final int foi_scene=0x7f040006;
+        public static final int lighting=0x7f040007;
+        public static final int lights=0x7f040008;
+        public static final int uber_fragment_shader=0x7f040009;
+        public static final int uber_vertex_shader=0x7f04000a;
     }
     public static final class string {
         public static final int about_1=0x7f060007;
@@ -72,6 +72,11 @@ public final class R {
         public static final int app_name=0x7f060000;
         public static final int choose_floor_texture=0x7f060004;
         public static final int demo=0x7f060003;
+        public static final int export_frame_stats=0x7f06000e;
+        public static final int frame_stats=0x7f06000c;
+        public static final int frame_stats_export_failed=0x7f060010;
+        public static final int frame_stats_exported=0x7f06000f;
+        public static final int gpu_timing=0x7f06000d;
         public static final int main=0x7f060001;
         public static final int play=0x7f060002;
         public static final int set_foi_texture_camera=0x7f060005;
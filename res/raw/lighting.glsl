@@ -0,0 +1,32 @@
+// Per-pixel diffuse lighting from the point lights, included by the fragment shader.
+
+#include "lights.glsl"
+
+varying vec3 v_Position;		// Interpolated position for this fragment.
+varying vec3 v_Normal;         	// Interpolated normal for this fragment.
+
+vec3 diffuseLighting()
+{
+	vec3 normal = normalize(v_Normal);
+
+    // Start with the ambient lighting.
+	vec3 lighting = vec3(0.7);
+
+	for (int i = 0; i < LIGHT_COUNT; i++) {
+		// Get a lighting direction vector from the vertex to the light.
+		vec3 lightVector = u_LightPos[i] - v_Position;
+
+		// Calculate the dot product of the light vector and vertex normal, attenuated with the distance.
+		// If the normal and light vector are pointing in the same direction then it will get max illumination.
+#ifdef VERTEX_ATTENUATION
+		float diffuse = max(dot(normal, normalize(lightVector)), 0.0) * v_Attenuation[i];
+#else
+		float distance = length(lightVector);
+		float diffuse = max(dot(normal, lightVector / distance), 0.0) * attenuation(distance);
+#endif
+
+		lighting += u_LightColor[i] * diffuse;
+	}
+
+	return lighting;
+}
@@ -0,0 +1,15 @@
+// The point lights, included by both shaders. ShaderVariants defines LIGHT_COUNT.
+// Uniforms used by both shaders need the same precision, so it is explicit.
+
+uniform mediump vec3 u_LightPos[LIGHT_COUNT];		// The positions of the lights in eye space.
+uniform mediump vec3 u_LightColor[LIGHT_COUNT];		// The colors of the lights.
+
+#ifdef VERTEX_ATTENUATION
+varying mediump float v_Attenuation[LIGHT_COUNT];	// Attenuation of each light, computed per vertex.
+#endif
+
+// Attenuation of a light at the given distance.
+mediump float attenuation(mediump float distance)
+{
+    return 1.0 / (1.0 + (0.25 * distance));
+}
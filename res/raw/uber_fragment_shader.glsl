@@ -0,0 +1,45 @@
+// Fragment shader of all variants. ShaderVariants defines the features:
+// TEXTURE, LIGHTING with LIGHT_COUNT lights, INSTANCING (batched cubes),
+// COLOR (vertex colors), VERTEX_ATTENUATION and ALPHA_TEST (cut-outs).
+
+precision mediump float;       	// Set the default precision to medium. We don't need as high of a
+								// precision in the fragment shader.
+#ifdef TEXTURE
+uniform sampler2D u_Texture;    // The input texture.
+varying vec2 v_TexCoordinate;   // Interpolated texture coordinate per fragment.
+#endif
+#ifdef COLOR
+varying vec4 v_Color;          	// Interpolated color per fragment.
+#endif
+
+#ifdef LIGHTING
+#include "lighting.glsl"
+#endif
+
+// The entry point for our fragment shader.
+void main()
+{
+	vec4 color = vec4(1.0);
+
+#ifdef COLOR
+	color *= v_Color;
+#endif
+
+#ifdef TEXTURE
+	color *= texture2D(u_Texture, v_TexCoordinate);
+#endif
+
+#ifdef LIGHTING
+	// Multiply the color by the diffuse illumination of all lights.
+	color.rgb *= diffuseLighting();
+#endif
+
+#ifdef ALPHA_TEST
+	// Cut the shape out of its quad.
+	if (color.a < 0.5) {
+		discard;
+	}
+#endif
+
+	gl_FragColor = color;
+}
@@ -0,0 +1,81 @@
+// Vertex shader of all variants. ShaderVariants defines the features:
+// TEXTURE, LIGHTING with LIGHT_COUNT lights, INSTANCING (batched cubes),
+// COLOR (vertex colors), VERTEX_ATTENUATION and ALPHA_TEST (cut-outs).
+
+uniform mat4 u_MVPMatrix;		// The combined model/view/projection matrix, view/projection when instancing.
+uniform mat4 u_MVMatrix;		// The combined model/view matrix, the view matrix when instancing.
+#ifdef INSTANCING
+uniform mat4 u_Rotation;		// The rotation shared by every cube in the batch.
+#endif
+
+attribute vec4 a_Position;		// Per-vertex position information, relative to the cube center when instancing.
+#ifdef LIGHTING
+attribute vec3 a_Normal;		// Per-vertex normal information we will pass in.
+#endif
+#ifdef TEXTURE
+attribute vec2 a_TexCoordinate; // Per-vertex texture coordinate information we will pass in.
+#endif
+#ifdef COLOR
+attribute vec4 a_Color;			// Per-vertex color information we will pass in.
+#endif
+#ifdef INSTANCING
+attribute vec3 a_Offset;		// Position of the cube center this vertex belongs to.
+#endif
+
+#ifdef LIGHTING
+varying vec3 v_Position;		// This will be passed into the fragment shader.
+varying vec3 v_Normal;			// This will be passed into the fragment shader.
+#ifdef VERTEX_ATTENUATION
+#include "lights.glsl"
+#endif
+#endif
+#ifdef TEXTURE
+varying vec2 v_TexCoordinate;   // This will be passed into the fragment shader.
+#endif
+#ifdef COLOR
+varying vec4 v_Color;			// This will be passed into the fragment shader.
+#endif
+
+// The entry point for our vertex shader.
+void main()
+{
+#ifdef INSTANCING
+	// Rotate the vertex around its cube center, then move it into place.
+	vec4 position = vec4((u_Rotation * a_Position).xyz + a_Offset, 1.0);
+#else
+	vec4 position = a_Position;
+#endif
+
+#ifdef LIGHTING
+	// Transform the vertex into eye space.
+	v_Position = vec3(u_MVMatrix * position);
+
+	// Transform the normal's orientation into eye space.
+#ifdef INSTANCING
+	v_Normal = vec3(u_MVMatrix * (u_Rotation * vec4(a_Normal, 0.0)));
+#else
+	v_Normal = vec3(u_MVMatrix * vec4(a_Normal, 0.0));
+#endif
+
+#ifdef VERTEX_ATTENUATION
+	// Attenuate the lights here, the fragment shader only interpolates.
+	for (int i = 0; i < LIGHT_COUNT; i++) {
+		v_Attenuation[i] = attenuation(length(u_LightPos[i] - v_Position));
+	}
+#endif
+#endif
+
+#ifdef TEXTURE
+	// Pass through the texture coordinate.
+	v_TexCoordinate = a_TexCoordinate;
+#endif
+
+#ifdef COLOR
+	// Pass through the color.
+	v_Color = a_Color;
+#endif
+
+	// gl_Position is a special variable used to store the final position.
+	// Multiply the vertex by the matrix to get the final point in normalized screen coordinates.
+	gl_Position = u_MVPMatrix * position;
+}
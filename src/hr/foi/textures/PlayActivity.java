@@ -1,5 +1,10 @@
 package hr.foi.textures;
 
+import hr.foi.textures.helpers.BitmapDecoder;
+
+import java.io.File;
+import java.io.IOException;
+
 import android.app.Activity;
 import android.app.ActivityManager;
 import android.app.AlertDialog;
@@ -10,14 +15,16 @@ import android.content.Intent;
 import android.content.pm.ConfigurationInfo;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.provider.MediaStore;
-import android.util.DisplayMetrics;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.View.OnClickListener;
+import android.widget.TextView;
+import android.widget.Toast;
 
 public class PlayActivity extends Activity {
 
@@ -31,10 +38,50 @@ public class PlayActivity extends Activity {
 
 	private static final String FLOOR_TEXTURE_SETTING = "floor_texture_setting";
 
-	public static Bitmap bm = null;
+	/** Size the cube texture is resized to. */
+	private static final int CUBE_TEXTURE_SIZE = 128;
+
+	/** Memory class, in megabytes, at or below which a device is low-end. */
+	private static final int LOW_END_MEMORY_CLASS = 32;
+
+	/** Decodes picked images off the UI thread. */
+	private final BitmapDecoder mBitmapDecoder = new BitmapDecoder();
+
+	/** Hands decoded images over to the GL thread. */
+	private final BitmapDecoder.Callback mCubeBitmapCallback = new BitmapDecoder.Callback() {
+		@Override
+		public void onBitmapDecoded(final Bitmap bitmap) {
+			mGLSurfaceView.queueEvent(new Runnable() {
+				@Override
+				public void run() {
+					mRenderer.setCubeBitmap(bitmap);
+				}
+			});
+			mGLSurfaceView.getRenderScheduler().requestRender();
+		}
+	};
 
 	private AlertDialog floorTextureDialog;
 
+	/** Shows the frame timings over the scene. */
+	private TextView mFrameStatsView;
+
+	/** Shows the frame timing summaries of the renderer. */
+	private final PlayGLRenderer.FrameStatsCallback mFrameStatsCallback = new PlayGLRenderer.FrameStatsCallback() {
+		@Override
+		public void onFrameStats(final String summary) {
+			runOnUiThread(new Runnable() {
+				@Override
+				public void run() {
+					mFrameStatsView.setText(summary);
+				}
+			});
+		}
+	};
+
+	private boolean mShowFrameStats;
+	private boolean mGpuTiming;
+
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -53,18 +100,30 @@ public class PlayActivity extends Activity {
 			// Request an OpenGL ES 2.0 compatible context.
 			mGLSurfaceView.setEGLContextClientVersion(2);
 
-			final DisplayMetrics displayMetrics = new DisplayMetrics();
-			getWindowManager().getDefaultDisplay().getMetrics(displayMetrics);
+			// Keep the context, and with it all programs, buffers and
+			// textures, while paused where the platform allows it.
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+				mGLSurfaceView.setPreserveEGLContextOnPause(true);
+			}
 
 			// Set the renderer to our demo renderer, defined below.
-			mRenderer = new PlayGLRenderer(this);
-			mGLSurfaceView.setRenderer(mRenderer, displayMetrics.density);
+			mRenderer = new PlayGLRenderer(this, getWindowManager()
+					.getDefaultDisplay().getRefreshRate());
+			mRenderer.prefetchFloorTextures();
+
+			// Devices with a small heap usually have slow GPUs as well.
+			if (activityManager.getMemoryClass() <= LOW_END_MEMORY_CLASS) {
+				mRenderer.useVertexAttenuation();
+			}
+			mGLSurfaceView.setRenderer(mRenderer);
 		} else {
 			// Here can go OpenGL ES 1.x compatible renderer so that app
 			// supports both ES 1 and ES 2.
 			return;
 		}
 
+		mFrameStatsView = (TextView) findViewById(R.id.frame_stats);
+
 		findViewById(R.id.button_choose_floor_texture).setOnClickListener(
 				new OnClickListener() {
 					@SuppressWarnings("deprecation")
@@ -119,11 +178,95 @@ public class PlayActivity extends Activity {
 		mGLSurfaceView.onPause();
 	}
 
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		mBitmapDecoder.shutdown();
+		if (mRenderer != null) {
+			mRenderer.stopPrefetching();
+		}
+	}
+
 	@Override
 	protected void onSaveInstanceState(Bundle outState) {
 		outState.putInt(FLOOR_TEXTURE_SETTING, mFloorTextureSetting);
 	}
 
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu) {
+		getMenuInflater().inflate(R.menu.play, menu);
+		return mRenderer != null;
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		switch (item.getItemId()) {
+		case R.id.menu_frame_stats:
+			mShowFrameStats = !item.isChecked();
+			item.setChecked(mShowFrameStats);
+			updateFrameStats();
+			return true;
+		case R.id.menu_gpu_timing:
+			mGpuTiming = !item.isChecked();
+			item.setChecked(mGpuTiming);
+			updateFrameStats();
+			return true;
+		case R.id.menu_export_frame_stats:
+			exportFrameStats();
+			return true;
+		default:
+			return super.onOptionsItemSelected(item);
+		}
+	}
+
+	private void updateFrameStats() {
+		mFrameStatsView.setVisibility(mShowFrameStats ? View.VISIBLE
+				: View.GONE);
+		mRenderer.setFrameStatsCallback(mShowFrameStats ? mFrameStatsCallback
+				: null, mGpuTiming);
+
+		// Timings of frames drawn only on demand say little about the
+		// renderer, so draw continuously while they are shown.
+		mGLSurfaceView.getRenderScheduler().setContinuous(mShowFrameStats);
+	}
+
+	/**
+	 * Writes the timings of the recent frames to a CSV file in the external
+	 * files directory, to compare builds.
+	 */
+	private void exportFrameStats() {
+		File directory = getExternalFilesDir(null);
+		if (directory == null) {
+			directory = getFilesDir();
+		}
+		final File file = new File(directory, "frame_stats_"
+				+ System.currentTimeMillis() + ".csv");
+
+		mGLSurfaceView.queueEvent(new Runnable() {
+			@Override
+			public void run() {
+				String message;
+				try {
+					mRenderer.exportFrameStats(file);
+					message = getResources().getString(
+							R.string.frame_stats_exported, file.getPath());
+				} catch (IOException e) {
+					message = getResources().getString(
+							R.string.frame_stats_export_failed);
+				}
+
+				final String result = message;
+				runOnUiThread(new Runnable() {
+					@Override
+					public void run() {
+						Toast.makeText(PlayActivity.this, result,
+								Toast.LENGTH_LONG).show();
+					}
+				});
+			}
+		});
+	}
+
 	private void setFloorTextureSetting(final int item) {
 		mFloorTextureSetting = item;
 
@@ -133,6 +276,7 @@ public class PlayActivity extends Activity {
 				mRenderer.setFloorTexture(item);
 			}
 		});
+		mGLSurfaceView.getRenderScheduler().requestRender();
 	}
 
 	@Override
@@ -178,8 +322,9 @@ public class PlayActivity extends Activity {
 		case 0:
 			if (resultCode == RESULT_OK) { // camera case
 				Bundle extras = data.getExtras();
-				bm = (Bitmap) extras.get("data");
-				mRenderer.setCubeBitmap(getResizedBitmap(bm, 128, 128));
+				Bitmap bm = (Bitmap) extras.get("data");
+				mBitmapDecoder.resize(bm, CUBE_TEXTURE_SIZE, CUBE_TEXTURE_SIZE,
+						mCubeBitmapCallback);
 			}
 
 			break;
@@ -194,39 +339,11 @@ public class PlayActivity extends Activity {
 				String picturePath = cursor.getString(columnIndex);
 				cursor.close();
 
-				bm = BitmapFactory.decodeFile(picturePath);
-				mRenderer.setCubeBitmap(getResizedBitmap(bm, 128, 128));
+				mBitmapDecoder.decodeFile(picturePath, CUBE_TEXTURE_SIZE,
+						CUBE_TEXTURE_SIZE, mCubeBitmapCallback);
 			}
 			break;
 		}
 	}
 
-	/**
-	 * Returns resized bitmap.
-	 * 
-	 * @param bm
-	 *            Bitmap for resizing
-	 * @param newHeight
-	 *            Wanted height of resized bitmap
-	 * @param newWidth
-	 *            Wanted width of resized bitmap
-	 * @return Resized Bitmap
-	 */
-	protected Bitmap getResizedBitmap(Bitmap bm, int newHeight, int newWidth) {
-		int width = bm.getWidth();
-		int height = bm.getHeight();
-		float scaleWidth = ((float) newWidth) / width;
-		float scaleHeight = ((float) newHeight) / height;
-
-		// CREATE A MATRIX FOR THE MANIPULATION
-		Matrix matrix = new Matrix();
-		// RESIZE THE BITMAP
-		matrix.postScale(scaleWidth, scaleHeight);
-
-		// "RECREATE" THE NEW BITMAP
-		Bitmap resizedBitmap = Bitmap.createBitmap(bm, 0, 0, width, height,
-				matrix, false);
-		return resizedBitmap;
-	}
-
 }
\ No newline at end of file
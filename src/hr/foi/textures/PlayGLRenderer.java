@@ -1,12 +1,38 @@
 package hr.foi.textures;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-
-import hr.foi.textures.helpers.RawResourceReader;
-import hr.foi.textures.helpers.ShaderHelper;
-import hr.foi.textures.helpers.TextureHelper;
+import hr.foi.textures.helpers.AndroidGl;
+import hr.foi.textures.helpers.Arcball;
+import hr.foi.textures.helpers.FrameStats;
+import hr.foi.textures.helpers.Frustum;
+import hr.foi.textures.helpers.GlState;
+import hr.foi.textures.helpers.Impostors;
+import hr.foi.textures.helpers.Matrices;
+import hr.foi.textures.helpers.MeshBatch;
+import hr.foi.textures.helpers.PointLights;
+import hr.foi.textures.helpers.RenderQueue;
+import hr.foi.textures.helpers.RenderScheduler;
+import hr.foi.textures.helpers.ProgramCache;
+import hr.foi.textures.helpers.Quaternion;
+import hr.foi.textures.helpers.ShaderProgram;
+import hr.foi.textures.helpers.ShaderVariants;
+import hr.foi.textures.helpers.StaticMesh;
+import hr.foi.textures.helpers.TextureAtlas;
+import hr.foi.textures.helpers.TextureCache;
+import hr.foi.textures.helpers.TextureParameters;
+import hr.foi.textures.helpers.TexturePrefetcher;
+import hr.foi.textures.helpers.TouchAccumulator;
+import hr.foi.textures.scene.SceneLoader;
+import hr.foi.textures.scene.SceneNode;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -23,14 +49,86 @@ import android.opengl.Matrix;
  */
 public class PlayGLRenderer implements GLSurfaceView.Renderer {
 
+	/**
+	 * Receives the frame timing summary, on the GL thread.
+	 */
+	public interface FrameStatsCallback {
+		void onFrameStats(String summary);
+	}
+
 	private final Context mActivityContext;
 
+	/** Name of the mesh whose nodes are drawn in batches. */
+	private static final String MESH_CUBE = "cube";
+
+	/** Name of the mesh drawn for the floor. */
+	private static final String MESH_PLANE = "plane";
+
+	/** Name of the material using the selected floor texture. */
+	private static final String MATERIAL_FLOOR = "floor";
+
+	/** Name of the material showing the camera or gallery image. */
+	private static final String MATERIAL_CUBE = "foi";
+
 	/**
-	 * Store the model matrix. This matrix is used to move models from object
-	 * space (where each model can be thought of being located at the center of
-	 * the universe) to world space.
+	 * Materials sharing the texture atlas, and their drawables. The floor
+	 * repeats its texture, so it cannot be part of the atlas.
 	 */
-	private float[] mModelMatrix = new float[16];
+	private static final String[] ATLAS_MATERIALS = { MATERIAL_CUBE };
+	private static final int[] ATLAS_DRAWABLES = { R.drawable.foi_texture };
+
+	/** Gutter around each atlas image, clean for two mip levels. */
+	private static final int ATLAS_GUTTER = 4;
+
+	/** Largest atlas size, supported by practically all GPUs. */
+	private static final int ATLAS_MAX_SIZE = 2048;
+
+	/** GPU memory budget for resident floor textures, in bytes. */
+	private static final long FLOOR_TEXTURE_BUDGET = 512 * 1024;
+
+	/** The floor textures, in the order of the floor texture dialog. */
+	private static final int[] FLOOR_TEXTURES = { R.raw.floor_texture_0,
+			R.raw.floor_texture_1, R.raw.floor_texture_2, R.raw.floor_texture_3,
+			R.raw.floor_texture_4, R.raw.floor_texture_5 };
+
+	/** Number of frames whose timings are kept. */
+	private static final int FRAME_STATS_CAPACITY = 600;
+
+	/** Frames between two frame timing summaries. */
+	private static final int FRAME_STATS_SUMMARY_INTERVAL = 30;
+
+	/** Rate at which a spin slows down, per second. */
+	private static final float SPIN_DECAY = 2.5f;
+
+	/** Spin speed below which the cubes stop, in degrees per second. */
+	private static final float SPIN_MIN_VELOCITY = 2.0f;
+
+	/** Longest time step of a spin, so a late frame does not jump. */
+	private static final float SPIN_MAX_STEP = 0.1f;
+
+	/** Time over which the speed of a fling is turned into a rotation. */
+	private static final float FLING_SAMPLE_TIME = 0.01f;
+
+	/** Rotations composed between two normalizations of the orientation. */
+	private static final int ORIENTATION_NORMALIZE_INTERVAL = 32;
+
+	/** Cubes smaller on screen than this, in pixels, are drawn as impostors. */
+	private static final float LOD_FAR_SIZE = 24.0f;
+
+	/** Impostors larger on screen than this, in pixels, are cubes again. */
+	private static final float LOD_NEAR_SIZE = 32.0f;
+
+	/** Size of the image of a cube in the impostor texture, in texels. */
+	private static final int IMPOSTOR_CELL_SIZE = 64;
+
+	/**
+	 * Maximum number of prefetched textures uploaded per frame. Usually the
+	 * time budget stops the uploads first.
+	 */
+	private static final int PREFETCH_UPLOADS_PER_FRAME = 4;
+
+	/** Time into a frame after which no prefetched texture is uploaded. */
+	private static final long PREFETCH_FRAME_BUDGET_NANOS = 2000000L;
 
 	/**
 	 * Store the view matrix. This can be thought of as our camera. This matrix
@@ -51,20 +149,117 @@ public class PlayGLRenderer implements GLSurfaceView.Renderer {
 	 */
 	private float[] mMVPMatrix = new float[16];
 
-	/** Store the accumulated rotation. */
+	/** The projection matrix times the view matrix, computed once per frame. */
+	private final float[] mViewProjectionMatrix = new float[16];
+
+	/** The modelview matrix of the mesh being drawn. */
+	private final float[] mMVMatrix = new float[16];
+
+	/** The orientation of the cubes as a matrix, updated once per frame. */
 	private final float[] mAccumulatedRotation = new float[16];
 
-	/** Store the current rotation. */
-	private final float[] mCurrentRotation = new float[16];
+	/** The orientation of the cubes. */
+	private final Quaternion mOrientation = new Quaternion();
+
+	/** The rotation being applied to the orientation. */
+	private final Quaternion mRotationStep = new Quaternion();
+
+	/** Rotations composed since the orientation was last normalized. */
+	private int mRotationsSinceNormalize;
+
+	/** Maps touch movement to rotations. */
+	private final Arcball mArcball = new Arcball();
+
+	/** Store our model data in static meshes. */
+	private final StaticMesh mCubeMesh;
+	private final StaticMesh mPlaneMesh;
+
+	/** The root node of the scene. */
+	private final SceneNode mScene;
+
+	/** Batches of all cube nodes, one per material. */
+	private final List<MeshBatch> mBatches = new ArrayList<MeshBatch>();
+	private final List<String> mBatchMaterials = new ArrayList<String>();
+
+	/** The cube mesh of each batch, with the texture coordinates it uses. */
+	private final List<StaticMesh> mBatchMeshes = new ArrayList<StaticMesh>();
+
+	/**
+	 * The same cubes as the batches, as quads showing the impostor of their
+	 * batch. Each cube is drawn by one of the two.
+	 */
+	private final List<MeshBatch> mImpostorBatches = new ArrayList<MeshBatch>();
+
+	/** Images of one cube of each batch, for the far cubes. */
+	private final Impostors mImpostors;
 
-	/** A temporary matrix. */
-	private float[] mTemporaryMatrix = new float[16];
+	/** False if the impostors cannot be rendered, then every cube is drawn. */
+	private boolean mImpostorsSupported;
 
-	/** Store our model data in a float buffer. */
-	private final FloatBuffer mCubePositions;
-	private final FloatBuffer mCubeNormals;
-	private final FloatBuffer mCubeTextureCoordinates;
-	private final FloatBuffer mCubeTextureCoordinatesForPlane;
+	/** True if the impostors must be rendered again before they are drawn. */
+	private boolean mImpostorsDirty = true;
+
+	/** Number of cubes drawn as impostors. */
+	private int mImpostorCount;
+
+	/** Shows the whole bounding sphere of a cube in an impostor cell. */
+	private final float[] mImpostorProjection = new float[16];
+
+	/** Scratch space for rendering the impostors. */
+	private final float[] mImpostorModelMatrix = new float[16];
+	private final float[] mImpostorCenter = new float[3];
+
+	/**
+	 * Turns the quads of the impostors to face the camera: the inverse of
+	 * the rotation of the view.
+	 */
+	private final float[] mBillboardMatrix = new float[16];
+
+	/** Size of the viewport, in pixels. */
+	private int mViewportWidth;
+	private int mViewportHeight;
+
+	/** Size on screen, in pixels, of one unit at a distance of one. */
+	private float mPixelsPerUnit;
+
+	/** Nodes which are drawn one by one. */
+	private final List<SceneNode> mDrawnNodes = new ArrayList<SceneNode>();
+
+	/** Nodes drawn one by one which are inside the view frustum. */
+	private final List<SceneNode> mVisibleNodes = new ArrayList<SceneNode>();
+
+	/** The view frustum, in world space. */
+	private final Frustum mFrustum = new Frustum();
+
+	/** True if the camera or a node moved since the last culling. */
+	private boolean mCullingDirty = true;
+
+	/** Visible batches and nodes, sorted front to back. */
+	private final RenderQueue mRenderQueue = new RenderQueue(16);
+
+	/** Program indices in the render queue. */
+	private static final int QUEUE_PROGRAM_BATCH = 0;
+	private static final int QUEUE_PROGRAM_NODE = 1;
+
+	/** Objects, cubes and nodes, inside and outside the view frustum. */
+	private int mDrawnObjectCount;
+	private int mCulledObjectCount;
+
+	/** Moves batched cubes whose node has been moved. */
+	private final SceneNode.Visitor mBatchUpdater = new SceneNode.Visitor() {
+		@Override
+		public void onWorldMatrixChanged(SceneNode node) {
+			mCullingDirty = true;
+			if (node.getBatchIndex() >= 0) {
+				final float[] world = node.getWorldMatrix();
+				final int batch = mBatchMaterials.indexOf(node.getMaterial());
+				mBatches.get(batch).setOffset(node.getBatchIndex(), world[12],
+						world[13], world[14]);
+				mImpostorBatches.get(batch).setOffset(node.getBatchIndex(),
+						world[12], world[13], world[14]);
+			}
+		}
+	};
 
 	/** This will be used to pass in the transformation matrix. */
 	private int mMVPMatrixHandle;
@@ -84,45 +279,143 @@ public class PlayGLRenderer implements GLSurfaceView.Renderer {
 	/** This will be used to pass in model texture coordinate information. */
 	private int mTextureCoordinateHandle;
 
-	/** How many bytes per float. */
-	private final int mBytesPerFloat = 4;
+	/** Loads linked programs instead of compiling them again. */
+	private final ProgramCache mProgramCache;
+
+	/** Compiles the variants of the uber shader which are drawn. */
+	private final ShaderVariants mShaderVariants;
+
+	/** This is our cube shading program. */
+	private ShaderProgram mProgram;
+
+	/** This is our program for batched cubes. */
+	private ShaderProgram mBatchProgram;
+
+	/** This is our program for impostors of far batched cubes. */
+	private ShaderProgram mImpostorProgram;
+
+	/** Handles used with the impostor program. */
+	private int mImpostorMVPMatrixHandle;
+	private int mImpostorRotationHandle;
+	private int mImpostorTextureUniformHandle;
+	private int mImpostorPositionHandle;
+	private int mImpostorTextureCoordinateHandle;
+	private int mImpostorOffsetHandle;
+
+	/** Handles used with the batch program. */
+	private int mBatchMVPMatrixHandle;
+	private int mBatchMVMatrixHandle;
+	private int mBatchRotationHandle;
+	private int mBatchTextureUniformHandle;
+	private int mBatchPositionHandle;
+	private int mBatchNormalHandle;
+	private int mBatchTextureCoordinateHandle;
+	private int mBatchOffsetHandle;
 
-	/** Size of the position data in elements. */
-	private final int mPositionDataSize = 3;
+	/** Light handles of the two programs. */
+	private int mLightPositionHandle;
+	private int mLightColorHandle;
+	private int mBatchLightPositionHandle;
+	private int mBatchLightColorHandle;
 
-	/** Size of the normal data in elements. */
-	private final int mNormalDataSize = 3;
+	/** The point lights of the scene. */
+	private final PointLights mLights = new PointLights();
 
-	/** Size of the texture coordinate data in elements. */
-	private final int mTextureCoordinateDataSize = 2;
+	/** True if the lights should be attenuated per vertex. */
+	private volatile boolean mVertexAttenuation;
 
-	/** This is a handle to our cube shading program. */
-	private int mProgramHandle;
+	/** The textures of all materials except the floor. */
+	private final TextureAtlas mAtlas;
 
-	/** These are handles to our texture data. */
-	private int mCubeDataHandle;
+	/** This is a handle to our floor texture data. */
 	private int mFloorDataHandle;
 
-	public volatile float mDeltaX;
-	public volatile float mDeltaY;
+	/** Keeps recently used floor textures resident. */
+	private final TextureCache mFloorTextureCache;
 
-	private Bitmap cubeBitmap;
+	/** Decodes the floor textures ahead of time. */
+	private final TexturePrefetcher mFloorTexturePrefetcher;
+
+	/** True if the floor textures should be prefetched. */
+	private volatile boolean mPrefetchFloorTextures;
+
+	/** Draw path GL calls, without those which change nothing. */
+	private final GlState mGl = new GlState(new AndroidGl());
+
+	/** Timings of the recent frames. */
+	private final FrameStats mFrameStats;
+
+	/** Receives the frame timing summary, if shown. */
+	private volatile FrameStatsCallback mFrameStatsCallback;
+
+	private int mFramesSinceSummary;
+
+	/** True if the frame waits for the GPU, to measure its time. */
+	private volatile boolean mGpuTiming;
+
+	/** Touch deltas accumulated by the UI thread. */
+	private final TouchAccumulator mTouchInput = new TouchAccumulator();
+
+	/** Position of the finger, as far as the touch deltas were applied. */
+	private float mTouchX;
+	private float mTouchY;
+
+	/** Axis of the spin after a fling, of unit length. */
+	private float mSpinAxisX;
+	private float mSpinAxisY;
+	private float mSpinAxisZ;
+
+	/** Velocity of the spin, in degrees per second. */
+	private float mSpinVelocity;
+
+	/** Time of the last spin step. */
+	private long mLastSpinNanos;
+
+	/** Requests the frames, null if every frame is drawn anyway. */
+	private volatile RenderScheduler mRenderScheduler;
 
 	private int selectedFloorTextureItem = 0;
 
 	/**
 	 * Initialize the model data.
+	 *
+	 * @param refreshRate
+	 *            Refresh rate of the display in Hz, to count janky frames.
 	 */
-	public PlayGLRenderer(final Context activityContext) {
+	public PlayGLRenderer(final Context activityContext,
+			final float refreshRate) {
 		mActivityContext = activityContext;
+		mFrameStats = new FrameStats(FRAME_STATS_CAPACITY, refreshRate);
+		mProgramCache = new ProgramCache(new File(
+				activityContext.getCacheDir(), "programs"));
+		mShaderVariants = new ShaderVariants(activityContext, mProgramCache,
+				R.raw.uber_vertex_shader, R.raw.uber_fragment_shader);
+
+		// A white light at the eye and a warm one above the far cubes.
+		mLights.add(0.0f, 0.0f, -0.5f, 1.0f, 1.0f, 1.0f);
+		mLights.add(0.0f, 3.0f, -10.0f, 0.6f, 0.45f, 0.3f);
+
+		mFloorTextureCache = new TextureCache(activityContext,
+				TextureParameters.TRILINEAR_ANISOTROPIC, FLOOR_TEXTURE_BUDGET);
+		mFloorTexturePrefetcher = new TexturePrefetcher(activityContext,
+				mFloorTextureCache, FLOOR_TEXTURES,
+				PREFETCH_UPLOADS_PER_FRAME, PREFETCH_FRAME_BUDGET_NANOS);
 
 		final BitmapFactory.Options options = new BitmapFactory.Options();
 		options.inScaled = false; // No pre-scaling
 
-		// Read in the resource
-		cubeBitmap = BitmapFactory.decodeResource(
-				mActivityContext.getResources(), R.drawable.foi_texture,
-				options);
+		// Read in the resources and pack them into the atlas.
+		final Bitmap[] atlasBitmaps = new Bitmap[ATLAS_DRAWABLES.length];
+		for (int i = 0; i < ATLAS_DRAWABLES.length; i++) {
+			atlasBitmaps[i] = BitmapFactory.decodeResource(
+					mActivityContext.getResources(), ATLAS_DRAWABLES[i],
+					options);
+		}
+		mAtlas = new TextureAtlas(ATLAS_MATERIALS, atlasBitmaps,
+				ATLAS_GUTTER, ATLAS_MAX_SIZE);
+		for (int i = 0; i < atlasBitmaps.length; i++) {
+			atlasBitmaps[i].recycle();
+		}
 
 		// Define points for a cube.
 
@@ -296,30 +589,101 @@ public class PlayGLRenderer implements GLSurfaceView.Renderer {
 				0.0f, 0.0f, 0.0f, 25.0f, 25.0f, 0.0f, 0.0f, 25.0f, 25.0f,
 				25.0f, 25.0f, 0.0f };
 
-		// Initialize the buffers.
-		mCubePositions = ByteBuffer
-				.allocateDirect(cubePositionData.length * mBytesPerFloat)
-				.order(ByteOrder.nativeOrder()).asFloatBuffer();
-		mCubePositions.put(cubePositionData).position(0);
+		// Initialize the meshes.
+		mCubeMesh = new StaticMesh(cubePositionData, cubeNormalData,
+				cubeTextureCoordinateData);
+		mPlaneMesh = new StaticMesh(cubePositionData, cubeNormalData,
+				cubeTextureCoordinateDataForPlane);
+
+		// Load the scene and batch the cubes sharing a material.
+		mScene = SceneLoader.load(mActivityContext, R.raw.foi_scene);
+		mScene.update(null);
+
+		final Map<String, List<SceneNode>> cubes = new LinkedHashMap<String, List<SceneNode>>();
+		collectNodes(mScene, cubes);
+
+		// Far cubes are drawn as quads as large as their bounding sphere.
+		final float cubeRadius = mCubeMesh.getBoundingSphere()[3];
+		mImpostors = new Impostors(IMPOSTOR_CELL_SIZE, cubes.size());
+		Matrix.orthoM(mImpostorProjection, 0, -cubeRadius, cubeRadius,
+				-cubeRadius, cubeRadius, -cubeRadius, cubeRadius);
+
+		for (Map.Entry<String, List<SceneNode>> entry : cubes.entrySet()) {
+			final List<SceneNode> nodes = entry.getValue();
+			final float[] offsets = new float[nodes.size() * 3];
+
+			for (int i = 0; i < nodes.size(); i++) {
+				final float[] world = nodes.get(i).getWorldMatrix();
+				offsets[i * 3] = world[12];
+				offsets[i * 3 + 1] = world[13];
+				offsets[i * 3 + 2] = world[14];
+				nodes.get(i).setBatchIndex(i);
+			}
+
+			// Cubes of atlas materials get texture coordinates into the atlas.
+			StaticMesh mesh = mCubeMesh;
+			if (mAtlas.contains(entry.getKey())) {
+				mesh = new StaticMesh(cubePositionData, cubeNormalData,
+						mAtlas.remapTextureCoordinates(entry.getKey(),
+								cubeTextureCoordinateData));
+			}
+
+			mBatches.add(new MeshBatch(mesh, offsets));
+			mBatchMaterials.add(entry.getKey());
+			mBatchMeshes.add(mesh);
+			mImpostorBatches.add(new MeshBatch(createImpostorQuad(
+					mImpostorBatches.size(), cubeRadius), offsets));
+		}
+	}
 
-		mCubeNormals = ByteBuffer
-				.allocateDirect(cubeNormalData.length * mBytesPerFloat)
-				.order(ByteOrder.nativeOrder()).asFloatBuffer();
-		mCubeNormals.put(cubeNormalData).position(0);
+	/**
+	 * Creates a square in the XY plane facing positive Z, textured with an
+	 * impostor cell. {@link #mBillboardMatrix} turns it to face the camera.
+	 *
+	 * @param radius
+	 *            Half the width of the square.
+	 */
+	private StaticMesh createImpostorQuad(int cell, float radius) {
+		final float[] positions = { -radius, -radius, 0.0f, radius, -radius,
+				0.0f, radius, radius, 0.0f, -radius, radius, 0.0f };
+		final float[] textureCoordinates = mImpostors.remapTextureCoordinates(
+				cell, new float[] { 0.0f, 0.0f, 1.0f, 0.0f, 1.0f, 1.0f, 0.0f,
+						1.0f });
+
+		final float[] vertices = new float[4 * StaticMesh.VERTEX_SIZE];
+		for (int i = 0; i < 4; i++) {
+			final int v = i * StaticMesh.VERTEX_SIZE;
+			System.arraycopy(positions, i * 3, vertices, v
+					+ StaticMesh.POSITION_OFFSET, 3);
+			vertices[v + StaticMesh.NORMAL_OFFSET + 2] = 1.0f;
+			System.arraycopy(textureCoordinates, i * 2, vertices, v
+					+ StaticMesh.TEXTURE_COORDINATE_OFFSET, 2);
+		}
 
-		mCubeTextureCoordinates = ByteBuffer
-				.allocateDirect(
-						cubeTextureCoordinateData.length * mBytesPerFloat)
-				.order(ByteOrder.nativeOrder()).asFloatBuffer();
-		mCubeTextureCoordinates.put(cubeTextureCoordinateData).position(0);
+		return new StaticMesh(vertices, StaticMesh.VERTEX_SIZE, new short[] {
+				0, 1, 2, 0, 2, 3 });
+	}
 
-		mCubeTextureCoordinatesForPlane = ByteBuffer
-				.allocateDirect(
-						cubeTextureCoordinateDataForPlane.length
-								* mBytesPerFloat)
-				.order(ByteOrder.nativeOrder()).asFloatBuffer();
-		mCubeTextureCoordinatesForPlane.put(cubeTextureCoordinateDataForPlane)
-				.position(0);
+	/**
+	 * Sorts the nodes with a mesh into batched cubes, grouped by material, and
+	 * nodes drawn one by one.
+	 */
+	private void collectNodes(SceneNode node,
+			Map<String, List<SceneNode>> cubes) {
+		if (MESH_CUBE.equals(node.getMesh())) {
+			List<SceneNode> nodes = cubes.get(node.getMaterial());
+			if (nodes == null) {
+				nodes = new ArrayList<SceneNode>();
+				cubes.put(node.getMaterial(), nodes);
+			}
+			nodes.add(node);
+		} else if (node.getMesh() != null) {
+			mDrawnNodes.add(node);
+		}
+
+		for (SceneNode child : node.getChildren()) {
+			collectNodes(child, cubes);
+		}
 	}
 
 	@Override
@@ -362,30 +726,97 @@ public class PlayGLRenderer implements GLSurfaceView.Renderer {
 		// separately if we choose.
 		Matrix.setLookAtM(mViewMatrix, 0, eyeX, eyeY, eyeZ, lookX, lookY,
 				lookZ, upX, upY, upZ);
+		mCullingDirty = true;
+
+		// Drops the program binaries if the driver changed.
+		mProgramCache.open();
+
+		// The programs of the previous context are gone.
+		mShaderVariants.invalidate();
+		final int lighting = mVertexAttenuation ? ShaderVariants.LIGHTING
+				| ShaderVariants.VERTEX_ATTENUATION : ShaderVariants.LIGHTING;
+		mProgram = mShaderVariants.get(ShaderVariants.TEXTURE | lighting,
+				mLights.getCount());
+
+		// Set program handles for cube drawing. These are resolved once here,
+		// so the draw path does no lookups by name.
+		mMVPMatrixHandle = mProgram.getUniformHandle("u_MVPMatrix");
+		mMVMatrixHandle = mProgram.getUniformHandle("u_MVMatrix");
+		mTextureUniformHandle = mProgram.getUniformHandle("u_Texture");
+		mPositionHandle = mProgram.getAttributeHandle("a_Position");
+		mNormalHandle = mProgram.getAttributeHandle("a_Normal");
+		mTextureCoordinateHandle = mProgram
+				.getAttributeHandle("a_TexCoordinate");
+		mLightPositionHandle = mProgram.getUniformHandle("u_LightPos");
+		mLightColorHandle = mProgram.getUniformHandle("u_LightColor");
+
+		mBatchProgram = mShaderVariants.get(ShaderVariants.TEXTURE | lighting
+				| ShaderVariants.INSTANCING, mLights.getCount());
+
+		mBatchMVPMatrixHandle = mBatchProgram.getUniformHandle("u_MVPMatrix");
+		mBatchMVMatrixHandle = mBatchProgram.getUniformHandle("u_MVMatrix");
+		mBatchRotationHandle = mBatchProgram.getUniformHandle("u_Rotation");
+		mBatchTextureUniformHandle = mBatchProgram
+				.getUniformHandle("u_Texture");
+		mBatchPositionHandle = mBatchProgram.getAttributeHandle("a_Position");
+		mBatchNormalHandle = mBatchProgram.getAttributeHandle("a_Normal");
+		mBatchTextureCoordinateHandle = mBatchProgram
+				.getAttributeHandle("a_TexCoordinate");
+		mBatchOffsetHandle = mBatchProgram.getAttributeHandle("a_Offset");
+		mBatchLightPositionHandle = mBatchProgram
+				.getUniformHandle("u_LightPos");
+		mBatchLightColorHandle = mBatchProgram
+				.getUniformHandle("u_LightColor");
+
+		mImpostorProgram = mShaderVariants.get(ShaderVariants.TEXTURE
+				| ShaderVariants.INSTANCING | ShaderVariants.ALPHA_TEST);
+
+		mImpostorMVPMatrixHandle = mImpostorProgram
+				.getUniformHandle("u_MVPMatrix");
+		mImpostorRotationHandle = mImpostorProgram
+				.getUniformHandle("u_Rotation");
+		mImpostorTextureUniformHandle = mImpostorProgram
+				.getUniformHandle("u_Texture");
+		mImpostorPositionHandle = mImpostorProgram
+				.getAttributeHandle("a_Position");
+		mImpostorTextureCoordinateHandle = mImpostorProgram
+				.getAttributeHandle("a_TexCoordinate");
+		mImpostorOffsetHandle = mImpostorProgram.getAttributeHandle("a_Offset");
+
+		// Upload the meshes into buffer objects. If that fails they are drawn
+		// from client memory.
+		mCubeMesh.upload();
+		mPlaneMesh.upload();
+		for (int i = 0; i < mBatches.size(); i++) {
+			mBatches.get(i).upload();
+			mImpostorBatches.get(i).upload();
+		}
 
-		final String vertexShader = RawResourceReader
-				.readTextFileFromRawResource(mActivityContext,
-						R.raw.per_pixel_vertex_shader_tex_and_light);
-		final String fragmentShader = RawResourceReader
-				.readTextFileFromRawResource(mActivityContext,
-						R.raw.per_pixel_fragment_shader_tex_and_light);
+		// The impostors of the previous context are gone. Without
+		// framebuffer support every cube is drawn in full.
+		mImpostors.invalidate();
+		mImpostorsSupported = mImpostors.upload();
 
-		final int vertexShaderHandle = ShaderHelper.compileShader(
-				GLES20.GL_VERTEX_SHADER, vertexShader);
-		final int fragmentShaderHandle = ShaderHelper.compileShader(
-				GLES20.GL_FRAGMENT_SHADER, fragmentShader);
+		// The atlas of the previous context is gone.
+		mAtlas.invalidate();
+		mAtlas.upload();
 
-		mProgramHandle = ShaderHelper.createAndLinkProgram(vertexShaderHandle,
-				fragmentShaderHandle, new String[] { "a_Position", "a_Normal",
-						"a_TexCoordinate" });
+		// The textures of the previous context are gone.
+		mFloorTextureCache.invalidate();
+		setFloorTexture(selectedFloorTextureItem);
 
-		mCubeDataHandle = TextureHelper.loadTexture(cubeBitmap);
-		GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+		if (mPrefetchFloorTextures) {
+			mFloorTexturePrefetcher.start();
+		}
 
-		setFloorTexture(selectedFloorTextureItem);
+		// Initialize the accumulated rotation
+		mOrientation.setIdentity();
 
-		// Initialize the accumulated rotation matrix
-		Matrix.setIdentityM(mAccumulatedRotation, 0);
+		// The uploads above would show up as one long frame.
+		mFrameStats.reset();
+
+		// Nothing is known about the state of the new context.
+		mGl.invalidate();
 	}
 
 	@Override
@@ -406,289 +837,589 @@ public class PlayGLRenderer implements GLSurfaceView.Renderer {
 
 		Matrix.frustumM(mProjectionMatrix, 0, left, right, bottom, top, near,
 				far);
+		mCullingDirty = true;
+
+		mViewportWidth = width;
+		mViewportHeight = height;
+		mPixelsPerUnit = mProjectionMatrix[5] * height / 2.0f;
+
+		mArcball.setSize(width, height);
 	}
 
 	@Override
 	public void onDrawFrame(GL10 glUnused) {
-		GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
-
-		// Set our per-vertex lighting program.
-		GLES20.glUseProgram(mProgramHandle);
-
-		// Set program handles for cube drawing.
-		mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgramHandle,
-				"u_MVPMatrix");
-		mMVMatrixHandle = GLES20.glGetUniformLocation(mProgramHandle,
-				"u_MVMatrix");
-		mTextureUniformHandle = GLES20.glGetUniformLocation(mProgramHandle,
-				"u_Texture");
-		mPositionHandle = GLES20.glGetAttribLocation(mProgramHandle,
-				"a_Position");
-		mNormalHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_Normal");
-		mTextureCoordinateHandle = GLES20.glGetAttribLocation(mProgramHandle,
-				"a_TexCoordinate");
+		final long frameStart = System.nanoTime();
+		mFrameStats.beginFrame();
+		mGl.resetCounts();
+
+		// Upload a few prefetched floor textures. These, and the textures
+		// changed by queued events, were bound behind the back of mGl.
+		mFloorTexturePrefetcher.uploadPending(frameStart);
+		mGl.invalidateTextures();
+		mFrameStats.mark(FrameStats.STAGE_UPLOAD);
+
+		// Recompute the world matrices of moved nodes only.
+		mScene.update(mBatchUpdater);
+		mFrameStats.mark(FrameStats.STAGE_UPDATE);
+
+		// Apply the touch input and the spin to the rotation shared by all
+		// cubes.
+		touchRotation();
+		final boolean spinning = spin();
+		mOrientation.toMatrix(mAccumulatedRotation, 0);
+		mFrameStats.mark(FrameStats.STAGE_INPUT);
 
-		// Set the active texture unit to texture unit 0.
-		GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+		// Move the lights into eye space, once for both programs.
+		mLights.update(mViewMatrix);
 
-		// Bind the texture to this unit.
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mCubeDataHandle);
+		Matrices.multiplyByAffine(mViewProjectionMatrix, 0, mProjectionMatrix,
+				0, mViewMatrix, 0);
+		if (mCullingDirty) {
+			cull();
+		}
+		mFrameStats.mark(FrameStats.STAGE_UPDATE);
 
-		// Tell the texture uniform sampler to use this texture in the shader by
-		// binding to texture unit 0.
-		GLES20.glUniform1i(mTextureUniformHandle, 0);
+		// Set the active texture unit to texture unit 0.
+		mGl.glActiveTexture(GLES20.GL_TEXTURE0);
+
+		// Render the impostors before the screen is cleared, so the GPU does
+		// not switch away from the screen in the middle of the frame.
+		if (mImpostorCount > 0 && mImpostorsDirty) {
+			renderImpostors();
+		}
 
-		// Pass in the texture coordinate information
-		mCubeTextureCoordinates.position(0);
-		GLES20.glVertexAttribPointer(mTextureCoordinateHandle,
-				mTextureCoordinateDataSize, GLES20.GL_FLOAT, false, 0,
-				mCubeTextureCoordinates);
+		mGl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+
+		// Draw the visible batches and nodes front to back, so that hidden
+		// fragments fail the depth test before they are lit.
+		int program = -1;
+		for (int i = 0; i < mRenderQueue.size(); i++) {
+			final int item = mRenderQueue.getItem(i);
+
+			if (item < mBatches.size()) {
+				if (program != QUEUE_PROGRAM_BATCH) {
+					useBatchProgram();
+					program = QUEUE_PROGRAM_BATCH;
+				}
+
+				// Materials in the atlas share one texture, which mGl binds
+				// only once.
+				mGl.glBindTexture(GLES20.GL_TEXTURE_2D,
+						getTextureHandle(mBatchMaterials.get(item)));
+				mBatches.get(item).draw(mGl, mBatchPositionHandle,
+						mBatchNormalHandle, mBatchTextureCoordinateHandle,
+						mBatchOffsetHandle);
+			} else {
+				if (program != QUEUE_PROGRAM_NODE) {
+					useNodeProgram();
+					program = QUEUE_PROGRAM_NODE;
+				}
+
+				final SceneNode node = mVisibleNodes.get(item
+						- mBatches.size());
+				final StaticMesh mesh = getMesh(node.getMesh());
+
+				mGl.glBindTexture(GLES20.GL_TEXTURE_2D,
+						getTextureHandle(node.getMaterial()));
+
+				// Pass in the position, normal and texture coordinate
+				// information
+				mesh.bind(mGl, mPositionHandle, mNormalHandle,
+						mTextureCoordinateHandle);
+
+				drawMesh(mesh, node.getWorldMatrix());
+			}
+		}
 
-		letterF();
-		letterO();
-		letterI();
+		// The impostors are cut out of their quads, which is slow on some
+		// GPUs, so they are drawn last, behind the cubes which already
+		// filled the depth buffer.
+		if (mImpostorCount > 0) {
+			useImpostorProgram();
+			for (int i = 0; i < mImpostorBatches.size(); i++) {
+				mImpostorBatches.get(i).draw(mGl, mImpostorPositionHandle, -1,
+						mImpostorTextureCoordinateHandle,
+						mImpostorOffsetHandle);
+			}
+		}
+		mGl.glDisableVertexAttribArray(mBatchOffsetHandle);
 
-		// Draw a plane
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, 0.0f, -2.0f, -5.0f);
-		Matrix.scaleM(mModelMatrix, 0, 25.0f, 1.0f, 25.0f);
+		StaticMesh.unbind(mGl);
+		mFrameStats.mark(FrameStats.STAGE_DRAW);
 
-		// Set the active texture unit to texture unit 0.
-		GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+		endFrame(spinning || mFloorTexturePrefetcher.hasPending());
+	}
 
-		// Bind the texture to this unit.
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mFloorDataHandle);
+	/**
+	 * Sets our batched per-pixel lighting program and its uniforms.
+	 */
+	private void useBatchProgram() {
+		mBatchProgram.use(mGl);
+		mLights.apply(mGl, mBatchLightPositionHandle, mBatchLightColorHandle);
 
 		// Tell the texture uniform sampler to use this texture in the shader by
 		// binding to texture unit 0.
-		GLES20.glUniform1i(mTextureUniformHandle, 0);
+		mGl.glUniform1i(mBatchTextureUniformHandle, 0);
+
+		// The batch is already in world space, so the modelview matrix is the
+		// view matrix and the rotation is applied per cube in the shader.
+		mGl.glUniformMatrix4fv(mBatchMVMatrixHandle, 1, false, mViewMatrix, 0);
+		mGl.glUniformMatrix4fv(mBatchMVPMatrixHandle, 1, false,
+				mViewProjectionMatrix, 0);
+		mGl.glUniformMatrix4fv(mBatchRotationHandle, 1, false,
+				mAccumulatedRotation, 0);
+	}
 
-		// Pass in the texture coordinate information
-		mCubeTextureCoordinatesForPlane.position(0);
-		GLES20.glVertexAttribPointer(mTextureCoordinateHandle,
-				mTextureCoordinateDataSize, GLES20.GL_FLOAT, false, 0,
-				mCubeTextureCoordinatesForPlane);
+	/**
+	 * Sets our per-pixel lighting program for single nodes.
+	 */
+	private void useNodeProgram() {
+		// The node program has no per-cube offsets.
+		mGl.glDisableVertexAttribArray(mBatchOffsetHandle);
 
-		GLES20.glEnableVertexAttribArray(mTextureCoordinateHandle);
+		mProgram.use(mGl);
+		mLights.apply(mGl, mLightPositionHandle, mLightColorHandle);
 
-		drawCube();
+		mGl.glUniform1i(mTextureUniformHandle, 0);
 	}
 
-	public void letterF() {
-		// first cube from down
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, -8.0f, 0.0f, -13.0f);
-		touchRotation();
-		drawCube();
+	/**
+	 * Sets our program for impostors and its uniforms.
+	 */
+	private void useImpostorProgram() {
+		// The impostor program has no normals.
+		mGl.glDisableVertexAttribArray(mBatchNormalHandle);
+
+		mImpostorProgram.use(mGl);
+		mGl.glUniform1i(mImpostorTextureUniformHandle, 0);
+		mGl.glBindTexture(GLES20.GL_TEXTURE_2D, mImpostors.getHandle());
+
+		// The rotation of the cubes is already in the image, which shows
+		// them as seen along the view direction. The quads are turned into
+		// the plane of the screen, so their X and Y follow the view's right
+		// and up like the image does.
+		Matrices.setInverseRotation(mBillboardMatrix, 0, mViewMatrix, 0);
+		mGl.glUniformMatrix4fv(mImpostorMVPMatrixHandle, 1, false,
+				mViewProjectionMatrix, 0);
+		mGl.glUniformMatrix4fv(mImpostorRotationHandle, 1, false,
+				mBillboardMatrix, 0);
+	}
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, -8.0f, 2.0f, -13.0f);
-		touchRotation();
-		drawCube();
+	/**
+	 * Renders one cube of each batch with far cubes into the impostor
+	 * texture, with the current rotation and lit as if it stood in the
+	 * middle of the far cubes.
+	 */
+	private void renderImpostors() {
+		mImpostors.begin();
+		useNodeProgram();
+
+		for (int i = 0; i < mImpostorBatches.size(); i++) {
+			final MeshBatch impostors = mImpostorBatches.get(i);
+			if (impostors.getVisibleCount() == 0) {
+				continue;
+			}
+
+			// Rotated around its own center, like the batched cubes.
+			impostors.getVisibleCenter(mImpostorCenter);
+			System.arraycopy(mAccumulatedRotation, 0, mImpostorModelMatrix, 0,
+					16);
+			System.arraycopy(mImpostorCenter, 0, mImpostorModelMatrix, 12, 3);
+			Matrices.multiplyAffine(mMVMatrix, 0, mViewMatrix, 0,
+					mImpostorModelMatrix, 0);
+			mGl.glUniformMatrix4fv(mMVMatrixHandle, 1, false, mMVMatrix, 0);
+
+			// Seen from the front, with its center in the middle of the cell.
+			mMVMatrix[12] = 0.0f;
+			mMVMatrix[13] = 0.0f;
+			mMVMatrix[14] = 0.0f;
+			Matrices.multiplyByAffine(mMVPMatrix, 0, mImpostorProjection, 0,
+					mMVMatrix, 0);
+			mGl.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mMVPMatrix, 0);
+
+			mGl.glBindTexture(GLES20.GL_TEXTURE_2D,
+					getTextureHandle(mBatchMaterials.get(i)));
+			final StaticMesh mesh = mBatchMeshes.get(i);
+			mesh.bind(mGl, mPositionHandle, mNormalHandle,
+					mTextureCoordinateHandle);
+			mImpostors.setCell(i);
+			mesh.draw(mGl);
+		}
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, -8.0f, 4.0f, -13.0f);
-		touchRotation();
-		drawCube();
+		mImpostors.end(mViewportWidth, mViewportHeight);
+		mImpostorsDirty = false;
+	}
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, -6.0f, 4.0f, -13.0f);
-		touchRotation();
-		drawCube();
+	/**
+	 * Rebuilds the visible cubes and nodes from the view frustum. Only needed
+	 * when the camera or a node moved; the shared rotation turns each cube
+	 * around its own center, which its bounding sphere already covers.
+	 */
+	private void cull() {
+		mFrustum.set(mViewProjectionMatrix, 0);
+
+		int objects = 0;
+		mDrawnObjectCount = 0;
+		mImpostorCount = 0;
+		for (int i = 0; i < mBatches.size(); i++) {
+			final MeshBatch batch = mBatches.get(i);
+			mDrawnObjectCount += batch.cull(mFrustum);
+			objects += batch.getCopyCount();
+
+			// Cubes which are small on screen become impostors.
+			if (mImpostorsSupported) {
+				mImpostorCount += batch.selectLevels(mImpostorBatches.get(i),
+						mViewMatrix, mPixelsPerUnit, LOD_FAR_SIZE,
+						LOD_NEAR_SIZE);
+			}
+		}
+		mImpostorsDirty = true;
+
+		mVisibleNodes.clear();
+		for (int i = 0; i < mDrawnNodes.size(); i++) {
+			final SceneNode node = mDrawnNodes.get(i);
+			if (mFrustum.intersectsSphere(node.getWorldMatrix(),
+					getMesh(node.getMesh()).getBoundingSphere())) {
+				mVisibleNodes.add(node);
+			}
+		}
+		mDrawnObjectCount += mVisibleNodes.size();
+		objects += mDrawnNodes.size();
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, -4.0f, 4.0f, -13.0f);
-		touchRotation();
-		drawCube();
+		mCulledObjectCount = objects - mDrawnObjectCount;
+		mCullingDirty = false;
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, -8.0f, 6.0f, -13.0f);
-		touchRotation();
-		drawCube();
+		sortDraws();
+	}
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, -8.0f, 8.0f, -13.0f);
-		touchRotation();
-		drawCube();
+	/**
+	 * Fills the render queue with the visible batches and nodes, sorted by
+	 * the view space depth of their nearest cube or center. Items below the
+	 * number of batches are batches, the rest visible nodes.
+	 */
+	private void sortDraws() {
+		mRenderQueue.clear();
+
+		for (int i = 0; i < mBatches.size(); i++) {
+			final MeshBatch batch = mBatches.get(i);
+			if (batch.getVisibleCount() > 0) {
+				mRenderQueue.add(batch.getNearestDepth(mViewMatrix),
+						QUEUE_PROGRAM_BATCH,
+						getTextureHandle(mBatchMaterials.get(i)), i);
+			}
+		}
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, -6.0f, 8.0f, -13.0f);
-		touchRotation();
-		drawCube();
+		for (int i = 0; i < mVisibleNodes.size(); i++) {
+			final SceneNode node = mVisibleNodes.get(i);
+			final float[] center = getMesh(node.getMesh()).getBoundingSphere();
+			Matrices.multiplyAffine(mMVMatrix, 0, mViewMatrix, 0,
+					node.getWorldMatrix(), 0);
+			final float depth = -(mMVMatrix[2] * center[0] + mMVMatrix[6]
+					* center[1] + mMVMatrix[10] * center[2] + mMVMatrix[14]);
+			mRenderQueue.add(depth, QUEUE_PROGRAM_NODE,
+					getTextureHandle(node.getMaterial()), mBatches.size() + i);
+		}
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, -4.0f, 8.0f, -13.0f);
-		touchRotation();
-		drawCube();
+		mRenderQueue.sort();
+	}
+
+	/**
+	 * Finishes the frame timings, hands the summary to the callback now and
+	 * then and requests the next frame if needed.
+	 *
+	 * @param animating
+	 *            True if the next frame will differ without new input.
+	 */
+	private void endFrame(final boolean animating) {
+		// There is no binding for timer queries, so the GPU time is the wait
+		// for the GPU to finish the frame. This stalls the pipeline, so it is
+		// only done when asked for.
+		if (mGpuTiming) {
+			mGl.glFinish();
+			mFrameStats.mark(FrameStats.STAGE_GPU);
+		}
 
+		final RenderScheduler scheduler = mRenderScheduler;
+		mFrameStats.endFrame(animating || scheduler != null
+				&& scheduler.isContinuous());
+
+		final FrameStatsCallback callback = mFrameStatsCallback;
+		if (callback != null
+				&& ++mFramesSinceSummary >= FRAME_STATS_SUMMARY_INTERVAL) {
+			mFramesSinceSummary = 0;
+			callback.onFrameStats(mFrameStats.getSummary() + "\ngl calls "
+					+ mGl.getIssuedCount() + " issued, "
+					+ mGl.getSkippedCount() + " skipped\nobjects "
+					+ mDrawnObjectCount + " drawn, " + mCulledObjectCount
+					+ " culled, " + mImpostorCount + " impostors");
+		}
+
+		if (scheduler != null) {
+			scheduler.onFrameDrawn(animating);
+		}
 	}
 
-	public void letterO() {
+	/**
+	 * @return The mesh with the given name in the scene layout.
+	 */
+	private StaticMesh getMesh(String name) {
+		if (MESH_PLANE.equals(name)) {
+			return mPlaneMesh;
+		}
+		return mCubeMesh;
+	}
 
-		// first left down cube
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, 0.0f, 0.0f, -13.0f);
-		touchRotation();
-		drawCube();
+	/**
+	 * @return The texture of the material with the given name in the scene
+	 *         layout.
+	 */
+	private int getTextureHandle(String material) {
+		if (MATERIAL_FLOOR.equals(material)) {
+			return mFloorDataHandle;
+		}
+		return mAtlas.getHandle();
+	}
 
-		// second left cube
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, 0.0f, 2.0f, -13.0f);
-		touchRotation();
-		drawCube();
+	/**
+	 * Adds a touch movement, in pixels. Called from the UI thread.
+	 */
+	public void addTouchDelta(float deltaX, float deltaY) {
+		mTouchInput.add(deltaX, deltaY);
+	}
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, 0.0f, 4.0f, -13.0f);
-		touchRotation();
-		drawCube();
+	/**
+	 * Takes a snapshot of the touch movement since the last frame and applies
+	 * it to the accumulated rotation. Called once per frame, so every cube of
+	 * the frame sees the same rotation.
+	 */
+	public void touchRotation() {
+		final long delta = mTouchInput.drain();
+		final float deltaX = TouchAccumulator.x(delta);
+		final float deltaY = TouchAccumulator.y(delta);
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, 0.0f, 6.0f, -13.0f);
-		touchRotation();
-		drawCube();
+		// Nothing to do if the user did not touch the screen.
+		if (deltaX == 0.0f && deltaY == 0.0f) {
+			return;
+		}
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, 2.0f, 6.0f, -13.0f);
-		touchRotation();
-		drawCube();
+		mArcball.getRotation(mTouchX, mTouchY, mTouchX + deltaX, mTouchY
+				+ deltaY, mRotationStep);
+		rotate(mRotationStep);
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, 4.0f, 6.0f, -13.0f);
-		touchRotation();
-		drawCube();
+		mTouchX += deltaX;
+		mTouchY += deltaY;
+	}
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, 4.0f, 4.0f, -13.0f);
-		touchRotation();
-		drawCube();
+	/**
+	 * Continues the rotation of the last fling, slowing down exponentially.
+	 *
+	 * @return True while still spinning.
+	 */
+	private boolean spin() {
+		if (mSpinVelocity == 0.0f) {
+			return false;
+		}
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, 4.0f, 2.0f, -13.0f);
-		touchRotation();
-		drawCube();
+		final long now = System.nanoTime();
+		final float step = Math.min((now - mLastSpinNanos) / 1000000000.0f,
+				SPIN_MAX_STEP);
+		mLastSpinNanos = now;
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, 4.0f, 0.0f, -13.0f);
-		touchRotation();
-		drawCube();
+		mRotationStep.setAxisAngle(mSpinVelocity * step, mSpinAxisX,
+				mSpinAxisY, mSpinAxisZ);
+		rotate(mRotationStep);
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, 2.0f, 0.0f, -13.0f);
-		touchRotation();
-		drawCube();
+		mSpinVelocity *= (float) Math.exp(-SPIN_DECAY * step);
+		if (mSpinVelocity < SPIN_MIN_VELOCITY) {
+			mSpinVelocity = 0.0f;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Starts spinning the cubes, after the finger left the screen. The spin
+	 * continues the rotation the finger made on the arcball just before. Must
+	 * be called on the GL thread.
+	 *
+	 * @param velocityX
+	 *            Speed of the finger, in pixels per second.
+	 * @param velocityY
+	 *            Speed of the finger, in pixels per second, positive down.
+	 */
+	public void fling(final float velocityX, final float velocityY) {
+		mArcball.getRotation(mTouchX - velocityX * FLING_SAMPLE_TIME, mTouchY
+				- velocityY * FLING_SAMPLE_TIME, mTouchX, mTouchY,
+				mRotationStep);
+
+		final float x = mRotationStep.getX();
+		final float y = mRotationStep.getY();
+		final float z = mRotationStep.getZ();
+		final float length = (float) Math.sqrt(x * x + y * y + z * z);
+		if (length == 0.0f) {
+			stopSpin();
+			return;
+		}
 
+		mSpinAxisX = x / length;
+		mSpinAxisY = y / length;
+		mSpinAxisZ = z / length;
+		mSpinVelocity = mRotationStep.getAngle() / FLING_SAMPLE_TIME;
+		mLastSpinNanos = System.nanoTime();
 	}
 
-	public void letterI() {
-		// first down cube
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, 9.0f, 0.0f, -13.0f);
-		touchRotation();
-		drawCube();
+	/**
+	 * Stops the spin and starts following a finger which touched the screen.
+	 * Must be called on the GL thread.
+	 *
+	 * @param x
+	 *            Where the finger touched, in view pixels.
+	 */
+	public void startDrag(final float x, final float y) {
+		stopSpin();
+		mTouchX = x;
+		mTouchY = y;
+	}
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, 9.0f, 2.0f, -13.0f);
-		touchRotation();
-		drawCube();
+	private void stopSpin() {
+		mSpinVelocity = 0.0f;
+	}
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, 9.0f, 4.0f, -13.0f);
-		touchRotation();
-		drawCube();
+	/**
+	 * Applies a rotation after the accumulated rotation. The orientation is
+	 * normalized every few rotations, before rounding errors add up.
+	 */
+	private void rotate(final Quaternion rotation) {
+		mOrientation.rotateBy(rotation);
+		mImpostorsDirty = true;
+
+		mRotationsSinceNormalize++;
+		if (mRotationsSinceNormalize >= ORIENTATION_NORMALIZE_INTERVAL) {
+			mOrientation.normalize();
+			mRotationsSinceNormalize = 0;
+		}
+	}
 
-		Matrix.setIdentityM(mModelMatrix, 0);
-		Matrix.translateM(mModelMatrix, 0, 9.0f, 8.0f, -13.0f);
-		touchRotation();
-		drawCube();
+	/**
+	 * Decodes all floor textures in the background as soon as the surface is
+	 * created, and again after every loss of the GL context.
+	 */
+	public void prefetchFloorTextures() {
+		mPrefetchFloorTextures = true;
 	}
 
-	public void touchRotation() {
-		// Set a matrix that contains the current rotation.
-		Matrix.setIdentityM(mCurrentRotation, 0);
-		Matrix.rotateM(mCurrentRotation, 0, mDeltaX, 0.0f, 1.0f, 0.0f);
-		Matrix.rotateM(mCurrentRotation, 0, mDeltaY, 1.0f, 0.0f, 0.0f);
-		mDeltaX = 0.0f;
-		mDeltaY = 0.0f;
-
-		// Multiply the current rotation by the accumulated rotation, and then
-		// set the accumulated rotation to the result.
-		Matrix.multiplyMM(mTemporaryMatrix, 0, mCurrentRotation, 0,
-				mAccumulatedRotation, 0);
-		System.arraycopy(mTemporaryMatrix, 0, mAccumulatedRotation, 0, 16);
+	/**
+	 * Attenuates the lights per vertex instead of per fragment, which is
+	 * cheaper on slow GPUs. Takes effect when the surface is created.
+	 */
+	public void useVertexAttenuation() {
+		mVertexAttenuation = true;
+	}
 
-		// Rotate the cube taking the overall rotation into account.
-		Matrix.multiplyMM(mTemporaryMatrix, 0, mModelMatrix, 0,
-				mAccumulatedRotation, 0);
-		System.arraycopy(mTemporaryMatrix, 0, mModelMatrix, 0, 16);
+	/**
+	 * Sets the scheduler which is told when the next frame is needed. Called
+	 * before the surface is created.
+	 */
+	public void setRenderScheduler(final RenderScheduler scheduler) {
+		mRenderScheduler = scheduler;
+		mFloorTexturePrefetcher.setOnDecoded(new Runnable() {
+			@Override
+			public void run() {
+				scheduler.requestRender();
+			}
+		});
+	}
 
+	/**
+	 * Shows the frame timings.
+	 *
+	 * @param callback
+	 *            Receives the summary every few frames, null to stop.
+	 * @param gpuTiming
+	 *            True to wait for the GPU at the end of each frame, to measure
+	 *            its time. This costs throughput.
+	 */
+	public void setFrameStatsCallback(final FrameStatsCallback callback,
+			final boolean gpuTiming) {
+		mFrameStatsCallback = callback;
+		mGpuTiming = gpuTiming;
 	}
 
-	public void setFloorTexture(final int item) {
-		// if (mFloorDataHandle != 0) {
-		final int floorTextureId;
-		if (item == 0) {
-			floorTextureId = R.drawable.floor_texture_0;
-		} else if (item == 1) {
-			floorTextureId = R.drawable.floor_texture_1;
-		} else if (item == 2) {
-			floorTextureId = R.drawable.floor_texture_2;
-		} else if (item == 3) {
-			floorTextureId = R.drawable.floor_texture_3;
-		} else if (item == 4) {
-			floorTextureId = R.drawable.floor_texture_4;
-		} else { // if (item == 5)
-			floorTextureId = R.drawable.floor_texture_5;
+	/**
+	 * Writes the timings of the recent frames as CSV. Must be called on the GL
+	 * thread.
+	 */
+	public void exportFrameStats(final File file) throws IOException {
+		final Writer out = new BufferedWriter(new FileWriter(file));
+		try {
+			mFrameStats.writeCsv(out);
+		} finally {
+			out.close();
 		}
+	}
 
-		mFloorDataHandle = TextureHelper.loadTexture(mActivityContext,
-				floorTextureId);
-		GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-
-		selectedFloorTextureItem = item;
+	/**
+	 * Stops prefetching floor textures.
+	 */
+	public void stopPrefetching() {
+		mPrefetchFloorTextures = false;
+		mFloorTexturePrefetcher.stop();
 	}
 
 	/**
-	 * Draws a cube.
+	 * Selects one of the floor textures. Recently used textures stay resident,
+	 * so switching back to them does not load anything.
 	 */
-	private void drawCube() {
-		// Pass in the position information
-		mCubePositions.position(0);
-		GLES20.glVertexAttribPointer(mPositionHandle, mPositionDataSize,
-				GLES20.GL_FLOAT, false, 0, mCubePositions);
+	public void setFloorTexture(final int item) {
+		final int floorTextureId = FLOOR_TEXTURES[Math.min(Math.max(item, 0),
+				FLOOR_TEXTURES.length - 1)];
 
-		GLES20.glEnableVertexAttribArray(mPositionHandle);
+		// Use the prefetched bitmap if it is waiting for upload.
+		mFloorTexturePrefetcher.upload(floorTextureId);
 
-		// Pass in the normal information
-		mCubeNormals.position(0);
-		GLES20.glVertexAttribPointer(mNormalHandle, mNormalDataSize,
-				GLES20.GL_FLOAT, false, 0, mCubeNormals);
+		mFloorDataHandle = mFloorTextureCache.get(floorTextureId);
 
-		GLES20.glEnableVertexAttribArray(mNormalHandle);
+		selectedFloorTextureItem = item;
+	}
 
+	/**
+	 * Draws an already bound mesh.
+	 *
+	 * @param modelMatrix
+	 *            Moves the mesh from object space (where each model can be
+	 *            thought of being located at the center of the universe) to
+	 *            world space.
+	 */
+	private void drawMesh(StaticMesh mesh, float[] modelMatrix) {
 		// This multiplies the view matrix by the model matrix, and stores the
-		// result in the MVP matrix
-		// (which currently contains model * view).
-		Matrix.multiplyMM(mMVPMatrix, 0, mViewMatrix, 0, mModelMatrix, 0);
+		// result in the MV matrix.
+		Matrices.multiplyAffine(mMVMatrix, 0, mViewMatrix, 0, modelMatrix, 0);
 
 		// Pass in the modelview matrix.
-		GLES20.glUniformMatrix4fv(mMVMatrixHandle, 1, false, mMVPMatrix, 0);
+		mGl.glUniformMatrix4fv(mMVMatrixHandle, 1, false, mMVMatrix, 0);
 
-		// This multiplies the modelview matrix by the projection matrix, and
-		// stores the result in the MVP matrix
-		// (which now contains model * view * projection).
-		Matrix.multiplyMM(mTemporaryMatrix, 0, mProjectionMatrix, 0,
-				mMVPMatrix, 0);
-		System.arraycopy(mTemporaryMatrix, 0, mMVPMatrix, 0, 16);
+		// This multiplies the cached view projection matrix by the model
+		// matrix, and stores the result in the MVP matrix.
+		Matrices.multiplyByAffine(mMVPMatrix, 0, mViewProjectionMatrix, 0,
+				modelMatrix, 0);
 
 		// Pass in the combined matrix.
-		GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mMVPMatrix, 0);
+		mGl.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mMVPMatrix, 0);
 
-		// Draw the cube.
-		GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 36);
+		// Draw the mesh.
+		mesh.draw(mGl);
 	}
 
+	/**
+	 * Replaces the image of the cube material in the atlas. Must be called on
+	 * the GL thread. The bitmap is recycled.
+	 */
 	public void setCubeBitmap(Bitmap b) {
-		this.cubeBitmap = b;
+		// Before the surface is created the atlas is only composed, and
+		// uploaded there.
+		mAtlas.setImage(MATERIAL_CUBE, b);
+		b.recycle();
+		mImpostorsDirty = true;
 	}
 
 }
\ No newline at end of file
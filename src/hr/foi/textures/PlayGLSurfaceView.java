@@ -1,25 +1,33 @@
 package hr.foi.textures;
 
+import hr.foi.textures.helpers.RenderScheduler;
 import android.content.Context;
 import android.opengl.GLSurfaceView;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
+import android.view.VelocityTracker;
 
 /**
  * A view container where OpenGL ES graphics can be drawn on screen. This view
  * can also be used to capture touch events, such as a user interacting with
  * drawn objects.
+ *
+ * It only draws when something changed, see {@link RenderScheduler}. A fling
+ * keeps the cubes spinning until they slow down.
  */
 public class PlayGLSurfaceView extends GLSurfaceView {
 
 	private PlayGLRenderer mRenderer;
 
+	private RenderScheduler mRenderScheduler;
+
+	/** Measures the speed of the finger, for flings. */
+	private VelocityTracker mVelocityTracker;
+
 	// Offsets for touch events
 	private float mPreviousX;
 	private float mPreviousY;
 
-	private float mDensity;
-
 	public PlayGLSurfaceView(Context context) {
 		super(context);
 	}
@@ -34,13 +42,18 @@ public class PlayGLSurfaceView extends GLSurfaceView {
 			float x = event.getX();
 			float y = event.getY();
 
-			if (event.getAction() == MotionEvent.ACTION_MOVE) {
-				if (mRenderer != null) {
-					float deltaX = (x - mPreviousX) / mDensity / 2f;
-					float deltaY = (y - mPreviousY) / mDensity / 2f;
+			final int action = event.getAction();
+			if (mRenderer != null) {
+				trackVelocity(event, action);
+			}
 
-					mRenderer.mDeltaX += deltaX;
-					mRenderer.mDeltaY += deltaY;
+			if (action == MotionEvent.ACTION_MOVE) {
+				if (mRenderer != null) {
+					// The historical points of the event lie between the
+					// previous and the current point, so they all add up to a
+					// single delta. The renderer maps it onto its arcball.
+					mRenderer.addTouchDelta(x - mPreviousX, y - mPreviousY);
+					mRenderScheduler.requestRender();
 				}
 			}
 
@@ -53,10 +66,66 @@ public class PlayGLSurfaceView extends GLSurfaceView {
 		}
 	}
 
+	/**
+	 * Stops the spin when the finger goes down and starts it with the speed
+	 * of the finger when it goes up.
+	 */
+	private void trackVelocity(final MotionEvent event, final int action) {
+		if (action == MotionEvent.ACTION_DOWN) {
+			if (mVelocityTracker == null) {
+				mVelocityTracker = VelocityTracker.obtain();
+			} else {
+				mVelocityTracker.clear();
+			}
+			final float x = event.getX();
+			final float y = event.getY();
+			queueEvent(new Runnable() {
+				@Override
+				public void run() {
+					mRenderer.startDrag(x, y);
+				}
+			});
+		}
+
+		if (mVelocityTracker == null) {
+			return;
+		}
+		mVelocityTracker.addMovement(event);
+
+		if (action == MotionEvent.ACTION_UP) {
+			// Pixels per second.
+			mVelocityTracker.computeCurrentVelocity(1000);
+			final float velocityX = mVelocityTracker.getXVelocity();
+			final float velocityY = mVelocityTracker.getYVelocity();
+			queueEvent(new Runnable() {
+				@Override
+				public void run() {
+					mRenderer.fling(velocityX, velocityY);
+				}
+			});
+			mRenderScheduler.requestRender();
+		}
+
+		if (action == MotionEvent.ACTION_UP
+				|| action == MotionEvent.ACTION_CANCEL) {
+			mVelocityTracker.recycle();
+			mVelocityTracker = null;
+		}
+	}
+
 	// Hides superclass method.
-	public void setRenderer(PlayGLRenderer renderer, float density) {
+	public void setRenderer(PlayGLRenderer renderer) {
 		mRenderer = renderer;
-		mDensity = density;
 		super.setRenderer(renderer);
+
+		mRenderScheduler = new RenderScheduler(this);
+		renderer.setRenderScheduler(mRenderScheduler);
+	}
+
+	/**
+	 * @return Decides when the view draws, null before the renderer is set.
+	 */
+	public RenderScheduler getRenderScheduler() {
+		return mRenderScheduler;
 	}
 }
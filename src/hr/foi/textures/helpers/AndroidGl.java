@@ -0,0 +1,128 @@
+package hr.foi.textures.helpers;
+
+import java.nio.Buffer;
+
+import android.opengl.GLES20;
+
+/**
+ * Forwards every call to {@link GLES20}.
+ */
+public class AndroidGl implements Gl {
+
+	@Override
+	public void glUseProgram(final int program) {
+		GLES20.glUseProgram(program);
+	}
+
+	@Override
+	public void glActiveTexture(final int texture) {
+		GLES20.glActiveTexture(texture);
+	}
+
+	@Override
+	public void glBindTexture(final int target, final int texture) {
+		GLES20.glBindTexture(target, texture);
+	}
+
+	@Override
+	public void glBindBuffer(final int target, final int buffer) {
+		GLES20.glBindBuffer(target, buffer);
+	}
+
+	@Override
+	public void glBufferSubData(final int target, final int offset,
+			final int size, final Buffer data) {
+		GLES20.glBufferSubData(target, offset, size, data);
+	}
+
+	@Override
+	public void glEnable(final int capability) {
+		GLES20.glEnable(capability);
+	}
+
+	@Override
+	public void glDisable(final int capability) {
+		GLES20.glDisable(capability);
+	}
+
+	@Override
+	public void glBlendFunc(final int sourceFactor,
+			final int destinationFactor) {
+		GLES20.glBlendFunc(sourceFactor, destinationFactor);
+	}
+
+	@Override
+	public void glDepthMask(final boolean flag) {
+		GLES20.glDepthMask(flag);
+	}
+
+	@Override
+	public void glCullFace(final int mode) {
+		GLES20.glCullFace(mode);
+	}
+
+	@Override
+	public void glEnableVertexAttribArray(final int index) {
+		GLES20.glEnableVertexAttribArray(index);
+	}
+
+	@Override
+	public void glDisableVertexAttribArray(final int index) {
+		GLES20.glDisableVertexAttribArray(index);
+	}
+
+	@Override
+	public void glVertexAttribPointer(final int index, final int size,
+			final int type, final boolean normalized, final int stride,
+			final int offset) {
+		GLES20.glVertexAttribPointer(index, size, type, normalized, stride,
+			offset);
+	}
+
+	@Override
+	public void glVertexAttribPointer(final int index, final int size,
+			final int type, final boolean normalized, final int stride,
+			final Buffer pointer) {
+		GLES20.glVertexAttribPointer(index, size, type, normalized, stride,
+			pointer);
+	}
+
+	@Override
+	public void glUniform1i(final int location, final int x) {
+		GLES20.glUniform1i(location, x);
+	}
+
+	@Override
+	public void glUniform3fv(final int location, final int count,
+			final float[] v, final int offset) {
+		GLES20.glUniform3fv(location, count, v, offset);
+	}
+
+	@Override
+	public void glUniformMatrix4fv(final int location, final int count,
+			final boolean transpose, final float[] value, final int offset) {
+		GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+	}
+
+	@Override
+	public void glClear(final int mask) {
+		GLES20.glClear(mask);
+	}
+
+	@Override
+	public void glDrawElements(final int mode, final int count, final int type,
+			final int offset) {
+		GLES20.glDrawElements(mode, count, type, offset);
+	}
+
+	@Override
+	public void glDrawElements(final int mode, final int count, final int type,
+			final Buffer indices) {
+		GLES20.glDrawElements(mode, count, type, indices);
+	}
+
+	@Override
+	public void glFinish() {
+		GLES20.glFinish();
+	}
+}
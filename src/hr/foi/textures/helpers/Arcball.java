@@ -0,0 +1,64 @@
+package hr.foi.textures.helpers;
+
+/**
+ * Turns the movement of a finger into a rotation, as if it dragged a ball
+ * filling the view. Movement through the center rotates around the screen's
+ * X and Y axes; movement around the edge rotates around the axis pointing
+ * out of the screen.
+ *
+ * Dragging across the whole ball turns it half around. Points outside the
+ * ball are moved to its edge.
+ */
+public class Arcball {
+
+	private float mCenterX;
+	private float mCenterY;
+	private float mRadius = 1.0f;
+
+	/** Points on the ball, X, Y and Z. */
+	private final float[] mFrom = new float[3];
+	private final float[] mTo = new float[3];
+
+	/**
+	 * Sets the size of the view, in pixels.
+	 */
+	public void setSize(final int width, final int height) {
+		mCenterX = width / 2.0f;
+		mCenterY = height / 2.0f;
+		mRadius = Math.max(1.0f, Math.min(width, height) / 2.0f);
+	}
+
+	/**
+	 * Computes the rotation of a drag between two points of the view.
+	 *
+	 * @param fromX
+	 *            Where the drag started, in view pixels, like the others.
+	 * @param rotation
+	 *            Receives the rotation, in the space of the screen: X to the
+	 *            right, Y up and Z out of the screen.
+	 */
+	public void getRotation(final float fromX, final float fromY,
+			final float toX, final float toY, final Quaternion rotation) {
+		map(fromX, fromY, mFrom);
+		map(toX, toY, mTo);
+		rotation.setArc(mFrom[0], mFrom[1], mFrom[2], mTo[0], mTo[1], mTo[2]);
+	}
+
+	private void map(final float x, final float y, final float[] point) {
+		// View Y points down.
+		float px = (x - mCenterX) / mRadius;
+		float py = (mCenterY - y) / mRadius;
+		final float lengthSquared = px * px + py * py;
+
+		if (lengthSquared > 1.0f) {
+			final float scale = 1.0f / (float) Math.sqrt(lengthSquared);
+			px *= scale;
+			py *= scale;
+			point[2] = 0.0f;
+		} else {
+			point[2] = (float) Math.sqrt(1.0f - lengthSquared);
+		}
+		point[0] = px;
+		point[1] = py;
+	}
+}
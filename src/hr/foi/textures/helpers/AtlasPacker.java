@@ -0,0 +1,229 @@
+package hr.foi.textures.helpers;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Packs rectangles into a square power of two sheet with the skyline bottom
+ * left algorithm. Plain Java without any Android dependencies.
+ *
+ * Every rectangle is surrounded by a gutter, which the atlas fills with its
+ * edge texels. Rectangles are aligned to the gutter size, so with a gutter of
+ * 2^k texels the first k levels below the base level never mix neighbouring
+ * rectangles. Gutters along the sheet border are left out, since
+ * GL_CLAMP_TO_EDGE repeats the edge texels there anyway.
+ */
+public class AtlasPacker {
+
+	/** A packed rectangle, in texels of the sheet. */
+	public static class Region {
+		public final int x;
+		public final int y;
+		public final int width;
+		public final int height;
+
+		Region(int x, int y, int width, int height) {
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+	}
+
+	/** Width of the gutter around each rectangle, a power of two. */
+	private final int mGutter;
+
+	/** Largest allowed sheet size, normally GL_MAX_TEXTURE_SIZE. */
+	private final int mMaxSize;
+
+	/** Size of the last packed sheet. */
+	private int mSize;
+
+	/**
+	 * The skyline, as segments from left to right. Segment i starts at
+	 * mSkylineX[i] and has the height mSkylineY[i].
+	 */
+	private int[] mSkylineX;
+	private int[] mSkylineY;
+	private int mSegments;
+
+	/**
+	 * @param gutter
+	 *            Width of the gutter around each rectangle, a power of two.
+	 * @param maxSize
+	 *            Largest allowed sheet size, normally GL_MAX_TEXTURE_SIZE.
+	 */
+	public AtlasPacker(final int gutter, final int maxSize) {
+		if (gutter < 1 || (gutter & (gutter - 1)) != 0) {
+			throw new IllegalArgumentException(
+					"The gutter must be a power of two.");
+		}
+		mGutter = gutter;
+		mMaxSize = maxSize;
+	}
+
+	/**
+	 * Packs rectangles into the smallest sheet they fit into.
+	 *
+	 * @return The regions, in the order of the rectangles. The sheet size is
+	 *         {@link #getSize()} afterwards.
+	 */
+	public Region[] pack(final int[] widths, final int[] heights) {
+		int size = 1;
+		for (int i = 0; i < widths.length; i++) {
+			while (size < widths[i] || size < heights[i]) {
+				size *= 2;
+			}
+		}
+
+		for (; size <= mMaxSize; size *= 2) {
+			final Region[] regions = pack(widths, heights, size);
+			if (regions != null) {
+				mSize = size;
+				return regions;
+			}
+		}
+
+		throw new RuntimeException("The textures do not fit into a "
+				+ mMaxSize + "x" + mMaxSize + " atlas.");
+	}
+
+	/**
+	 * Packs rectangles into a sheet of the given size, largest first.
+	 *
+	 * @return The regions, or null if they do not fit.
+	 */
+	private Region[] pack(final int[] widths, final int[] heights,
+			final int size) {
+		// Rectangles are packed as cells including their gutters, into a bin
+		// whose border gutter lies outside the sheet.
+		final int bin = size + 2 * mGutter;
+		mSkylineX = new int[widths.length + 1];
+		mSkylineY = new int[widths.length + 1];
+		mSkylineX[0] = 0;
+		mSkylineY[0] = 0;
+		mSegments = 1;
+
+		final Integer[] order = new Integer[widths.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				final int byHeight = heights[b] - heights[a];
+				return byHeight != 0 ? byHeight : widths[b] - widths[a];
+			}
+		});
+
+		final Region[] regions = new Region[widths.length];
+		for (int i = 0; i < order.length; i++) {
+			final int index = order[i];
+			final int cellWidth = align(widths[index]) + 2 * mGutter;
+			final int cellHeight = align(heights[index]) + 2 * mGutter;
+
+			int bestSegment = -1;
+			int bestX = 0;
+			int bestY = Integer.MAX_VALUE;
+			for (int segment = 0; segment < mSegments; segment++) {
+				final int x = mSkylineX[segment];
+				if (x + cellWidth > bin) {
+					break;
+				}
+
+				final int y = fitHeight(segment, cellWidth);
+				if (y + cellHeight <= bin && y < bestY) {
+					bestSegment = segment;
+					bestX = x;
+					bestY = y;
+				}
+			}
+
+			if (bestSegment < 0) {
+				return null;
+			}
+
+			addSkyline(bestSegment, bestX, cellWidth, bestY + cellHeight, bin);
+			regions[index] = new Region(bestX, bestY, widths[index],
+					heights[index]);
+		}
+
+		return regions;
+	}
+
+	/**
+	 * @return The height at which a cell starting at the given segment rests
+	 *         on the skyline.
+	 */
+	private int fitHeight(final int segment, final int width) {
+		final int right = mSkylineX[segment] + width;
+		int y = 0;
+		for (int i = segment; i < mSegments && mSkylineX[i] < right; i++) {
+			y = Math.max(y, mSkylineY[i]);
+		}
+		return y;
+	}
+
+	/**
+	 * Raises the skyline under a placed cell and merges equal neighbours.
+	 */
+	private void addSkyline(final int segment, final int x, final int width,
+			final int y, final int bin) {
+		final int right = x + width;
+
+		// Height of the skyline just right of the cell.
+		int last = segment;
+		while (last + 1 < mSegments && mSkylineX[last + 1] < right) {
+			last++;
+		}
+		final int rightY = mSkylineY[last];
+		final int lastRight = last + 1 < mSegments ? mSkylineX[last + 1] : bin;
+		final boolean splitsLast = lastRight > right;
+
+		// Replace the covered segments with the cell and the rest of the last
+		// one.
+		final int removed = last - segment + 1;
+		final int added = splitsLast ? 2 : 1;
+		System.arraycopy(mSkylineX, last + 1, mSkylineX, segment + added,
+				mSegments - last - 1);
+		System.arraycopy(mSkylineY, last + 1, mSkylineY, segment + added,
+				mSegments - last - 1);
+		mSegments += added - removed;
+
+		mSkylineX[segment] = x;
+		mSkylineY[segment] = y;
+		if (splitsLast) {
+			mSkylineX[segment + 1] = right;
+			mSkylineY[segment + 1] = rightY;
+		}
+
+		// Merge neighbours of equal height.
+		int write = 0;
+		for (int read = 1; read < mSegments; read++) {
+			if (mSkylineY[read] != mSkylineY[write]) {
+				write++;
+				mSkylineX[write] = mSkylineX[read];
+				mSkylineY[write] = mSkylineY[read];
+			}
+		}
+		mSegments = write + 1;
+	}
+
+	/**
+	 * Rounds a size up to a multiple of the gutter.
+	 */
+	private int align(final int size) {
+		return (size + mGutter - 1) & ~(mGutter - 1);
+	}
+
+	/**
+	 * @return Size of the last packed sheet.
+	 */
+	public int getSize() {
+		return mSize;
+	}
+
+	public int getGutter() {
+		return mGutter;
+	}
+}
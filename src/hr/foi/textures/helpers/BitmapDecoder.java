@@ -0,0 +1,177 @@
+package hr.foi.textures.helpers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Process;
+
+/**
+ * Decodes and resizes bitmaps on a background thread. Large images are
+ * subsampled while decoding, so they are never held in memory at full
+ * resolution. A newer request cancels all older ones.
+ */
+public class BitmapDecoder {
+
+	/**
+	 * Receives decoded bitmaps. Called on the decoder thread.
+	 */
+	public interface Callback {
+		void onBitmapDecoded(Bitmap bitmap);
+	}
+
+	private final ExecutorService mExecutor = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable runnable) {
+					return new Thread(new Runnable() {
+						@Override
+						public void run() {
+							Process.setThreadPriority(
+									Process.THREAD_PRIORITY_BACKGROUND);
+							runnable.run();
+						}
+					}, "BitmapDecoder");
+				}
+			});
+
+	/** Incremented by every request, results of older requests are dropped. */
+	private final AtomicInteger mGeneration = new AtomicInteger();
+
+	/** The request currently queued or running, guarded by this. */
+	private Future<?> mPending;
+	private BitmapFactory.Options mPendingOptions;
+
+	/** The bitmap the pending request resizes, recycled if it never runs. */
+	private Bitmap mPendingBitmap;
+
+	/**
+	 * Decodes an image file to exactly the requested size.
+	 */
+	public synchronized void decodeFile(final String path, final int width,
+			final int height, final Callback callback) {
+		final int generation = cancelPending();
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		mPendingOptions = options;
+
+		mPending = mExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				// Read only the dimensions first.
+				options.inJustDecodeBounds = true;
+				BitmapFactory.decodeFile(path, options);
+
+				if (options.outWidth <= 0 || options.outHeight <= 0
+						|| !isCurrent(generation)) {
+					return;
+				}
+
+				// Decode straight to the smallest size still above the target.
+				options.inJustDecodeBounds = false;
+				options.inSampleSize = calculateInSampleSize(options.outWidth,
+						options.outHeight, width, height);
+				final Bitmap decoded = BitmapFactory.decodeFile(path, options);
+
+				deliver(decoded, width, height, generation, callback);
+			}
+		});
+	}
+
+	/**
+	 * Resizes an already decoded bitmap to exactly the requested size. The
+	 * decoder takes over the bitmap, and recycles it unless it is delivered
+	 * as it is, also if the request is cancelled.
+	 */
+	public synchronized void resize(final Bitmap bitmap, final int width,
+			final int height, final Callback callback) {
+		final int generation = cancelPending();
+		mPendingBitmap = bitmap;
+
+		mPending = mExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				deliver(bitmap, width, height, generation, callback);
+			}
+		});
+	}
+
+	/**
+	 * Cancels any pending request.
+	 */
+	public synchronized void cancel() {
+		cancelPending();
+	}
+
+	/**
+	 * Cancels any pending request and stops the decoder thread.
+	 */
+	public synchronized void shutdown() {
+		cancelPending();
+		mExecutor.shutdownNow();
+	}
+
+	/**
+	 * Cancels the pending request, if any.
+	 *
+	 * @return The generation of the next request.
+	 */
+	private int cancelPending() {
+		final int generation = mGeneration.incrementAndGet();
+
+		if (mPending != null) {
+			// A request which already started recycles its bitmap itself.
+			if (mPending.cancel(false) && mPendingBitmap != null) {
+				mPendingBitmap.recycle();
+			}
+			mPending = null;
+		}
+		mPendingBitmap = null;
+		if (mPendingOptions != null) {
+			mPendingOptions.requestCancelDecode();
+			mPendingOptions = null;
+		}
+
+		return generation;
+	}
+
+	private boolean isCurrent(final int generation) {
+		return mGeneration.get() == generation;
+	}
+
+	private void deliver(final Bitmap decoded, final int width,
+			final int height, final int generation, final Callback callback) {
+		if (decoded == null) {
+			return;
+		}
+
+		Bitmap result = decoded;
+		if (decoded.getWidth() != width || decoded.getHeight() != height) {
+			result = Bitmap.createScaledBitmap(decoded, width, height, true);
+			decoded.recycle();
+		}
+
+		if (isCurrent(generation)) {
+			callback.onBitmapDecoded(result);
+		} else {
+			result.recycle();
+		}
+	}
+
+	/**
+	 * Returns the largest power of two sample size which still decodes the
+	 * image at or above the requested size.
+	 */
+	public static int calculateInSampleSize(final int imageWidth,
+			final int imageHeight, final int width, final int height) {
+		int inSampleSize = 1;
+		while (imageWidth / (inSampleSize * 2) >= width
+				&& imageHeight / (inSampleSize * 2) >= height) {
+			inSampleSize *= 2;
+		}
+		return inSampleSize;
+	}
+}
@@ -0,0 +1,250 @@
+package hr.foi.textures.helpers;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Timings of the most recent frames, split into stages, in a ring buffer
+ * allocated up front. Recording a frame allocates nothing; only the summary
+ * and the CSV export do.
+ *
+ * A frame is recorded between {@link #beginFrame()} and
+ * {@link #endFrame(boolean)}. Each {@link #mark(int)} in between charges the
+ * time since the previous mark to a stage, so a stage may be marked more than
+ * once per frame.
+ *
+ * The interval of a frame is only known if it followed the previous frame
+ * right away. After a frame drawn on demand, the time to the next one is
+ * idle, not late, so it takes no part in the intervals and the jank count.
+ */
+public class FrameStats {
+
+	/** Applying the touch input. */
+	public static final int STAGE_INPUT = 0;
+
+	/** Updating matrices, the scene graph and the lights. */
+	public static final int STAGE_UPDATE = 1;
+
+	/** Uploading textures. */
+	public static final int STAGE_UPLOAD = 2;
+
+	/** Issuing the draw calls. */
+	public static final int STAGE_DRAW = 3;
+
+	/** Waiting for the GPU to finish the frame, if measured. */
+	public static final int STAGE_GPU = 4;
+
+	/** Time from the beginning to the end of a frame. */
+	public static final int TOTAL = 5;
+
+	/** Time since the beginning of the previous frame. */
+	public static final int INTERVAL = 6;
+
+	private static final String[] COLUMN_NAMES = { "input", "update",
+			"upload", "draw", "gpu", "total", "interval" };
+
+	private static final int COLUMNS = COLUMN_NAMES.length;
+
+	private static final float NANOS_PER_MILLI = 1000000.0f;
+
+	/** Interval of a frame which did not follow the previous one. */
+	private static final long NO_INTERVAL = -1;
+
+	/** Timings in nanoseconds, one row of {@link #COLUMNS} per frame. */
+	private final long[] mTimings;
+
+	/** Scratch space for the percentiles. */
+	private final long[] mSorted;
+
+	private final int mCapacity;
+
+	/** Intervals longer than this missed at least one vsync. */
+	private final long mJankThresholdNanos;
+
+	/** Row of the frame being recorded. */
+	private int mFrame;
+
+	/** Number of recorded frames, at most the capacity. */
+	private int mCount;
+
+	private long mFrameStart;
+	private long mLastMark;
+	private long mPreviousFrameStart;
+
+	/** Whether the previous frame asked to be followed right away. */
+	private boolean mPreviousFrameContinued;
+
+	/**
+	 * @param capacity
+	 *            Number of frames kept.
+	 * @param refreshRate
+	 *            Refresh rate of the display in Hz. Frames taking more than
+	 *            one and a half refresh periods count as jank.
+	 */
+	public FrameStats(final int capacity, final float refreshRate) {
+		mCapacity = capacity;
+		mTimings = new long[capacity * COLUMNS];
+		mSorted = new long[capacity];
+		mJankThresholdNanos = (long) (1.5f * 1000000000L / refreshRate);
+	}
+
+	/**
+	 * Starts recording a frame.
+	 */
+	public void beginFrame() {
+		beginFrame(System.nanoTime());
+	}
+
+	/**
+	 * Starts recording a frame at the given time, as System.nanoTime() would
+	 * return it. Lets tests record frames without waiting.
+	 */
+	void beginFrame(final long now) {
+		final int row = mFrame * COLUMNS;
+		for (int i = 0; i < COLUMNS; i++) {
+			mTimings[row + i] = 0;
+		}
+		mTimings[row + INTERVAL] = mPreviousFrameContinued ? now
+				- mPreviousFrameStart : NO_INTERVAL;
+
+		mPreviousFrameStart = now;
+		mFrameStart = now;
+		mLastMark = now;
+	}
+
+	/**
+	 * Charges the time since the previous mark to a stage.
+	 */
+	public void mark(final int stage) {
+		mark(stage, System.nanoTime());
+	}
+
+	void mark(final int stage, final long now) {
+		mTimings[mFrame * COLUMNS + stage] += now - mLastMark;
+		mLastMark = now;
+	}
+
+	/**
+	 * Finishes recording the frame.
+	 *
+	 * @param continued
+	 *            True if the next frame is drawn right after this one,
+	 *            because rendering is continuous or something animates.
+	 */
+	public void endFrame(final boolean continued) {
+		endFrame(System.nanoTime(), continued);
+	}
+
+	void endFrame(final long now, final boolean continued) {
+		mTimings[mFrame * COLUMNS + TOTAL] = now - mFrameStart;
+		mPreviousFrameContinued = continued;
+
+		mFrame = (mFrame + 1) % mCapacity;
+		if (mCount < mCapacity) {
+			mCount++;
+		}
+	}
+
+	/**
+	 * Forgets all frames, for example after the GL context was lost.
+	 */
+	public void reset() {
+		mFrame = 0;
+		mCount = 0;
+		mPreviousFrameContinued = false;
+	}
+
+	/**
+	 * @return Number of frames recorded.
+	 */
+	public int getFrameCount() {
+		return mCount;
+	}
+
+	/**
+	 * @param column
+	 *            A stage, {@link #TOTAL} or {@link #INTERVAL}.
+	 * @param percentile
+	 *            Between 0 and 100.
+	 * @return The given percentile of the column over the recorded frames
+	 *         which have a value in it, in nanoseconds.
+	 */
+	public long getPercentile(final int column, final float percentile) {
+		int count = 0;
+		for (int i = 0; i < mCount; i++) {
+			final long value = mTimings[i * COLUMNS + column];
+			if (value != NO_INTERVAL) {
+				mSorted[count++] = value;
+			}
+		}
+		if (count == 0) {
+			return 0;
+		}
+		Arrays.sort(mSorted, 0, count);
+
+		final int rank = (int) Math.ceil(percentile / 100.0f * count) - 1;
+		return mSorted[Math.max(0, Math.min(count - 1, rank))];
+	}
+
+	/**
+	 * @return Number of recorded frames which missed at least one vsync.
+	 */
+	public int getJankCount() {
+		int jank = 0;
+		for (int i = 0; i < mCount; i++) {
+			if (mTimings[i * COLUMNS + INTERVAL] > mJankThresholdNanos) {
+				jank++;
+			}
+		}
+		return jank;
+	}
+
+	/**
+	 * @return The percentiles of every column and the jank count, in
+	 *         milliseconds, one line per column.
+	 */
+	public String getSummary() {
+		final StringBuilder summary = new StringBuilder();
+		summary.append(String.format(Locale.US,
+				"%d frames, %d jank\n%-8s   p50   p95   p99", mCount,
+				getJankCount(), "ms"));
+		for (int column = 0; column < COLUMNS; column++) {
+			summary.append(String.format(Locale.US,
+					"\n%-8s %5.1f %5.1f %5.1f", COLUMN_NAMES[column],
+					getPercentile(column, 50) / NANOS_PER_MILLI,
+					getPercentile(column, 95) / NANOS_PER_MILLI,
+					getPercentile(column, 99) / NANOS_PER_MILLI));
+		}
+		return summary.toString();
+	}
+
+	/**
+	 * Writes the recorded frames, oldest first, as CSV with a header line and
+	 * one line per frame. Times are in microseconds; unknown intervals are
+	 * left empty.
+	 */
+	public void writeCsv(final Writer out) throws IOException {
+		out.write("frame");
+		for (int column = 0; column < COLUMNS; column++) {
+			out.write(',');
+			out.write(COLUMN_NAMES[column]);
+		}
+		out.write('\n');
+
+		final int oldest = mCount < mCapacity ? 0 : mFrame;
+		for (int i = 0; i < mCount; i++) {
+			final int row = (oldest + i) % mCapacity * COLUMNS;
+			out.write(Integer.toString(i));
+			for (int column = 0; column < COLUMNS; column++) {
+				out.write(',');
+				final long value = mTimings[row + column];
+				if (value != NO_INTERVAL) {
+					out.write(Long.toString(value / 1000));
+				}
+			}
+			out.write('\n');
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package hr.foi.textures.helpers;
+
+/**
+ * The six planes of a view frustum, taken from a projection times view
+ * matrix, and tests of bounding spheres against them. Tests are
+ * conservative: a sphere which is reported outside is certainly not
+ * visible.
+ */
+public class Frustum {
+
+	/** A, B, C and D of each plane, normals pointing inside. */
+	private final float[] mPlanes = new float[6 * 4];
+
+	/**
+	 * Extracts the planes of a matrix, in the column-major order of
+	 * {@link android.opengl.Matrix}.
+	 *
+	 * @param viewProjection
+	 *            The projection times the view matrix.
+	 */
+	public void set(final float[] viewProjection, final int offset) {
+		for (int i = 0; i < 3; i++) {
+			// Left, bottom and near plane, then right, top and far plane,
+			// from the fourth row plus or minus the others.
+			setPlane(i * 2, viewProjection, offset, i, 1.0f);
+			setPlane(i * 2 + 1, viewProjection, offset, i, -1.0f);
+		}
+	}
+
+	private void setPlane(final int plane, final float[] m, final int offset,
+			final int row, final float sign) {
+		final float a = m[offset + 3] + sign * m[offset + row];
+		final float b = m[offset + 7] + sign * m[offset + 4 + row];
+		final float c = m[offset + 11] + sign * m[offset + 8 + row];
+		final float d = m[offset + 15] + sign * m[offset + 12 + row];
+
+		// Normalized, so the plane equation gives distances.
+		final float length = (float) Math.sqrt(a * a + b * b + c * c);
+		mPlanes[plane * 4] = a / length;
+		mPlanes[plane * 4 + 1] = b / length;
+		mPlanes[plane * 4 + 2] = c / length;
+		mPlanes[plane * 4 + 3] = d / length;
+	}
+
+	/**
+	 * @return True if the sphere is at least partly inside the frustum.
+	 */
+	public boolean intersectsSphere(final float x, final float y,
+			final float z, final float radius) {
+		for (int i = 0; i < mPlanes.length; i += 4) {
+			if (mPlanes[i] * x + mPlanes[i + 1] * y + mPlanes[i + 2] * z
+					+ mPlanes[i + 3] < -radius) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tests a bounding sphere in model space.
+	 *
+	 * @param model
+	 *            The model matrix, which may scale.
+	 * @param sphere
+	 *            Center X, Y, Z and radius in model space.
+	 * @return True if the transformed sphere is at least partly inside the
+	 *         frustum.
+	 */
+	public boolean intersectsSphere(final float[] model, final float[] sphere) {
+		final float x = sphere[0];
+		final float y = sphere[1];
+		final float z = sphere[2];
+
+		// The radius grows with the largest scale of the model matrix.
+		final float scale = (float) Math.sqrt(Math.max(
+				lengthSquared(model, 0),
+				Math.max(lengthSquared(model, 4), lengthSquared(model, 8))));
+
+		return intersectsSphere(model[0] * x + model[4] * y + model[8] * z
+				+ model[12], model[1] * x + model[5] * y + model[9] * z
+				+ model[13], model[2] * x + model[6] * y + model[10] * z
+				+ model[14], sphere[3] * scale);
+	}
+
+	private static float lengthSquared(final float[] m, final int column) {
+		return m[column] * m[column] + m[column + 1] * m[column + 1]
+				+ m[column + 2] * m[column + 2];
+	}
+}
@@ -0,0 +1,58 @@
+package hr.foi.textures.helpers;
+
+import java.nio.Buffer;
+
+/**
+ * The GL ES 2.0 calls of the draw path, named as in
+ * {@link android.opengl.GLES20}. {@link AndroidGl} forwards them to the
+ * driver and {@link GlState} filters out those which would not change
+ * anything. The draw path can therefore also run against a recording
+ * implementation on a plain JVM.
+ */
+public interface Gl {
+
+	void glUseProgram(int program);
+
+	void glActiveTexture(int texture);
+
+	void glBindTexture(int target, int texture);
+
+	void glBindBuffer(int target, int buffer);
+
+	void glBufferSubData(int target, int offset, int size, Buffer data);
+
+	void glEnable(int capability);
+
+	void glDisable(int capability);
+
+	void glBlendFunc(int sourceFactor, int destinationFactor);
+
+	void glDepthMask(boolean flag);
+
+	void glCullFace(int mode);
+
+	void glEnableVertexAttribArray(int index);
+
+	void glDisableVertexAttribArray(int index);
+
+	void glVertexAttribPointer(int index, int size, int type,
+			boolean normalized, int stride, int offset);
+
+	void glVertexAttribPointer(int index, int size, int type,
+			boolean normalized, int stride, Buffer pointer);
+
+	void glUniform1i(int location, int x);
+
+	void glUniform3fv(int location, int count, float[] v, int offset);
+
+	void glUniformMatrix4fv(int location, int count, boolean transpose,
+			float[] value, int offset);
+
+	void glClear(int mask);
+
+	void glDrawElements(int mode, int count, int type, int offset);
+
+	void glDrawElements(int mode, int count, int type, Buffer indices);
+
+	void glFinish();
+}
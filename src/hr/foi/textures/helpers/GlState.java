@@ -0,0 +1,480 @@
+package hr.foi.textures.helpers;
+
+import java.nio.Buffer;
+
+import android.opengl.GLES20;
+
+/**
+ * Shadows the GL state touched by the draw path and forwards only the calls
+ * which change it: the current program, the active texture unit and the 2D
+ * texture bound to each unit, the buffer bindings, blending, depth and
+ * culling state, enabled attribute arrays and their pointers, and the
+ * uniform values of each program.
+ *
+ * Attribute calls with a negative index, the handle of an attribute a
+ * program does not use, are dropped, as GL would reject them.
+ *
+ * State changed by code not going through this object is unknown to it.
+ * After such code ran, {@link #invalidate()} or {@link #invalidateTextures()}
+ * must be called, so the next call is forwarded whatever the shadow says.
+ * Only the GL thread may use it.
+ */
+public class GlState implements Gl {
+
+	/** Shadowed value that no call can have set. */
+	private static final int UNKNOWN = -1;
+
+	/** Texture units and attributes tracked, the minimum GL ES 2.0 has. */
+	private static final int MAX_TEXTURE_UNITS = 8;
+	private static final int MAX_ATTRIBUTES = 8;
+
+	/** Capabilities tracked by glEnable and glDisable. */
+	private static final int[] CAPABILITIES = { GLES20.GL_BLEND,
+			GLES20.GL_DEPTH_TEST, GLES20.GL_CULL_FACE };
+
+	/** Uniforms whose values are remembered, and floats per value. */
+	private static final int UNIFORM_SLOTS = 64;
+	private static final int UNIFORM_SIZE = 16;
+
+	private final Gl mGl;
+
+	private int mProgram;
+	private int mActiveTexture;
+	private final int[] mBoundTextures = new int[MAX_TEXTURE_UNITS];
+	private int mArrayBuffer;
+	private int mElementArrayBuffer;
+
+	/** 1 if enabled, 0 if disabled, for each of {@link #CAPABILITIES}. */
+	private final int[] mCapabilities = new int[CAPABILITIES.length];
+	private int mBlendSourceFactor;
+	private int mBlendDestinationFactor;
+	private int mDepthMask;
+	private int mCullFace;
+
+	/** 1 if enabled, 0 if disabled, for each attribute array. */
+	private final int[] mAttributeArrays = new int[MAX_ATTRIBUTES];
+
+	/** Pointer of each attribute: buffer object, format and offset. */
+	private final int[] mAttributeBuffers = new int[MAX_ATTRIBUTES];
+	private final int[] mAttributeFormats = new int[MAX_ATTRIBUTES];
+	private final int[] mAttributeStrides = new int[MAX_ATTRIBUTES];
+	private final int[] mAttributeOffsets = new int[MAX_ATTRIBUTES];
+
+	/** Client memory an attribute points at, if not a buffer object. */
+	private final Buffer[] mAttributePointers = new Buffer[MAX_ATTRIBUTES];
+
+	/**
+	 * Remembered uniforms, an open addressing table keyed by program and
+	 * location. Values are kept as raw float bits, so they compare exactly.
+	 */
+	private final long[] mUniformKeys = new long[UNIFORM_SLOTS];
+	private final int[] mUniformLengths = new int[UNIFORM_SLOTS];
+	private final int[] mUniformValues = new int[UNIFORM_SLOTS * UNIFORM_SIZE];
+
+	private int mIssuedCount;
+	private int mSkippedCount;
+
+	/**
+	 * @param gl
+	 *            Receives the calls which change the state.
+	 */
+	public GlState(final Gl gl) {
+		mGl = gl;
+		invalidate();
+	}
+
+	/**
+	 * Forgets all state, for example after the GL context was created or
+	 * after programs were deleted.
+	 */
+	public void invalidate() {
+		mProgram = UNKNOWN;
+		mActiveTexture = UNKNOWN;
+		mArrayBuffer = UNKNOWN;
+		mElementArrayBuffer = UNKNOWN;
+		for (int i = 0; i < mCapabilities.length; i++) {
+			mCapabilities[i] = UNKNOWN;
+		}
+		mBlendSourceFactor = UNKNOWN;
+		mBlendDestinationFactor = UNKNOWN;
+		mDepthMask = UNKNOWN;
+		mCullFace = UNKNOWN;
+		for (int i = 0; i < MAX_ATTRIBUTES; i++) {
+			mAttributeArrays[i] = UNKNOWN;
+			forgetAttributePointer(i);
+		}
+		for (int i = 0; i < UNIFORM_SLOTS; i++) {
+			mUniformKeys[i] = UNKNOWN;
+		}
+		invalidateTextures();
+	}
+
+	/**
+	 * Forgets the active texture unit and the bound textures, after textures
+	 * were created, uploaded or deleted elsewhere.
+	 */
+	public void invalidateTextures() {
+		mActiveTexture = UNKNOWN;
+		for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+			mBoundTextures[i] = UNKNOWN;
+		}
+	}
+
+	/**
+	 * Starts counting the calls of a new frame.
+	 */
+	public void resetCounts() {
+		mIssuedCount = 0;
+		mSkippedCount = 0;
+	}
+
+	/**
+	 * @return Calls forwarded since {@link #resetCounts()}.
+	 */
+	public int getIssuedCount() {
+		return mIssuedCount;
+	}
+
+	/**
+	 * @return Calls filtered out since {@link #resetCounts()}.
+	 */
+	public int getSkippedCount() {
+		return mSkippedCount;
+	}
+
+	/**
+	 * Counts a call, and returns whether it has to be forwarded.
+	 */
+	private boolean issue(final boolean changed) {
+		if (changed) {
+			mIssuedCount++;
+		} else {
+			mSkippedCount++;
+		}
+		return changed;
+	}
+
+	@Override
+	public void glUseProgram(final int program) {
+		if (issue(mProgram != program)) {
+			mGl.glUseProgram(program);
+			mProgram = program;
+		}
+	}
+
+	@Override
+	public void glActiveTexture(final int texture) {
+		if (issue(mActiveTexture != texture)) {
+			mGl.glActiveTexture(texture);
+			mActiveTexture = texture;
+		}
+	}
+
+	@Override
+	public void glBindTexture(final int target, final int texture) {
+		final int unit = mActiveTexture - GLES20.GL_TEXTURE0;
+		if (target != GLES20.GL_TEXTURE_2D || unit < 0
+				|| unit >= MAX_TEXTURE_UNITS) {
+			issue(true);
+			mGl.glBindTexture(target, texture);
+		} else if (issue(mBoundTextures[unit] != texture)) {
+			mGl.glBindTexture(target, texture);
+			mBoundTextures[unit] = texture;
+		}
+	}
+
+	@Override
+	public void glBindBuffer(final int target, final int buffer) {
+		if (target == GLES20.GL_ARRAY_BUFFER) {
+			if (issue(mArrayBuffer != buffer)) {
+				mGl.glBindBuffer(target, buffer);
+				mArrayBuffer = buffer;
+			}
+		} else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+			if (issue(mElementArrayBuffer != buffer)) {
+				mGl.glBindBuffer(target, buffer);
+				mElementArrayBuffer = buffer;
+			}
+		} else {
+			issue(true);
+			mGl.glBindBuffer(target, buffer);
+		}
+	}
+
+	@Override
+	public void glBufferSubData(final int target, final int offset,
+			final int size, final Buffer data) {
+		issue(true);
+		mGl.glBufferSubData(target, offset, size, data);
+	}
+
+	@Override
+	public void glEnable(final int capability) {
+		setCapability(capability, 1);
+	}
+
+	@Override
+	public void glDisable(final int capability) {
+		setCapability(capability, 0);
+	}
+
+	private void setCapability(final int capability, final int enabled) {
+		int index = 0;
+		while (index < CAPABILITIES.length
+				&& CAPABILITIES[index] != capability) {
+			index++;
+		}
+
+		if (index == CAPABILITIES.length) {
+			issue(true);
+		} else if (issue(mCapabilities[index] != enabled)) {
+			mCapabilities[index] = enabled;
+		} else {
+			return;
+		}
+
+		if (enabled == 1) {
+			mGl.glEnable(capability);
+		} else {
+			mGl.glDisable(capability);
+		}
+	}
+
+	@Override
+	public void glBlendFunc(final int sourceFactor,
+			final int destinationFactor) {
+		if (issue(mBlendSourceFactor != sourceFactor
+				|| mBlendDestinationFactor != destinationFactor)) {
+			mGl.glBlendFunc(sourceFactor, destinationFactor);
+			mBlendSourceFactor = sourceFactor;
+			mBlendDestinationFactor = destinationFactor;
+		}
+	}
+
+	@Override
+	public void glDepthMask(final boolean flag) {
+		final int mask = flag ? 1 : 0;
+		if (issue(mDepthMask != mask)) {
+			mGl.glDepthMask(flag);
+			mDepthMask = mask;
+		}
+	}
+
+	@Override
+	public void glCullFace(final int mode) {
+		if (issue(mCullFace != mode)) {
+			mGl.glCullFace(mode);
+			mCullFace = mode;
+		}
+	}
+
+	@Override
+	public void glEnableVertexAttribArray(final int index) {
+		if (index < 0) {
+			return;
+		} else if (index >= MAX_ATTRIBUTES) {
+			issue(true);
+			mGl.glEnableVertexAttribArray(index);
+		} else if (issue(mAttributeArrays[index] != 1)) {
+			mGl.glEnableVertexAttribArray(index);
+			mAttributeArrays[index] = 1;
+		}
+	}
+
+	@Override
+	public void glDisableVertexAttribArray(final int index) {
+		if (index < 0) {
+			return;
+		} else if (index >= MAX_ATTRIBUTES) {
+			issue(true);
+			mGl.glDisableVertexAttribArray(index);
+		} else if (issue(mAttributeArrays[index] != 0)) {
+			mGl.glDisableVertexAttribArray(index);
+			mAttributeArrays[index] = 0;
+		}
+	}
+
+	@Override
+	public void glVertexAttribPointer(final int index, final int size,
+			final int type, final boolean normalized, final int stride,
+			final int offset) {
+		if (index < 0) {
+			return;
+		}
+
+		final int format = getAttributeFormat(size, type, normalized);
+		if (index >= MAX_ATTRIBUTES || mArrayBuffer == UNKNOWN) {
+			issue(true);
+			mGl.glVertexAttribPointer(index, size, type, normalized, stride,
+					offset);
+			if (index < MAX_ATTRIBUTES) {
+				forgetAttributePointer(index);
+			}
+		} else if (issue(mAttributePointers[index] != null
+				|| mAttributeBuffers[index] != mArrayBuffer
+				|| mAttributeFormats[index] != format
+				|| mAttributeStrides[index] != stride
+				|| mAttributeOffsets[index] != offset)) {
+			mGl.glVertexAttribPointer(index, size, type, normalized, stride,
+					offset);
+			mAttributePointers[index] = null;
+			mAttributeBuffers[index] = mArrayBuffer;
+			mAttributeFormats[index] = format;
+			mAttributeStrides[index] = stride;
+			mAttributeOffsets[index] = offset;
+		}
+	}
+
+	@Override
+	public void glVertexAttribPointer(final int index, final int size,
+			final int type, final boolean normalized, final int stride,
+			final Buffer pointer) {
+		// The driver keeps the address of the buffer at its current
+		// position, so the same buffer at the same position is the same
+		// pointer.
+		if (index < 0) {
+			return;
+		}
+
+		final int format = getAttributeFormat(size, type, normalized);
+		if (index >= MAX_ATTRIBUTES || mArrayBuffer == UNKNOWN) {
+			issue(true);
+			mGl.glVertexAttribPointer(index, size, type, normalized, stride,
+					pointer);
+			if (index < MAX_ATTRIBUTES) {
+				forgetAttributePointer(index);
+			}
+		} else if (issue(mAttributePointers[index] != pointer
+				|| mAttributeBuffers[index] != mArrayBuffer
+				|| mAttributeFormats[index] != format
+				|| mAttributeStrides[index] != stride
+				|| mAttributeOffsets[index] != pointer.position())) {
+			mGl.glVertexAttribPointer(index, size, type, normalized, stride,
+					pointer);
+			mAttributePointers[index] = pointer;
+			mAttributeBuffers[index] = mArrayBuffer;
+			mAttributeFormats[index] = format;
+			mAttributeStrides[index] = stride;
+			mAttributeOffsets[index] = pointer.position();
+		}
+	}
+
+	private static int getAttributeFormat(final int size, final int type,
+			final boolean normalized) {
+		return type << 4 | size << 1 | (normalized ? 1 : 0);
+	}
+
+	private void forgetAttributePointer(final int index) {
+		mAttributePointers[index] = null;
+		mAttributeBuffers[index] = UNKNOWN;
+		mAttributeFormats[index] = UNKNOWN;
+	}
+
+	@Override
+	public void glUniform1i(final int location, final int x) {
+		final int slot = findUniform(location, 1);
+		if (slot < 0) {
+			issue(true);
+			mGl.glUniform1i(location, x);
+		} else if (issue(mUniformLengths[slot] != 1
+				|| mUniformValues[slot * UNIFORM_SIZE] != x)) {
+			mGl.glUniform1i(location, x);
+			mUniformLengths[slot] = 1;
+			mUniformValues[slot * UNIFORM_SIZE] = x;
+		}
+	}
+
+	@Override
+	public void glUniform3fv(final int location, final int count,
+			final float[] v, final int offset) {
+		if (issue(uniformChanged(location, v, offset, count * 3))) {
+			mGl.glUniform3fv(location, count, v, offset);
+		}
+	}
+
+	@Override
+	public void glUniformMatrix4fv(final int location, final int count,
+			final boolean transpose, final float[] value, final int offset) {
+		if (issue(transpose
+				|| uniformChanged(location, value, offset, count * 16))) {
+			mGl.glUniformMatrix4fv(location, count, transpose, value, offset);
+		}
+	}
+
+	/**
+	 * Compares float uniform values with the remembered ones and remembers
+	 * them.
+	 *
+	 * @return true if the values differ, or are not remembered.
+	 */
+	private boolean uniformChanged(final int location, final float[] values,
+			final int offset, final int length) {
+		final int slot = findUniform(location, length);
+		if (slot < 0) {
+			return true;
+		}
+
+		final int start = slot * UNIFORM_SIZE;
+		boolean changed = mUniformLengths[slot] != length;
+		for (int i = 0; i < length; i++) {
+			final int bits = Float.floatToRawIntBits(values[offset + i]);
+			if (mUniformValues[start + i] != bits) {
+				mUniformValues[start + i] = bits;
+				changed = true;
+			}
+		}
+		mUniformLengths[slot] = length;
+		return changed;
+	}
+
+	/**
+	 * @return The table slot of a uniform of the current program, claiming a
+	 *         free one if needed, or -1 if the uniform cannot be remembered.
+	 */
+	private int findUniform(final int location, final int length) {
+		if (mProgram == UNKNOWN || location < 0 || length > UNIFORM_SIZE) {
+			return -1;
+		}
+
+		final long key = (long) mProgram << 32 | location;
+		int slot = (int) ((key ^ key >>> 32) * 0x9E3779B1) >>> 26;
+		for (int i = 0; i < UNIFORM_SLOTS; i++) {
+			if (mUniformKeys[slot] == key) {
+				return slot;
+			}
+			if (mUniformKeys[slot] == UNKNOWN) {
+				mUniformKeys[slot] = key;
+				mUniformLengths[slot] = 0;
+				return slot;
+			}
+			slot = (slot + 1) % UNIFORM_SLOTS;
+		}
+		return -1;
+	}
+
+	@Override
+	public void glClear(final int mask) {
+		issue(true);
+		mGl.glClear(mask);
+	}
+
+	@Override
+	public void glDrawElements(final int mode, final int count,
+			final int type, final int offset) {
+		issue(true);
+		mGl.glDrawElements(mode, count, type, offset);
+	}
+
+	@Override
+	public void glDrawElements(final int mode, final int count,
+			final int type, final Buffer indices) {
+		issue(true);
+		mGl.glDrawElements(mode, count, type, indices);
+	}
+
+	@Override
+	public void glFinish() {
+		issue(true);
+		mGl.glFinish();
+	}
+}
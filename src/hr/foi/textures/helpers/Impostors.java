@@ -0,0 +1,184 @@
+package hr.foi.textures.helpers;
+
+import android.opengl.GLES20;
+
+/**
+ * A texture with one cell per object, into which the objects are rendered
+ * so that far copies of them can be drawn as a textured quad each. A cell
+ * is cleared to transparent black and keeps the alpha the object is drawn
+ * with, so the object is cut out with {@link ShaderVariants#ALPHA_TEST} and
+ * must be drawn opaque.
+ *
+ * Cells lie next to each other in one row. The texture has no mipmaps; it is
+ * only sampled for objects smaller on screen than a cell.
+ */
+public class Impostors {
+
+	/** Filtered bilinearly, clamped so cells do not bleed at the border. */
+	private static final TextureParameters PARAMETERS = new TextureParameters(
+			GLES20.GL_LINEAR, GLES20.GL_LINEAR, GLES20.GL_CLAMP_TO_EDGE,
+			GLES20.GL_CLAMP_TO_EDGE, 1.0f);
+
+	private final int mCellSize;
+	private final int mCellCount;
+
+	/** Width of the texture, a power of two. */
+	private final int mWidth;
+
+	private int mTextureHandle;
+	private int mDepthBufferHandle;
+	private int mFramebufferHandle;
+
+	/**
+	 * @param cellSize
+	 *            Width and height of a cell in texels, a power of two.
+	 * @param cellCount
+	 *            Number of objects.
+	 */
+	public Impostors(final int cellSize, final int cellCount) {
+		mCellSize = cellSize;
+		mCellCount = cellCount;
+
+		int width = cellSize;
+		while (width < cellSize * cellCount) {
+			width *= 2;
+		}
+		mWidth = width;
+	}
+
+	/**
+	 * Creates the texture and the framebuffer rendering into it. Must be
+	 * called on the GL thread, again after every loss of the GL context.
+	 *
+	 * @return false if the framebuffer is not supported, then nothing can be
+	 *         rendered.
+	 */
+	public boolean upload() {
+		final int[] handles = new int[1];
+
+		GLES20.glGenTextures(1, handles, 0);
+		mTextureHandle = handles[0];
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureHandle);
+		GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, mWidth,
+				mCellSize, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+		PARAMETERS.apply();
+
+		GLES20.glGenRenderbuffers(1, handles, 0);
+		mDepthBufferHandle = handles[0];
+		GLES20.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, mDepthBufferHandle);
+		GLES20.glRenderbufferStorage(GLES20.GL_RENDERBUFFER,
+				GLES20.GL_DEPTH_COMPONENT16, mWidth, mCellSize);
+
+		GLES20.glGenFramebuffers(1, handles, 0);
+		mFramebufferHandle = handles[0];
+		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFramebufferHandle);
+		GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER,
+				GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D,
+				mTextureHandle, 0);
+		GLES20.glFramebufferRenderbuffer(GLES20.GL_FRAMEBUFFER,
+				GLES20.GL_DEPTH_ATTACHMENT, GLES20.GL_RENDERBUFFER,
+				mDepthBufferHandle);
+
+		final int status = GLES20
+				.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+		final boolean complete = status == GLES20.GL_FRAMEBUFFER_COMPLETE;
+		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+		if (!complete) {
+			release();
+		}
+		return complete;
+	}
+
+	/**
+	 * Deletes the texture and the framebuffer.
+	 */
+	public void release() {
+		final int[] handles = new int[1];
+		if (mFramebufferHandle != 0) {
+			handles[0] = mFramebufferHandle;
+			GLES20.glDeleteFramebuffers(1, handles, 0);
+		}
+		if (mDepthBufferHandle != 0) {
+			handles[0] = mDepthBufferHandle;
+			GLES20.glDeleteRenderbuffers(1, handles, 0);
+		}
+		if (mTextureHandle != 0) {
+			TextureHelper.deleteTexture(mTextureHandle);
+		}
+		invalidate();
+	}
+
+	/**
+	 * Forgets the texture and the framebuffer without deleting them. Used
+	 * after the GL context was lost, which already deleted them.
+	 */
+	public void invalidate() {
+		mTextureHandle = 0;
+		mDepthBufferHandle = 0;
+		mFramebufferHandle = 0;
+	}
+
+	/**
+	 * Starts rendering into the texture and clears all cells. The clear color
+	 * must be transparent.
+	 */
+	public void begin() {
+		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFramebufferHandle);
+		GLES20.glViewport(0, 0, mWidth, mCellSize);
+		GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT
+				| GLES20.GL_DEPTH_BUFFER_BIT);
+	}
+
+	/**
+	 * Renders into one cell until the next call. The object should fill the
+	 * clip space square from -1 to 1.
+	 */
+	public void setCell(final int cell) {
+		GLES20.glViewport(cell * mCellSize, 0, mCellSize, mCellSize);
+	}
+
+	/**
+	 * Renders into the screen again.
+	 *
+	 * @param width
+	 *            Width of the screen viewport.
+	 * @param height
+	 *            Height of the screen viewport.
+	 */
+	public void end(final int width, final int height) {
+		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+		GLES20.glViewport(0, 0, width, height);
+	}
+
+	/**
+	 * Rewrites texture coordinates between 0 and 1 into the coordinates of a
+	 * cell. T grows upwards in the rendered image.
+	 *
+	 * @param textureCoordinates
+	 *            S, T pairs.
+	 * @return New S, T pairs.
+	 */
+	public float[] remapTextureCoordinates(final int cell,
+			final float[] textureCoordinates) {
+		if (cell < 0 || cell >= mCellCount) {
+			throw new IllegalArgumentException("No impostor cell " + cell
+					+ ".");
+		}
+
+		final float scaleS = (float) mCellSize / mWidth;
+		final float[] remapped = new float[textureCoordinates.length];
+		for (int i = 0; i < textureCoordinates.length; i += 2) {
+			remapped[i] = (cell + textureCoordinates[i]) * scaleS;
+			remapped[i + 1] = textureCoordinates[i + 1];
+		}
+		return remapped;
+	}
+
+	/**
+	 * @return The texture, 0 before it is uploaded.
+	 */
+	public int getHandle() {
+		return mTextureHandle;
+	}
+}
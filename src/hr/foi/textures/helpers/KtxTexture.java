@@ -0,0 +1,165 @@
+package hr.foi.textures.helpers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import android.opengl.ETC1;
+import android.opengl.ETC1Util;
+import android.opengl.GLES20;
+
+/**
+ * A compressed texture with its whole mip chain, read from a KTX container.
+ * ETC1 payloads are supported everywhere, since they are decoded in software
+ * on the rare devices without ETC1 support. ETC2 payloads need OpenGL ES 3.0.
+ */
+public class KtxTexture {
+
+	/** Internal format of ETC1 compressed RGB textures. */
+	public static final int GL_ETC1_RGB8_OES = ETC1.ETC1_RGB8_OES;
+
+	/** Internal formats of ETC2 compressed textures, OpenGL ES 3.0 only. */
+	public static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+	public static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+
+	private static final byte[] IDENTIFIER = { (byte) 0xAB, 'K', 'T', 'X',
+			' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n' };
+
+	private static final int ENDIANNESS = 0x04030201;
+
+	private final int mInternalFormat;
+	private final int mWidth;
+	private final int mHeight;
+
+	/** Compressed data of each mip level, largest first. */
+	private final ByteBuffer[] mLevels;
+
+	private KtxTexture(final int internalFormat, final int width,
+			final int height, final ByteBuffer[] levels) {
+		mInternalFormat = internalFormat;
+		mWidth = width;
+		mHeight = height;
+		mLevels = levels;
+	}
+
+	/**
+	 * Reads a KTX container. The mip levels are views into the buffer, so a
+	 * memory-mapped file is never copied.
+	 *
+	 * @param buffer
+	 *            The whole file, a direct buffer.
+	 */
+	public static KtxTexture read(final ByteBuffer buffer) throws IOException {
+		final ByteBuffer in = buffer.duplicate();
+
+		if (in.remaining() < IDENTIFIER.length + 13 * 4) {
+			throw new IOException("Not a KTX file.");
+		}
+		for (int i = 0; i < IDENTIFIER.length; i++) {
+			if (in.get() != IDENTIFIER[i]) {
+				throw new IOException("Not a KTX file.");
+			}
+		}
+
+		in.order(ByteOrder.LITTLE_ENDIAN);
+		if (in.getInt(in.position()) != ENDIANNESS) {
+			in.order(ByteOrder.BIG_ENDIAN);
+		}
+
+		final int header = in.position();
+		final int glType = in.getInt(header + 4);
+		final int internalFormat = in.getInt(header + 16);
+		final int width = in.getInt(header + 24);
+		final int height = in.getInt(header + 28);
+		final int faces = in.getInt(header + 40);
+		final int levelCount = Math.max(1, in.getInt(header + 44));
+		final int keyValueBytes = in.getInt(header + 48);
+
+		if (glType != 0 || faces != 1) {
+			throw new IOException(
+					"Only compressed 2D KTX textures are supported.");
+		}
+
+		final ByteBuffer[] levels = new ByteBuffer[levelCount];
+		try {
+			in.position(header + 13 * 4 + keyValueBytes);
+			for (int i = 0; i < levelCount; i++) {
+				final int size = in.getInt();
+				final int end = in.position() + size;
+
+				final ByteBuffer level = in.duplicate();
+				level.limit(end);
+				levels[i] = level.slice();
+
+				in.position(end + 3 - ((size + 3) % 4));
+			}
+		} catch (RuntimeException e) {
+			// Positions and reads past the end.
+			throw new IOException("Unexpected end of KTX file.");
+		}
+
+		return new KtxTexture(internalFormat, width, height, levels);
+	}
+
+	/**
+	 * Uploads all mip levels into the currently bound texture. Must be called
+	 * on the GL thread.
+	 */
+	public void upload() {
+		for (int level = 0; level < mLevels.length; level++) {
+			final int width = Math.max(1, mWidth >> level);
+			final int height = Math.max(1, mHeight >> level);
+			mLevels[level].position(0);
+
+			if (mInternalFormat == GL_ETC1_RGB8_OES) {
+				// Falls back to RGB 565 if ETC1 is not supported.
+				ETC1Util.loadTexture(GLES20.GL_TEXTURE_2D, level, 0,
+						GLES20.GL_RGB, GLES20.GL_UNSIGNED_SHORT_5_6_5,
+						new ETC1Util.ETC1Texture(width, height, mLevels[level]));
+			} else if (isEtc2Supported()) {
+				GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level,
+						mInternalFormat, width, height, 0,
+						mLevels[level].capacity(), mLevels[level]);
+			} else {
+				throw new RuntimeException("Texture format 0x"
+						+ Integer.toHexString(mInternalFormat)
+						+ " is not supported.");
+			}
+		}
+	}
+
+	/**
+	 * @return true if the current context supports ETC2 textures.
+	 */
+	public static boolean isEtc2Supported() {
+		final String version = GLES20.glGetString(GLES20.GL_VERSION);
+		return version != null && version.startsWith("OpenGL ES 3");
+	}
+
+	public int getInternalFormat() {
+		return mInternalFormat;
+	}
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+	public int getHeight() {
+		return mHeight;
+	}
+
+	public int getLevelCount() {
+		return mLevels.length;
+	}
+
+	/**
+	 * @return Size of all mip levels together, in bytes.
+	 */
+	public long getByteCount() {
+		long bytes = 0;
+		for (int i = 0; i < mLevels.length; i++) {
+			bytes += mLevels[i].capacity();
+		}
+		return bytes;
+	}
+}
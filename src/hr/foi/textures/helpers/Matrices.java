@@ -0,0 +1,222 @@
+package hr.foi.textures.helpers;
+
+/**
+ * Matrix math for the draw path, on float arrays in the column-major layout of
+ * {@link android.opengl.Matrix}. Nothing here allocates.
+ *
+ * Most matrices of the scene are affine: their last row is 0, 0, 0, 1. The
+ * products below skip that row instead of multiplying by it, which saves a
+ * quarter of the work or more. The results are undefined for matrices which
+ * are not affine where an affine one is expected.
+ *
+ * Every product reads both operands before writing, so the result may be
+ * either operand.
+ */
+public class Matrices {
+
+	/**
+	 * Sets a matrix to the identity.
+	 */
+	public static void setIdentity(final float[] m, final int offset) {
+		for (int i = 0; i < 16; i++) {
+			m[offset + i] = 0.0f;
+		}
+		m[offset] = 1.0f;
+		m[offset + 5] = 1.0f;
+		m[offset + 10] = 1.0f;
+		m[offset + 15] = 1.0f;
+	}
+
+	/**
+	 * Sets a matrix to a translation times a scale, so points are scaled
+	 * first.
+	 */
+	public static void setTranslateScale(final float[] m, final int offset,
+			final float x, final float y, final float z, final float scaleX,
+			final float scaleY, final float scaleZ) {
+		setIdentity(m, offset);
+		m[offset] = scaleX;
+		m[offset + 5] = scaleY;
+		m[offset + 10] = scaleZ;
+		m[offset + 12] = x;
+		m[offset + 13] = y;
+		m[offset + 14] = z;
+	}
+
+	/**
+	 * Sets a matrix to the inverse of the rotation of an affine matrix
+	 * without scale, which is its transpose, and leaves out the translation.
+	 * The result must not be the other matrix.
+	 */
+	public static void setInverseRotation(final float[] result,
+			final int resultOffset, final float[] m, final int offset) {
+		setIdentity(result, resultOffset);
+		for (int column = 0; column < 3; column++) {
+			for (int row = 0; row < 3; row++) {
+				result[resultOffset + column * 4 + row] = m[offset + row * 4
+						+ column];
+			}
+		}
+	}
+
+	/**
+	 * Multiplies two affine matrices. The result is affine.
+	 */
+	public static void multiplyAffine(final float[] result,
+			final int resultOffset, final float[] lhs, final int lhsOffset,
+			final float[] rhs, final int rhsOffset) {
+		final float l0 = lhs[lhsOffset];
+		final float l1 = lhs[lhsOffset + 1];
+		final float l2 = lhs[lhsOffset + 2];
+		final float l4 = lhs[lhsOffset + 4];
+		final float l5 = lhs[lhsOffset + 5];
+		final float l6 = lhs[lhsOffset + 6];
+		final float l8 = lhs[lhsOffset + 8];
+		final float l9 = lhs[lhsOffset + 9];
+		final float l10 = lhs[lhsOffset + 10];
+		final float l12 = lhs[lhsOffset + 12];
+		final float l13 = lhs[lhsOffset + 13];
+		final float l14 = lhs[lhsOffset + 14];
+
+		final float r0 = rhs[rhsOffset];
+		final float r1 = rhs[rhsOffset + 1];
+		final float r2 = rhs[rhsOffset + 2];
+		final float r4 = rhs[rhsOffset + 4];
+		final float r5 = rhs[rhsOffset + 5];
+		final float r6 = rhs[rhsOffset + 6];
+		final float r8 = rhs[rhsOffset + 8];
+		final float r9 = rhs[rhsOffset + 9];
+		final float r10 = rhs[rhsOffset + 10];
+		final float r12 = rhs[rhsOffset + 12];
+		final float r13 = rhs[rhsOffset + 13];
+		final float r14 = rhs[rhsOffset + 14];
+
+		result[resultOffset] = l0 * r0 + l4 * r1 + l8 * r2;
+		result[resultOffset + 1] = l1 * r0 + l5 * r1 + l9 * r2;
+		result[resultOffset + 2] = l2 * r0 + l6 * r1 + l10 * r2;
+		result[resultOffset + 3] = 0.0f;
+
+		result[resultOffset + 4] = l0 * r4 + l4 * r5 + l8 * r6;
+		result[resultOffset + 5] = l1 * r4 + l5 * r5 + l9 * r6;
+		result[resultOffset + 6] = l2 * r4 + l6 * r5 + l10 * r6;
+		result[resultOffset + 7] = 0.0f;
+
+		result[resultOffset + 8] = l0 * r8 + l4 * r9 + l8 * r10;
+		result[resultOffset + 9] = l1 * r8 + l5 * r9 + l9 * r10;
+		result[resultOffset + 10] = l2 * r8 + l6 * r9 + l10 * r10;
+		result[resultOffset + 11] = 0.0f;
+
+		result[resultOffset + 12] = l0 * r12 + l4 * r13 + l8 * r14 + l12;
+		result[resultOffset + 13] = l1 * r12 + l5 * r13 + l9 * r14 + l13;
+		result[resultOffset + 14] = l2 * r12 + l6 * r13 + l10 * r14 + l14;
+		result[resultOffset + 15] = 1.0f;
+	}
+
+	/**
+	 * Multiplies any matrix, like a projection, by an affine matrix.
+	 */
+	public static void multiplyByAffine(final float[] result,
+			final int resultOffset, final float[] lhs, final int lhsOffset,
+			final float[] rhs, final int rhsOffset) {
+		final float l0 = lhs[lhsOffset];
+		final float l1 = lhs[lhsOffset + 1];
+		final float l2 = lhs[lhsOffset + 2];
+		final float l3 = lhs[lhsOffset + 3];
+		final float l4 = lhs[lhsOffset + 4];
+		final float l5 = lhs[lhsOffset + 5];
+		final float l6 = lhs[lhsOffset + 6];
+		final float l7 = lhs[lhsOffset + 7];
+		final float l8 = lhs[lhsOffset + 8];
+		final float l9 = lhs[lhsOffset + 9];
+		final float l10 = lhs[lhsOffset + 10];
+		final float l11 = lhs[lhsOffset + 11];
+		final float l12 = lhs[lhsOffset + 12];
+		final float l13 = lhs[lhsOffset + 13];
+		final float l14 = lhs[lhsOffset + 14];
+		final float l15 = lhs[lhsOffset + 15];
+
+		final float r0 = rhs[rhsOffset];
+		final float r1 = rhs[rhsOffset + 1];
+		final float r2 = rhs[rhsOffset + 2];
+		final float r4 = rhs[rhsOffset + 4];
+		final float r5 = rhs[rhsOffset + 5];
+		final float r6 = rhs[rhsOffset + 6];
+		final float r8 = rhs[rhsOffset + 8];
+		final float r9 = rhs[rhsOffset + 9];
+		final float r10 = rhs[rhsOffset + 10];
+		final float r12 = rhs[rhsOffset + 12];
+		final float r13 = rhs[rhsOffset + 13];
+		final float r14 = rhs[rhsOffset + 14];
+
+		result[resultOffset] = l0 * r0 + l4 * r1 + l8 * r2;
+		result[resultOffset + 1] = l1 * r0 + l5 * r1 + l9 * r2;
+		result[resultOffset + 2] = l2 * r0 + l6 * r1 + l10 * r2;
+		result[resultOffset + 3] = l3 * r0 + l7 * r1 + l11 * r2;
+
+		result[resultOffset + 4] = l0 * r4 + l4 * r5 + l8 * r6;
+		result[resultOffset + 5] = l1 * r4 + l5 * r5 + l9 * r6;
+		result[resultOffset + 6] = l2 * r4 + l6 * r5 + l10 * r6;
+		result[resultOffset + 7] = l3 * r4 + l7 * r5 + l11 * r6;
+
+		result[resultOffset + 8] = l0 * r8 + l4 * r9 + l8 * r10;
+		result[resultOffset + 9] = l1 * r8 + l5 * r9 + l9 * r10;
+		result[resultOffset + 10] = l2 * r8 + l6 * r9 + l10 * r10;
+		result[resultOffset + 11] = l3 * r8 + l7 * r9 + l11 * r10;
+
+		result[resultOffset + 12] = l0 * r12 + l4 * r13 + l8 * r14 + l12;
+		result[resultOffset + 13] = l1 * r12 + l5 * r13 + l9 * r14 + l13;
+		result[resultOffset + 14] = l2 * r12 + l6 * r13 + l10 * r14 + l14;
+		result[resultOffset + 15] = l3 * r12 + l7 * r13 + l11 * r14 + l15;
+	}
+
+	/**
+	 * Transforms a batch of points, stored as separate arrays of X, Y and Z,
+	 * by an affine matrix. The output arrays may be the input arrays.
+	 */
+	public static void transformPoints(final float[] m, final int offset,
+			final float[] x, final float[] y, final float[] z,
+			final float[] resultX, final float[] resultY,
+			final float[] resultZ, final int count) {
+		final float m0 = m[offset];
+		final float m1 = m[offset + 1];
+		final float m2 = m[offset + 2];
+		final float m4 = m[offset + 4];
+		final float m5 = m[offset + 5];
+		final float m6 = m[offset + 6];
+		final float m8 = m[offset + 8];
+		final float m9 = m[offset + 9];
+		final float m10 = m[offset + 10];
+		final float m12 = m[offset + 12];
+		final float m13 = m[offset + 13];
+		final float m14 = m[offset + 14];
+
+		for (int i = 0; i < count; i++) {
+			final float px = x[i];
+			final float py = y[i];
+			final float pz = z[i];
+			resultX[i] = m0 * px + m4 * py + m8 * pz + m12;
+			resultY[i] = m1 * px + m5 * py + m9 * pz + m13;
+			resultZ[i] = m2 * px + m6 * py + m10 * pz + m14;
+		}
+	}
+
+	/**
+	 * Transforms a batch of points like {@link #transformPoints}, but keeps
+	 * only one coordinate, for example Z for the view space depth.
+	 *
+	 * @param row
+	 *            0, 1 or 2 for the X, Y or Z coordinate of the result.
+	 */
+	public static void transformRow(final float[] m, final int offset,
+			final int row, final float[] x, final float[] y, final float[] z,
+			final float[] result, final int count) {
+		final float a = m[offset + row];
+		final float b = m[offset + 4 + row];
+		final float c = m[offset + 8 + row];
+		final float d = m[offset + 12 + row];
+
+		for (int i = 0; i < count; i++) {
+			result[i] = a * x[i] + b * y[i] + c * z[i] + d;
+		}
+	}
+}
@@ -0,0 +1,363 @@
+package hr.foi.textures.helpers;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Many copies of one mesh merged into as few draw calls as possible. Every
+ * vertex carries the offset of the copy it belongs to, so a vertex shader can
+ * apply a shared rotation around each copy's own center and then move it into
+ * place. The batch itself therefore never changes when the shared rotation
+ * does; moving a single copy only rewrites that copy's vertices.
+ *
+ * Copies are split into chunks so that indices still fit into an unsigned
+ * short. Copies outside the view frustum can be culled; each run of visible
+ * copies in a chunk is then drawn with one call. Copies which look small on
+ * screen can be handed over to a cheaper batch of the same copies, see
+ * {@link #selectLevels(MeshBatch, float[], float, float, float)}.
+ */
+public class MeshBatch {
+
+	/** Size of the per-vertex offset data in elements. */
+	public static final int OFFSET_DATA_SIZE = 3;
+
+	/** Offset of the per-vertex offset data inside a vertex, in floats. */
+	public static final int OFFSET_OFFSET = StaticMesh.VERTEX_SIZE;
+
+	/** Number of floats per batched vertex. */
+	public static final int VERTEX_SIZE = StaticMesh.VERTEX_SIZE
+			+ OFFSET_DATA_SIZE;
+
+	/** Largest vertex count addressable by unsigned short indices. */
+	private static final int MAX_VERTICES = 65536;
+
+	private final List<StaticMesh> mChunks = new ArrayList<StaticMesh>();
+
+	/** Number of copies stored in each chunk, except maybe the last one. */
+	private final int mCopiesPerChunk;
+
+	/** Number of vertices and indices of a single copy. */
+	private final int mTemplateVertexCount;
+	private final int mTemplateIndexCount;
+
+	private final int mCopyCount;
+
+	/**
+	 * X, Y and Z of the center of each copy, in separate arrays so they can
+	 * be transformed in tight loops.
+	 */
+	private final float[] mOffsetX;
+	private final float[] mOffsetY;
+	private final float[] mOffsetZ;
+
+	/** Scratch space for the view space depth of each copy. */
+	private final float[] mDepths;
+
+	/** Radius of a sphere around a copy, whatever its rotation. */
+	private final float mCopyRadius;
+
+	/** True for each copy which is drawn. */
+	private final boolean[] mVisible;
+	private int mVisibleCount;
+
+	/** True for each copy which was last handed over to the far batch. */
+	private final boolean[] mFar;
+
+	/**
+	 * Creates a batch of copies of a template mesh.
+	 *
+	 * @param template
+	 *            The mesh to copy.
+	 * @param offsets
+	 *            X, Y, Z of the center of each copy.
+	 */
+	public MeshBatch(final StaticMesh template, final float[] offsets) {
+		final FloatBuffer templateVertices = template.getVertices();
+		final ShortBuffer templateIndices = template.getIndices();
+		final int templateVertexSize = template.getVertexSize();
+
+		mTemplateVertexCount = template.getVertexCount();
+		final int templateIndexCount = template.getIndexCount();
+		mTemplateIndexCount = templateIndexCount;
+
+		mCopyCount = offsets.length / OFFSET_DATA_SIZE;
+		mOffsetX = new float[mCopyCount];
+		mOffsetY = new float[mCopyCount];
+		mOffsetZ = new float[mCopyCount];
+		for (int i = 0; i < mCopyCount; i++) {
+			mOffsetX[i] = offsets[i * OFFSET_DATA_SIZE];
+			mOffsetY[i] = offsets[i * OFFSET_DATA_SIZE + 1];
+			mOffsetZ[i] = offsets[i * OFFSET_DATA_SIZE + 2];
+		}
+		mDepths = new float[mCopyCount];
+
+		// The copies rotate around their offset, so the sphere of the
+		// template is moved to the offset and grown by its distance.
+		final float[] sphere = template.getBoundingSphere();
+		mCopyRadius = (float) Math.sqrt(sphere[0] * sphere[0] + sphere[1]
+				* sphere[1] + sphere[2] * sphere[2])
+				+ sphere[3];
+
+		mVisible = new boolean[mCopyCount];
+		for (int i = 0; i < mCopyCount; i++) {
+			mVisible[i] = true;
+		}
+		mVisibleCount = mCopyCount;
+		mFar = new boolean[mCopyCount];
+
+		mCopiesPerChunk = Math.max(1, MAX_VERTICES / mTemplateVertexCount);
+
+		for (int first = 0; first < mCopyCount; first += mCopiesPerChunk) {
+			final int copies = Math.min(mCopiesPerChunk, mCopyCount - first);
+
+			final float[] vertices = new float[copies * mTemplateVertexCount
+					* VERTEX_SIZE];
+			final short[] indices = new short[copies * templateIndexCount];
+
+			int v = 0;
+			int i = 0;
+			for (int copy = 0; copy < copies; copy++) {
+				final int offset = (first + copy) * OFFSET_DATA_SIZE;
+
+				for (int j = 0; j < mTemplateVertexCount; j++) {
+					templateVertices.position(j * templateVertexSize);
+					templateVertices.get(vertices, v, StaticMesh.VERTEX_SIZE);
+					System.arraycopy(offsets, offset, vertices, v
+							+ OFFSET_OFFSET, OFFSET_DATA_SIZE);
+					v += VERTEX_SIZE;
+				}
+
+				final int base = copy * mTemplateVertexCount;
+				for (int j = 0; j < templateIndexCount; j++) {
+					indices[i++] = (short) (base + templateIndices.get(j));
+				}
+			}
+
+			mChunks.add(new StaticMesh(vertices, VERTEX_SIZE, indices));
+		}
+	}
+
+	/**
+	 * Uploads all chunks into buffer objects. Must be called on the GL thread,
+	 * again after every loss of the GL context.
+	 *
+	 * @return true if every chunk will be drawn from buffer objects.
+	 */
+	public boolean upload() {
+		boolean uploaded = true;
+		for (int i = 0; i < mChunks.size(); i++) {
+			uploaded &= mChunks.get(i).upload();
+		}
+		return uploaded;
+	}
+
+	/**
+	 * Deletes the buffer objects of all chunks.
+	 */
+	public void release() {
+		for (int i = 0; i < mChunks.size(); i++) {
+			mChunks.get(i).release();
+		}
+	}
+
+	/**
+	 * Moves a single copy. Only the vertices of that copy are uploaded again.
+	 */
+	public void setOffset(final int copy, final float x, final float y,
+			final float z) {
+		final StaticMesh chunk = mChunks.get(copy / mCopiesPerChunk);
+		final int first = (copy % mCopiesPerChunk) * mTemplateVertexCount;
+
+		for (int i = 0; i < mTemplateVertexCount; i++) {
+			chunk.setVertexData(first + i, OFFSET_OFFSET, x, y, z);
+		}
+
+		mOffsetX[copy] = x;
+		mOffsetY[copy] = y;
+		mOffsetZ[copy] = z;
+	}
+
+	/**
+	 * Decides which copies are drawn, until the next call.
+	 *
+	 * @param frustum
+	 *            The view frustum, in the space of the offsets.
+	 * @return Number of visible copies.
+	 */
+	public int cull(final Frustum frustum) {
+		mVisibleCount = 0;
+		for (int i = 0; i < mCopyCount; i++) {
+			mVisible[i] = frustum.intersectsSphere(mOffsetX[i], mOffsetY[i],
+					mOffsetZ[i], mCopyRadius);
+			if (mVisible[i]) {
+				mVisibleCount++;
+			}
+		}
+		return mVisibleCount;
+	}
+
+	/**
+	 * Hands the visible copies which are small on screen over to another
+	 * batch, which draws the same copies more cheaply, and hides them here.
+	 * A copy is small below one size and large again only above another, so
+	 * that copies near the threshold do not switch back and forth. Must be
+	 * called after {@link #cull(Frustum)}.
+	 *
+	 * @param far
+	 *            A batch with the same offsets. Its visible copies are set to
+	 *            the small ones.
+	 * @param viewMatrix
+	 *            The view matrix, from the space of the offsets.
+	 * @param pixelsPerUnit
+	 *            Size on screen, in pixels, of one unit at a distance of one.
+	 * @param farSize
+	 *            Diameter on screen, in pixels, below which a copy is small.
+	 * @param nearSize
+	 *            Diameter on screen, in pixels, above which a small copy is
+	 *            large again. Larger than farSize.
+	 * @return Number of copies handed over.
+	 */
+	public int selectLevels(final MeshBatch far, final float[] viewMatrix,
+			final float pixelsPerUnit, final float farSize,
+			final float nearSize) {
+		if (far.mCopyCount != mCopyCount) {
+			throw new IllegalArgumentException("The far batch has "
+					+ far.mCopyCount + " copies instead of " + mCopyCount
+					+ ".");
+		}
+
+		Matrices.transformRow(viewMatrix, 0, 2, mOffsetX, mOffsetY, mOffsetZ,
+				mDepths, mCopyCount);
+
+		// Diameter on screen times the depth.
+		final float diameter = 2.0f * mCopyRadius * pixelsPerUnit;
+
+		far.mVisibleCount = 0;
+		for (int i = 0; i < mCopyCount; i++) {
+			if (!mVisible[i]) {
+				far.mVisible[i] = false;
+				continue;
+			}
+
+			// The view looks down negative Z.
+			final float depth = -mDepths[i];
+			final float threshold = mFar[i] ? nearSize : farSize;
+			mFar[i] = depth > 0.0f && diameter < threshold * depth;
+
+			far.mVisible[i] = mFar[i];
+			if (mFar[i]) {
+				mVisible[i] = false;
+				mVisibleCount--;
+				far.mVisibleCount++;
+			}
+		}
+		return far.mVisibleCount;
+	}
+
+	/**
+	 * Averages the centers of the visible copies.
+	 *
+	 * @param center
+	 *            Receives X, Y and Z. Left alone if no copy is visible.
+	 */
+	public void getVisibleCenter(final float[] center) {
+		float x = 0.0f;
+		float y = 0.0f;
+		float z = 0.0f;
+		for (int i = 0; i < mCopyCount; i++) {
+			if (mVisible[i]) {
+				x += mOffsetX[i];
+				y += mOffsetY[i];
+				z += mOffsetZ[i];
+			}
+		}
+
+		if (mVisibleCount > 0) {
+			center[0] = x / mVisibleCount;
+			center[1] = y / mVisibleCount;
+			center[2] = z / mVisibleCount;
+		}
+	}
+
+	/**
+	 * @param viewMatrix
+	 *            The view matrix, from the space of the offsets.
+	 * @return Distance along the view direction to the center of the nearest
+	 *         visible copy.
+	 */
+	public float getNearestDepth(final float[] viewMatrix) {
+		// The view looks down negative Z, so the nearest copy has the largest
+		// Z in view space.
+		Matrices.transformRow(viewMatrix, 0, 2, mOffsetX, mOffsetY, mOffsetZ,
+				mDepths, mCopyCount);
+
+		float nearest = -Float.MAX_VALUE;
+		for (int i = 0; i < mCopyCount; i++) {
+			if (mVisible[i]) {
+				nearest = Math.max(nearest, mDepths[i]);
+			}
+		}
+		return -nearest;
+	}
+
+	/**
+	 * Draws the visible copies, one draw call per run of visible copies in a
+	 * chunk. Chunks without visible copies are not even bound.
+	 */
+	public void draw(final Gl gl, final int positionHandle,
+			final int normalHandle, final int textureCoordinateHandle,
+			final int offsetHandle) {
+		if (mVisibleCount == 0) {
+			return;
+		}
+
+		for (int i = 0; i < mChunks.size(); i++) {
+			final StaticMesh chunk = mChunks.get(i);
+			final int first = i * mCopiesPerChunk;
+			final int copies = Math.min(mCopiesPerChunk, mCopyCount - first);
+
+			boolean bound = false;
+			int runStart = -1;
+			for (int copy = 0; copy <= copies; copy++) {
+				final boolean visible = copy < copies && mVisible[first + copy];
+				if (visible && runStart < 0) {
+					runStart = copy;
+				} else if (!visible && runStart >= 0) {
+					if (!bound) {
+						chunk.bind(gl, positionHandle, normalHandle,
+								textureCoordinateHandle);
+						chunk.bindExtra(gl, offsetHandle, OFFSET_OFFSET,
+								OFFSET_DATA_SIZE);
+						bound = true;
+					}
+					chunk.draw(gl, runStart * mTemplateIndexCount,
+							(copy - runStart) * mTemplateIndexCount);
+					runStart = -1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return Number of copies drawn since the last {@link #cull(Frustum)}.
+	 */
+	public int getVisibleCount() {
+		return mVisibleCount;
+	}
+
+	/**
+	 * @return Number of copies in the batch.
+	 */
+	public int getCopyCount() {
+		return mCopyCount;
+	}
+
+	/**
+	 * @return Number of draw calls needed when every copy is visible.
+	 */
+	public int getChunkCount() {
+		return mChunks.size();
+	}
+}
@@ -0,0 +1,125 @@
+package hr.foi.textures.helpers;
+
+/**
+ * Computes mip levels of sRGB images in plain Java, without any GL calls, so
+ * that mip chains can be generated offline or on a worker thread.
+ *
+ * Texels are averaged in linear light. Averaging the stored sRGB values
+ * directly darkens every level, most visibly on high contrast tiles like the
+ * floor.
+ */
+public class Mipmaps {
+
+	/** Linear intensity of each 8-bit sRGB value. */
+	private static final float[] SRGB_TO_LINEAR = new float[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			final double c = i / 255.0;
+			SRGB_TO_LINEAR[i] = (float) (c <= 0.04045 ? c / 12.92 : Math.pow(
+					(c + 0.055) / 1.055, 2.4));
+		}
+	}
+
+	/**
+	 * @return Number of levels in a full mip chain, down to 1x1.
+	 */
+	public static int getLevelCount(final int width, final int height) {
+		int levels = 1;
+		int size = Math.max(width, height);
+		while (size > 1) {
+			size /= 2;
+			levels++;
+		}
+		return levels;
+	}
+
+	/**
+	 * Halves an image with a gamma-correct 2x2 box filter. Odd edges are
+	 * clamped. Alpha is averaged linearly.
+	 *
+	 * @param argb
+	 *            Pixels, row by row, as 0xAARRGGBB.
+	 * @return The next mip level, Math.max(1, width / 2) by
+	 *         Math.max(1, height / 2) pixels.
+	 */
+	public static int[] downsample(final int[] argb, final int width,
+			final int height) {
+		final int halfWidth = Math.max(1, width / 2);
+		final int halfHeight = Math.max(1, height / 2);
+		final int[] half = new int[halfWidth * halfHeight];
+		downsample(argb, width, height, half, 0, 0, halfWidth, halfHeight);
+		return half;
+	}
+
+	/**
+	 * Recomputes a rectangle of the next mip level, as
+	 * {@link #downsample(int[], int, int)} does for the whole level. Used to
+	 * update only the texels below a changed part of an image.
+	 *
+	 * @param argb
+	 *            Pixels, row by row, as 0xAARRGGBB.
+	 * @param half
+	 *            The next level, Math.max(1, width / 2) by
+	 *            Math.max(1, height / 2) pixels.
+	 * @param left
+	 *            Bounds of the rectangle in the next level, right and bottom
+	 *            exclusive.
+	 */
+	public static void downsample(final int[] argb, final int width,
+			final int height, final int[] half, final int left,
+			final int top, final int right, final int bottom) {
+		final int halfWidth = Math.max(1, width / 2);
+
+		for (int y = top; y < bottom; y++) {
+			final int y0 = Math.min(y * 2, height - 1) * width;
+			final int y1 = Math.min(y * 2 + 1, height - 1) * width;
+
+			for (int x = left; x < right; x++) {
+				final int x0 = Math.min(x * 2, width - 1);
+				final int x1 = Math.min(x * 2 + 1, width - 1);
+
+				final int p00 = argb[y0 + x0];
+				final int p01 = argb[y0 + x1];
+				final int p10 = argb[y1 + x0];
+				final int p11 = argb[y1 + x1];
+
+				final int alpha = ((p00 >>> 24) + (p01 >>> 24) + (p10 >>> 24)
+						+ (p11 >>> 24) + 2) / 4;
+				int pixel = alpha << 24;
+				for (int shift = 0; shift < 24; shift += 8) {
+					final float linear = (SRGB_TO_LINEAR[(p00 >> shift) & 0xFF]
+							+ SRGB_TO_LINEAR[(p01 >> shift) & 0xFF]
+							+ SRGB_TO_LINEAR[(p10 >> shift) & 0xFF]
+							+ SRGB_TO_LINEAR[(p11 >> shift) & 0xFF]) * 0.25f;
+					pixel |= linearToSrgb(linear) << shift;
+				}
+				half[y * halfWidth + x] = pixel;
+			}
+		}
+	}
+
+	/**
+	 * @return The 8-bit sRGB value closest to a linear intensity.
+	 */
+	private static int linearToSrgb(final float linear) {
+		// Binary search in the table, which is monotonic.
+		int low = 0;
+		int high = 255;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (SRGB_TO_LINEAR[middle] < linear) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		if (low > 0
+				&& linear - SRGB_TO_LINEAR[low - 1] < SRGB_TO_LINEAR[low]
+						- linear) {
+			return low - 1;
+		}
+		return low;
+	}
+}
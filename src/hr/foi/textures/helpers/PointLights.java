@@ -0,0 +1,101 @@
+package hr.foi.textures.helpers;
+
+/**
+ * Point lights in world space. Their eye space positions are computed once
+ * per frame and uploaded as uniform arrays, u_LightPos and u_LightColor, to
+ * every program drawing with them.
+ *
+ * The number of lights is fixed per shader variant, so the per-fragment cost
+ * is bounded by {@link #MAX_LIGHTS}.
+ */
+public class PointLights {
+
+	/** Most lights a shader variant supports. */
+	public static final int MAX_LIGHTS = 4;
+
+	/** World space positions, one coordinate per array. */
+	private final float[] mWorldX = new float[MAX_LIGHTS];
+	private final float[] mWorldY = new float[MAX_LIGHTS];
+	private final float[] mWorldZ = new float[MAX_LIGHTS];
+
+	/** Eye space positions, one coordinate per array. */
+	private final float[] mEyeX = new float[MAX_LIGHTS];
+	private final float[] mEyeY = new float[MAX_LIGHTS];
+	private final float[] mEyeZ = new float[MAX_LIGHTS];
+
+	/** Eye space positions, x, y, z per light, as uploaded. */
+	private final float[] mEyePositions = new float[MAX_LIGHTS * 3];
+
+	/** Colors, r, g, b per light. */
+	private final float[] mColors = new float[MAX_LIGHTS * 3];
+
+	private int mCount;
+
+	/**
+	 * Adds a light.
+	 *
+	 * @return Index of the light.
+	 */
+	public int add(final float x, final float y, final float z,
+			final float red, final float green, final float blue) {
+		if (mCount == MAX_LIGHTS) {
+			throw new IllegalStateException("At most " + MAX_LIGHTS
+					+ " lights are supported.");
+		}
+
+		final int light = mCount++;
+		setPosition(light, x, y, z);
+		mColors[light * 3] = red;
+		mColors[light * 3 + 1] = green;
+		mColors[light * 3 + 2] = blue;
+		return light;
+	}
+
+	/**
+	 * Moves a light, in world space.
+	 */
+	public void setPosition(final int light, final float x, final float y,
+			final float z) {
+		mWorldX[light] = x;
+		mWorldY[light] = y;
+		mWorldZ[light] = z;
+	}
+
+	/**
+	 * Transforms all lights into eye space. Called once per frame, after the
+	 * view matrix is set.
+	 */
+	public void update(final float[] viewMatrix) {
+		Matrices.transformPoints(viewMatrix, 0, mWorldX, mWorldY, mWorldZ,
+				mEyeX, mEyeY, mEyeZ, mCount);
+		for (int i = 0; i < mCount; i++) {
+			mEyePositions[i * 3] = mEyeX[i];
+			mEyePositions[i * 3 + 1] = mEyeY[i];
+			mEyePositions[i * 3 + 2] = mEyeZ[i];
+		}
+	}
+
+	/**
+	 * Uploads the eye space positions and colors into the current program.
+	 *
+	 * @param positionHandle
+	 *            Location of u_LightPos.
+	 * @param colorHandle
+	 *            Location of u_LightColor.
+	 */
+	public void apply(final Gl gl, final int positionHandle,
+			final int colorHandle) {
+		if (mCount == 0) {
+			return;
+		}
+		gl.glUniform3fv(positionHandle, mCount, mEyePositions, 0);
+		gl.glUniform3fv(colorHandle, mCount, mColors, 0);
+	}
+
+	/**
+	 * @return Number of lights, which selects the shader variant.
+	 */
+	public int getCount() {
+		return mCount;
+	}
+}
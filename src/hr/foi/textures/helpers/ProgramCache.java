@@ -0,0 +1,341 @@
+package hr.foi.textures.helpers;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+/**
+ * Stores linked program binaries on disk, so that a recreated GL context
+ * loads its programs instead of compiling and linking them again. Binaries are
+ * keyed by a hash of the shader sources, the bound attributes and the GL
+ * driver, and all of them are dropped when the driver changes.
+ *
+ * Program binaries need OpenGL ES 3.0. Its Java binding, GLES30, only exists
+ * from API 18, so it is looked up at run time. On other devices, and whenever
+ * a binary is rejected, the program is compiled from source.
+ *
+ * Must only be used on the GL thread.
+ */
+public class ProgramCache {
+	private static final String TAG = "ProgramCache";
+
+	/** From OpenGL ES 3.0, not in GLES20. */
+	private static final int GL_PROGRAM_BINARY_LENGTH = 0x8741;
+	private static final int GL_NUM_PROGRAM_BINARY_FORMATS = 0x87FE;
+
+	/** Remembers the driver the binaries were created by. */
+	private static final String DRIVER_FILE = "driver";
+
+	private static final String BINARY_SUFFIX = ".bin";
+
+	private final File mDirectory;
+
+	/** Vendor, renderer and version of the current driver. */
+	private String mDriver;
+
+	/** GLES30.glGetProgramBinary and glProgramBinary, null if missing. */
+	private Method mGetProgramBinary;
+	private Method mProgramBinary;
+
+	private int mHits;
+	private int mMisses;
+
+	/**
+	 * @param directory
+	 *            Directory of the binaries, normally inside the cache
+	 *            directory of the app.
+	 */
+	public ProgramCache(final File directory) {
+		mDirectory = directory;
+	}
+
+	/**
+	 * Checks the driver of the current GL context and deletes binaries of any
+	 * other driver. Must be called after every creation of the GL context,
+	 * before any program is created.
+	 */
+	public void open() {
+		mDriver = GLES20.glGetString(GLES20.GL_VENDOR) + '\n'
+				+ GLES20.glGetString(GLES20.GL_RENDERER) + '\n'
+				+ GLES20.glGetString(GLES20.GL_VERSION);
+
+		mGetProgramBinary = null;
+		mProgramBinary = null;
+		if (isBinarySupported()) {
+			try {
+				final Class<?> gles30 = Class.forName("android.opengl.GLES30");
+				mGetProgramBinary = gles30.getMethod("glGetProgramBinary",
+						int.class, int.class, int[].class, int.class,
+						int[].class, int.class, Buffer.class);
+				mProgramBinary = gles30.getMethod("glProgramBinary",
+						int.class, int.class, Buffer.class, int.class);
+			} catch (Exception e) {
+				// Older platform, compile from source.
+				mGetProgramBinary = null;
+				mProgramBinary = null;
+			}
+		}
+
+		if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+			Log.w(TAG, "Could not create " + mDirectory);
+			return;
+		}
+
+		final File driverFile = new File(mDirectory, DRIVER_FILE);
+		if (!mDriver.equals(readDriver(driverFile))) {
+			final File[] files = mDirectory.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			writeDriver(driverFile);
+		}
+	}
+
+	/**
+	 * @return true if the current context is OpenGL ES 3 and supports at least
+	 *         one program binary format.
+	 */
+	private static boolean isBinarySupported() {
+		final String version = GLES20.glGetString(GLES20.GL_VERSION);
+		if (version == null || !version.startsWith("OpenGL ES 3")) {
+			return false;
+		}
+
+		final int[] formats = new int[1];
+		GLES20.glGetIntegerv(GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+		return formats[0] > 0;
+	}
+
+	/**
+	 * Returns a linked program, loaded from its binary if one is cached, or
+	 * compiled from source and then cached.
+	 *
+	 * @param attributes
+	 *            Attributes that need to be bound to the program.
+	 */
+	public ShaderProgram createProgram(final String vertexSource,
+			final String fragmentSource, final String[] attributes) {
+		final File binaryFile = new File(mDirectory, hash(vertexSource,
+				fragmentSource, attributes) + BINARY_SUFFIX);
+
+		if (mProgramBinary != null && binaryFile.isFile()) {
+			final int programHandle = loadBinary(binaryFile);
+			if (programHandle != 0) {
+				mHits++;
+				return new ShaderProgram(programHandle);
+			}
+
+			// Rejected by the driver, replace it below.
+			binaryFile.delete();
+		}
+
+		mMisses++;
+
+		final int vertexShaderHandle = ShaderHelper.compileShader(
+				GLES20.GL_VERTEX_SHADER, vertexSource);
+		final int fragmentShaderHandle = ShaderHelper.compileShader(
+				GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+		final int programHandle = ShaderHelper.createAndLinkProgram(
+				vertexShaderHandle, fragmentShaderHandle, attributes);
+
+		// The program keeps the shaders alive as long as they are attached.
+		GLES20.glDeleteShader(vertexShaderHandle);
+		GLES20.glDeleteShader(fragmentShaderHandle);
+
+		if (mGetProgramBinary != null) {
+			saveBinary(programHandle, binaryFile);
+		}
+
+		return new ShaderProgram(programHandle);
+	}
+
+	/**
+	 * @return The linked program, or 0 if the binary could not be loaded.
+	 */
+	private int loadBinary(final File binaryFile) {
+		final int format;
+		final byte[] data;
+		try {
+			final DataInputStream in = new DataInputStream(new FileInputStream(
+					binaryFile));
+			try {
+				format = in.readInt();
+				final int length = in.readInt();
+				if (length < 0 || length > binaryFile.length()) {
+					return 0;
+				}
+				data = new byte[length];
+				in.readFully(data);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Could not read " + binaryFile, e);
+			return 0;
+		}
+
+		final ByteBuffer binary = ByteBuffer.allocateDirect(data.length)
+				.order(ByteOrder.nativeOrder());
+		binary.put(data).position(0);
+
+		final int programHandle = GLES20.glCreateProgram();
+		try {
+			mProgramBinary.invoke(null, programHandle, format, binary,
+					data.length);
+		} catch (Exception e) {
+			GLES20.glDeleteProgram(programHandle);
+			return 0;
+		}
+
+		final int[] linkStatus = new int[1];
+		GLES20.glGetProgramiv(programHandle, GLES20.GL_LINK_STATUS,
+				linkStatus, 0);
+		if (linkStatus[0] == 0) {
+			GLES20.glDeleteProgram(programHandle);
+			return 0;
+		}
+
+		return programHandle;
+	}
+
+	private void saveBinary(final int programHandle, final File binaryFile) {
+		final int[] length = new int[1];
+		GLES20.glGetProgramiv(programHandle, GL_PROGRAM_BINARY_LENGTH, length,
+				0);
+		if (length[0] <= 0) {
+			return;
+		}
+
+		final ByteBuffer binary = ByteBuffer.allocateDirect(length[0]).order(
+				ByteOrder.nativeOrder());
+		final int[] format = new int[1];
+		try {
+			mGetProgramBinary.invoke(null, programHandle, length[0], length,
+					0, format, 0, binary);
+		} catch (Exception e) {
+			Log.w(TAG, "Could not get the program binary.", e);
+			return;
+		}
+
+		final byte[] data = new byte[length[0]];
+		binary.position(0);
+		binary.get(data);
+
+		// Written to a temporary file first, so a crash never leaves a
+		// truncated binary behind.
+		final File temporaryFile = new File(mDirectory, binaryFile.getName()
+				+ ".tmp");
+		try {
+			final DataOutputStream out = new DataOutputStream(
+					new FileOutputStream(temporaryFile));
+			try {
+				out.writeInt(format[0]);
+				out.writeInt(data.length);
+				out.write(data);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Could not write " + binaryFile, e);
+			temporaryFile.delete();
+			return;
+		}
+
+		if (!temporaryFile.renameTo(binaryFile)) {
+			temporaryFile.delete();
+		}
+	}
+
+	private String readDriver(final File driverFile) {
+		try {
+			final DataInputStream in = new DataInputStream(new FileInputStream(
+					driverFile));
+			try {
+				return in.readUTF();
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private void writeDriver(final File driverFile) {
+		try {
+			final DataOutputStream out = new DataOutputStream(
+					new FileOutputStream(driverFile));
+			try {
+				out.writeUTF(mDriver);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Could not write " + driverFile, e);
+		}
+	}
+
+	/**
+	 * @return A hex SHA-1 of the sources, the attributes and the driver.
+	 */
+	private String hash(final String vertexSource,
+			final String fragmentSource, final String[] attributes) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			update(digest, vertexSource);
+			update(digest, fragmentSource);
+			if (attributes != null) {
+				for (String attribute : attributes) {
+					update(digest, attribute);
+				}
+			}
+			update(digest, mDriver);
+
+			final StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest()) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+				hex.append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void update(final MessageDigest digest, final String text)
+			throws UnsupportedEncodingException {
+		digest.update(text.getBytes("UTF-8"));
+		// Separates the parts, so moving text between them changes the hash.
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * @return Number of programs loaded from a binary.
+	 */
+	public int getHitCount() {
+		return mHits;
+	}
+
+	/**
+	 * @return Number of programs compiled from source.
+	 */
+	public int getMissCount() {
+		return mMisses;
+	}
+}
@@ -0,0 +1,151 @@
+package hr.foi.textures.helpers;
+
+/**
+ * A mutable rotation quaternion. Composing rotations as quaternions costs 16
+ * multiplications instead of the 27 or more of a matrix product, and the
+ * rounding errors of many products are removed by {@link #normalize()}
+ * instead of slowly shearing the rotation.
+ */
+public class Quaternion {
+
+	private float mX;
+	private float mY;
+	private float mZ;
+	private float mW = 1.0f;
+
+	public float getX() {
+		return mX;
+	}
+
+	public float getY() {
+		return mY;
+	}
+
+	public float getZ() {
+		return mZ;
+	}
+
+	public float getW() {
+		return mW;
+	}
+
+	/**
+	 * Sets the rotation which does nothing.
+	 */
+	public void setIdentity() {
+		mX = 0.0f;
+		mY = 0.0f;
+		mZ = 0.0f;
+		mW = 1.0f;
+	}
+
+	/**
+	 * Sets a rotation around an axis.
+	 *
+	 * @param angle
+	 *            In degrees.
+	 * @param x
+	 *            X of the axis, which must be of unit length, like Y and Z.
+	 */
+	public void setAxisAngle(final float angle, final float x, final float y,
+			final float z) {
+		final double half = Math.toRadians(angle) / 2.0;
+		final float sin = (float) Math.sin(half);
+		mX = x * sin;
+		mY = y * sin;
+		mZ = z * sin;
+		mW = (float) Math.cos(half);
+	}
+
+	/**
+	 * Sets the shortest rotation which turns one unit vector into another.
+	 */
+	public void setArc(final float fromX, final float fromY, final float fromZ,
+			final float toX, final float toY, final float toZ) {
+		// The cross product is the axis times the sine, the dot product the
+		// cosine of the angle. Adding one to the cosine and normalizing
+		// halves the angle, without any trigonometry.
+		mX = fromY * toZ - fromZ * toY;
+		mY = fromZ * toX - fromX * toZ;
+		mZ = fromX * toY - fromY * toX;
+		mW = 1.0f + fromX * toX + fromY * toY + fromZ * toZ;
+		normalize();
+	}
+
+	/**
+	 * Applies another rotation after this one, so this becomes the other
+	 * rotation times this one.
+	 */
+	public void rotateBy(final Quaternion q) {
+		final float x = q.mW * mX + q.mX * mW + q.mY * mZ - q.mZ * mY;
+		final float y = q.mW * mY - q.mX * mZ + q.mY * mW + q.mZ * mX;
+		final float z = q.mW * mZ + q.mX * mY - q.mY * mX + q.mZ * mW;
+		final float w = q.mW * mW - q.mX * mX - q.mY * mY - q.mZ * mZ;
+		mX = x;
+		mY = y;
+		mZ = z;
+		mW = w;
+	}
+
+	/**
+	 * Scales back to unit length. Opposite vectors, which have no single
+	 * shortest arc, give the identity.
+	 */
+	public void normalize() {
+		final float lengthSquared = mX * mX + mY * mY + mZ * mZ + mW * mW;
+		if (lengthSquared < 1e-12f) {
+			setIdentity();
+			return;
+		}
+
+		final float scale = 1.0f / (float) Math.sqrt(lengthSquared);
+		mX *= scale;
+		mY *= scale;
+		mZ *= scale;
+		mW *= scale;
+	}
+
+	/**
+	 * @return The angle of the rotation in degrees, between 0 and 360.
+	 */
+	public float getAngle() {
+		return (float) Math.toDegrees(2.0 * Math.acos(Math.max(-1.0f,
+				Math.min(1.0f, mW))));
+	}
+
+	/**
+	 * Writes the rotation as a matrix, in the column-major layout of
+	 * {@link android.opengl.Matrix}.
+	 */
+	public void toMatrix(final float[] m, final int offset) {
+		final float xx = mX * mX;
+		final float yy = mY * mY;
+		final float zz = mZ * mZ;
+		final float xy = mX * mY;
+		final float xz = mX * mZ;
+		final float yz = mY * mZ;
+		final float wx = mW * mX;
+		final float wy = mW * mY;
+		final float wz = mW * mZ;
+
+		m[offset] = 1.0f - 2.0f * (yy + zz);
+		m[offset + 1] = 2.0f * (xy + wz);
+		m[offset + 2] = 2.0f * (xz - wy);
+		m[offset + 3] = 0.0f;
+
+		m[offset + 4] = 2.0f * (xy - wz);
+		m[offset + 5] = 1.0f - 2.0f * (xx + zz);
+		m[offset + 6] = 2.0f * (yz + wx);
+		m[offset + 7] = 0.0f;
+
+		m[offset + 8] = 2.0f * (xz + wy);
+		m[offset + 9] = 2.0f * (yz - wx);
+		m[offset + 10] = 1.0f - 2.0f * (xx + yy);
+		m[offset + 11] = 0.0f;
+
+		m[offset + 12] = 0.0f;
+		m[offset + 13] = 0.0f;
+		m[offset + 14] = 0.0f;
+		m[offset + 15] = 1.0f;
+	}
+}
@@ -0,0 +1,74 @@
+package hr.foi.textures.helpers;
+
+/**
+ * Least significant digit radix sort of 64-bit keys, compared as unsigned.
+ * Sorting allocates nothing once the scratch space has grown to the largest
+ * count, and is stable, so keys which are equal keep their order.
+ */
+public class RadixSort {
+
+	private static final int BITS = 8;
+	private static final int BUCKETS = 1 << BITS;
+	private static final int PASSES = 64 / BITS;
+
+	private final int[] mCounts = new int[BUCKETS];
+	private long[] mScratch;
+
+	/**
+	 * @param capacity
+	 *            Largest number of keys expected, more grow the scratch space.
+	 */
+	public RadixSort(final int capacity) {
+		mScratch = new long[capacity];
+	}
+
+	/**
+	 * Sorts the first count keys in ascending unsigned order.
+	 */
+	public void sort(final long[] keys, final int count) {
+		if (mScratch.length < count) {
+			mScratch = new long[count];
+		}
+
+		long[] from = keys;
+		long[] to = mScratch;
+		for (int pass = 0; pass < PASSES; pass++) {
+			final int shift = pass * BITS;
+
+			for (int i = 0; i < BUCKETS; i++) {
+				mCounts[i] = 0;
+			}
+			for (int i = 0; i < count; i++) {
+				mCounts[digit(from[i], shift)]++;
+			}
+
+			// A digit shared by all keys does not change the order.
+			if (count == 0 || mCounts[digit(from[0], shift)] == count) {
+				continue;
+			}
+
+			int start = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				final int bucketCount = mCounts[i];
+				mCounts[i] = start;
+				start += bucketCount;
+			}
+			for (int i = 0; i < count; i++) {
+				final long key = from[i];
+				to[mCounts[digit(key, shift)]++] = key;
+			}
+
+			final long[] swap = from;
+			from = to;
+			to = swap;
+		}
+
+		if (from != keys) {
+			System.arraycopy(from, 0, keys, 0, count);
+		}
+	}
+
+	private static int digit(final long key, final int shift) {
+		return (int) (key >>> shift) & (BUCKETS - 1);
+	}
+}
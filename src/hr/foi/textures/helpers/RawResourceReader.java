@@ -1,34 +1,198 @@
 package hr.foi.textures.helpers;
 
-import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
 
+/**
+ * Reads raw resources and assets. Files stored uncompressed in the APK are
+ * memory-mapped, everything else is read in one pass into a direct buffer.
+ * Streams are always closed before returning, and errors are thrown rather
+ * than returned as null.
+ *
+ * aapt compresses most file types, which then cannot be mapped. To map large
+ * payloads, store them with an extension aapt leaves uncompressed, or
+ * exclude their extension from compression when building.
+ */
 public class RawResourceReader {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** Initial size of the buffer used for streamed files. */
+	private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 * Buffer reused for streamed text files, one per thread, since the text is
+	 * copied into a String anyway.
+	 */
+	private static final ThreadLocal<ByteBuffer> sTextBuffer = new ThreadLocal<ByteBuffer>();
+
+	/**
+	 * Reads a raw resource as UTF-8 text.
+	 */
 	public static String readTextFileFromRawResource(final Context context,
 			final int resourceId) {
-		final InputStream inputStream = context.getResources().openRawResource(
-				resourceId);
-		final InputStreamReader inputStreamReader = new InputStreamReader(
-				inputStream);
-		final BufferedReader bufferedReader = new BufferedReader(
-				inputStreamReader);
+		final Resources resources = context.getResources();
+
+		final ByteBuffer mapped = mapRawResource(resources, resourceId);
+		if (mapped != null) {
+			return decode(mapped);
+		}
+
+		final ByteBuffer buffer = readFully(
+				resources.openRawResource(resourceId), sTextBuffer.get());
+		sTextBuffer.set(buffer);
+		return decode(buffer);
+	}
+
+	/**
+	 * Reads a raw resource into a buffer, memory-mapped if the resource is
+	 * stored uncompressed. The buffer is big endian and not shared, so it may
+	 * be kept.
+	 */
+	public static ByteBuffer readRawResource(final Context context,
+			final int resourceId) {
+		final Resources resources = context.getResources();
+
+		final ByteBuffer mapped = mapRawResource(resources, resourceId);
+		if (mapped != null) {
+			return mapped;
+		}
+
+		return readFully(resources.openRawResource(resourceId), null);
+	}
+
+	/**
+	 * Reads an asset into a buffer, memory-mapped if the asset is stored
+	 * uncompressed. The buffer is big endian and not shared, so it may be
+	 * kept.
+	 */
+	public static ByteBuffer readAsset(final Context context, final String path) {
+		final AssetManager assets = context.getAssets();
+
+		try {
+			final ByteBuffer mapped = map(assets.openFd(path));
+			if (mapped != null) {
+				return mapped;
+			}
+		} catch (IOException e) {
+			// Compressed assets have no file descriptor, stream them.
+		}
+
+		try {
+			return readFully(assets.open(path, AssetManager.ACCESS_STREAMING),
+					null);
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading asset " + path + ".", e);
+		}
+	}
+
+	/**
+	 * @return The mapped resource, or null if it is compressed.
+	 */
+	private static ByteBuffer mapRawResource(final Resources resources,
+			final int resourceId) {
+		final AssetFileDescriptor descriptor;
+		try {
+			descriptor = resources.openRawResourceFd(resourceId);
+		} catch (Resources.NotFoundException e) {
+			// Compressed resources have no file descriptor.
+			return null;
+		}
+		return map(descriptor);
+	}
 
-		String nextLine;
-		final StringBuilder body = new StringBuilder();
+	/**
+	 * Maps the range of a file descriptor and closes it. The mapping stays
+	 * valid after closing.
+	 *
+	 * @return The mapped range, or null if it cannot be mapped.
+	 */
+	private static ByteBuffer map(final AssetFileDescriptor descriptor) {
+		if (descriptor == null) {
+			return null;
+		}
 
 		try {
-			while ((nextLine = bufferedReader.readLine()) != null) {
-				body.append(nextLine);
-				body.append('\n');
+			final FileInputStream in = new FileInputStream(
+					descriptor.getFileDescriptor());
+			try {
+				final FileChannel channel = in.getChannel();
+				return channel.map(FileChannel.MapMode.READ_ONLY,
+						descriptor.getStartOffset(), descriptor.getLength());
+			} finally {
+				in.close();
 			}
 		} catch (IOException e) {
 			return null;
+		} finally {
+			try {
+				descriptor.close();
+			} catch (IOException e) {
+				// Nothing left to do.
+			}
 		}
+	}
 
-		return body.toString();
+	/**
+	 * Reads a stream to its end into a direct buffer and closes it.
+	 *
+	 * @param buffer
+	 *            A buffer to reuse, grown if too small, or null.
+	 * @return The buffer holding the data, flipped for reading.
+	 */
+	private static ByteBuffer readFully(final InputStream inputStream,
+			final ByteBuffer buffer) {
+		ByteBuffer target = buffer;
+		try {
+			if (target == null) {
+				target = ByteBuffer.allocateDirect(Math.max(
+						INITIAL_BUFFER_SIZE, inputStream.available() + 1));
+			}
+			target.clear();
+
+			final ReadableByteChannel channel = Channels
+					.newChannel(inputStream);
+			while (channel.read(target) >= 0) {
+				if (!target.hasRemaining()) {
+					final ByteBuffer larger = ByteBuffer
+							.allocateDirect(target.capacity() * 2);
+					target.flip();
+					larger.put(target);
+					target = larger;
+				}
+			}
+			target.flip();
+			return target;
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading resource.", e);
+		} finally {
+			try {
+				inputStream.close();
+			} catch (IOException e) {
+				// Nothing left to do.
+			}
+		}
+	}
+
+	private static String decode(final ByteBuffer buffer) {
+		try {
+			final CharBuffer text = UTF_8.newDecoder().decode(buffer);
+			return text.toString();
+		} catch (CharacterCodingException e) {
+			throw new RuntimeException("Resource is not valid UTF-8.", e);
+		}
 	}
 }
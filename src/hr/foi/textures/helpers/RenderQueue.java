@@ -0,0 +1,112 @@
+package hr.foi.textures.helpers;
+
+/**
+ * Opaque draws sorted front to back, so the depth test rejects hidden
+ * fragments before they are shaded. Draws at about the same depth are
+ * grouped by program and then texture, to keep state changes low.
+ *
+ * Each draw is a 64-bit key: 24 bits of view space depth, 8 bits of
+ * program, 16 bits of texture and 16 bits of the caller's item index. The
+ * depth bits are the top bits of the float, which order like the float for
+ * positive numbers.
+ */
+public class RenderQueue {
+
+	private static final int ITEM_BITS = 16;
+	private static final int TEXTURE_BITS = 16;
+	private static final int PROGRAM_BITS = 8;
+
+	/** Positions of the fields inside a key. */
+	private static final int TEXTURE_SHIFT = ITEM_BITS;
+	private static final int PROGRAM_SHIFT = TEXTURE_SHIFT + TEXTURE_BITS;
+	private static final int DEPTH_SHIFT = PROGRAM_SHIFT + PROGRAM_BITS;
+
+	/** Float bits dropped from the depth, leaving 24. */
+	private static final int DEPTH_DROPPED_BITS = 7;
+
+	/** Largest number of draws, as many as the item index can address. */
+	public static final int MAX_ITEMS = 1 << ITEM_BITS;
+
+	private final RadixSort mSort;
+	private long[] mKeys;
+	private int mCount;
+
+	/**
+	 * @param capacity
+	 *            Number of draws expected, more grow the queue.
+	 */
+	public RenderQueue(final int capacity) {
+		mKeys = new long[capacity];
+		mSort = new RadixSort(capacity);
+	}
+
+	/**
+	 * Empties the queue.
+	 */
+	public void clear() {
+		mCount = 0;
+	}
+
+	/**
+	 * Adds a draw.
+	 *
+	 * @param depth
+	 *            Distance in front of the camera along the view direction.
+	 *            Anything behind the camera sorts first.
+	 * @param program
+	 *            Index of the program, below 256.
+	 * @param texture
+	 *            Texture handle; only its low 16 bits group the draws.
+	 * @param item
+	 *            Index of the draw for the caller, below {@link #MAX_ITEMS}.
+	 */
+	public void add(final float depth, final int program, final int texture,
+			final int item) {
+		if (item < 0 || item >= MAX_ITEMS) {
+			throw new IllegalArgumentException("Item index out of range: "
+					+ item);
+		}
+		if (mCount == mKeys.length) {
+			final long[] keys = new long[mCount * 2];
+			System.arraycopy(mKeys, 0, keys, 0, mCount);
+			mKeys = keys;
+		}
+
+		mKeys[mCount++] = getKey(depth, program, texture, item);
+	}
+
+	/**
+	 * @return The sort key of a draw.
+	 */
+	public static long getKey(final float depth, final int program,
+			final int texture, final int item) {
+		// Also maps NaN and negative zero to the front.
+		final long depthBits = depth > 0.0f ? Float.floatToIntBits(depth)
+				>>> DEPTH_DROPPED_BITS : 0;
+		final long programBits = program & (1 << PROGRAM_BITS) - 1;
+		final long textureBits = texture & (1 << TEXTURE_BITS) - 1;
+		return depthBits << DEPTH_SHIFT | programBits << PROGRAM_SHIFT
+				| textureBits << TEXTURE_SHIFT | item;
+	}
+
+	/**
+	 * Sorts the draws front to back.
+	 */
+	public void sort() {
+		mSort.sort(mKeys, mCount);
+	}
+
+	/**
+	 * @return Number of draws.
+	 */
+	public int size() {
+		return mCount;
+	}
+
+	/**
+	 * @return The item index of the draw at the given position.
+	 */
+	public int getItem(final int index) {
+		return (int) mKeys[index] & (MAX_ITEMS - 1);
+	}
+}
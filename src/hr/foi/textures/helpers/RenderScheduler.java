@@ -0,0 +1,67 @@
+package hr.foi.textures.helpers;
+
+import android.opengl.GLSurfaceView;
+
+/**
+ * Decides when a {@link GLSurfaceView} draws. The view only renders when
+ * dirty: a frame is requested by input, by changed textures and, from the
+ * end of the previous frame, by anything still animating. An unchanged scene
+ * is not drawn again.
+ *
+ * Rendering can also be made continuous, for example to measure frame
+ * timings.
+ */
+public class RenderScheduler {
+
+	private final GLSurfaceView mView;
+
+	private volatile boolean mContinuous;
+
+	/**
+	 * @param view
+	 *            The view to schedule, its renderer must already be set.
+	 */
+	public RenderScheduler(final GLSurfaceView view) {
+		mView = view;
+		mView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+	}
+
+	/**
+	 * Requests a frame, because something visible changed. Safe to call from
+	 * any thread.
+	 */
+	public void requestRender() {
+		if (!mContinuous) {
+			mView.requestRender();
+		}
+	}
+
+	/**
+	 * Called by the renderer at the end of every frame.
+	 *
+	 * @param animating
+	 *            True if the next frame will differ even without new input,
+	 *            so it is requested right away.
+	 */
+	public void onFrameDrawn(final boolean animating) {
+		if (animating) {
+			requestRender();
+		}
+	}
+
+	/**
+	 * Draws continuously, or only when dirty again.
+	 */
+	public void setContinuous(final boolean continuous) {
+		mContinuous = continuous;
+		mView.setRenderMode(continuous ? GLSurfaceView.RENDERMODE_CONTINUOUSLY
+				: GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+	}
+
+	/**
+	 * @return True if the view draws continuously.
+	 */
+	public boolean isContinuous() {
+		return mContinuous;
+	}
+}
@@ -0,0 +1,169 @@
+package hr.foi.textures.helpers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.opengl.GLES20;
+
+/**
+ * A linked shader program together with the locations of all of its active
+ * uniforms and attributes. The locations are introspected once at link time,
+ * so the draw path never has to look anything up by name.
+ */
+public class ShaderProgram {
+
+	/** Location returned for names which are not active in the program. */
+	public static final int NOT_FOUND = -1;
+
+	/**
+	 * An active uniform or attribute of a linked program.
+	 */
+	public static class Variable {
+		/** Name of the variable, without any trailing "[0]". */
+		public final String name;
+
+		/** Location (handle) of the variable. */
+		public final int location;
+
+		/** GL type of the variable, for example GL_FLOAT_MAT4. */
+		public final int type;
+
+		/** Number of array elements, 1 for non-array variables. */
+		public final int size;
+
+		Variable(String name, int location, int type, int size) {
+			this.name = name;
+			this.location = location;
+			this.type = type;
+			this.size = size;
+		}
+	}
+
+	/** This is a handle to the linked program. */
+	private final int mProgramHandle;
+
+	private final Map<String, Variable> mUniforms = new HashMap<String, Variable>();
+	private final Map<String, Variable> mAttributes = new HashMap<String, Variable>();
+
+	/**
+	 * Links the program and introspects its active uniforms and attributes.
+	 *
+	 * @param vertexShaderHandle
+	 *            An OpenGL handle to an already-compiled vertex shader.
+	 * @param fragmentShaderHandle
+	 *            An OpenGL handle to an already-compiled fragment shader.
+	 * @param attributes
+	 *            Attributes that need to be bound to the program.
+	 */
+	public ShaderProgram(final int vertexShaderHandle,
+			final int fragmentShaderHandle, final String[] attributes) {
+		this(ShaderHelper.createAndLinkProgram(vertexShaderHandle,
+				fragmentShaderHandle, attributes));
+	}
+
+	/**
+	 * Wraps an already linked program and introspects its active uniforms and
+	 * attributes.
+	 *
+	 * @param programHandle
+	 *            An OpenGL handle to a linked program.
+	 */
+	public ShaderProgram(final int programHandle) {
+		mProgramHandle = programHandle;
+
+		introspect(GLES20.GL_ACTIVE_UNIFORMS,
+				GLES20.GL_ACTIVE_UNIFORM_MAX_LENGTH, true, mUniforms);
+		introspect(GLES20.GL_ACTIVE_ATTRIBUTES,
+				GLES20.GL_ACTIVE_ATTRIBUTE_MAX_LENGTH, false, mAttributes);
+	}
+
+	private void introspect(final int countParam, final int maxLengthParam,
+			final boolean uniforms, final Map<String, Variable> target) {
+		final int[] count = new int[1];
+		final int[] maxLength = new int[1];
+		GLES20.glGetProgramiv(mProgramHandle, countParam, count, 0);
+		GLES20.glGetProgramiv(mProgramHandle, maxLengthParam, maxLength, 0);
+
+		final byte[] nameBuffer = new byte[Math.max(maxLength[0], 1)];
+		final int[] length = new int[1];
+		final int[] size = new int[1];
+		final int[] type = new int[1];
+
+		for (int i = 0; i < count[0]; i++) {
+			if (uniforms) {
+				GLES20.glGetActiveUniform(mProgramHandle, i, nameBuffer.length,
+						length, 0, size, 0, type, 0, nameBuffer, 0);
+			} else {
+				GLES20.glGetActiveAttrib(mProgramHandle, i, nameBuffer.length,
+						length, 0, size, 0, type, 0, nameBuffer, 0);
+			}
+
+			String name = new String(nameBuffer, 0, length[0]);
+			final int location = uniforms ? GLES20.glGetUniformLocation(
+					mProgramHandle, name) : GLES20.glGetAttribLocation(
+					mProgramHandle, name);
+
+			// Uniform arrays are reported as "u_Name[0]".
+			if (name.endsWith("[0]")) {
+				name = name.substring(0, name.length() - 3);
+			}
+
+			target.put(name, new Variable(name, location, type[0], size[0]));
+		}
+	}
+
+	/**
+	 * @return An OpenGL handle to the program.
+	 */
+	public int getHandle() {
+		return mProgramHandle;
+	}
+
+	/**
+	 * Returns the location of an active uniform, or {@link #NOT_FOUND} if the
+	 * program does not use it. Meant to be called once after linking, not
+	 * while drawing.
+	 */
+	public int getUniformHandle(final String name) {
+		final Variable uniform = mUniforms.get(name);
+		return uniform != null ? uniform.location : NOT_FOUND;
+	}
+
+	/**
+	 * Returns the location of an active attribute, or {@link #NOT_FOUND} if
+	 * the program does not use it. Meant to be called once after linking, not
+	 * while drawing.
+	 */
+	public int getAttributeHandle(final String name) {
+		final Variable attribute = mAttributes.get(name);
+		return attribute != null ? attribute.location : NOT_FOUND;
+	}
+
+	/**
+	 * @return The active uniform with the given name, or null.
+	 */
+	public Variable getUniform(final String name) {
+		return mUniforms.get(name);
+	}
+
+	/**
+	 * @return The active attribute with the given name, or null.
+	 */
+	public Variable getAttribute(final String name) {
+		return mAttributes.get(name);
+	}
+
+	/**
+	 * Makes this program the current one.
+	 */
+	public void use(final Gl gl) {
+		gl.glUseProgram(mProgramHandle);
+	}
+
+	/**
+	 * Deletes the program. The object must not be used afterwards.
+	 */
+	public void delete() {
+		GLES20.glDeleteProgram(mProgramHandle);
+	}
+}
@@ -0,0 +1,223 @@
+package hr.foi.textures.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+
+/**
+ * Builds shader programs from one vertex and one fragment uber-source. Each
+ * combination of features is a variant, compiled the first time it is asked
+ * for and then kept until the GL context is lost.
+ *
+ * The sources are expanded once: every line of the form #include "name.glsl"
+ * is replaced with the raw resource of that name. Each variant then gets a
+ * #define for each of its features, and LIGHT_COUNT for the number of point
+ * lights, in front of both sources.
+ */
+public class ShaderVariants {
+
+	/** Samples u_Texture at a_TexCoordinate. */
+	public static final int TEXTURE = 1;
+
+	/**
+	 * Per-pixel diffuse lighting from the point lights in u_LightPos and
+	 * u_LightColor, needs a_Normal.
+	 */
+	public static final int LIGHTING = 1 << 1;
+
+	/** Batched cubes, moved by a_Offset and rotated by u_Rotation. */
+	public static final int INSTANCING = 1 << 2;
+
+	/** Multiplies with the vertex color a_Color. */
+	public static final int COLOR = 1 << 3;
+
+	/**
+	 * With {@link #LIGHTING}, computes the attenuation of the lights per
+	 * vertex instead of per fragment. Cheaper on low-end GPUs.
+	 */
+	public static final int VERTEX_ATTENUATION = 1 << 4;
+
+	/** Discards fragments whose alpha is below one half, for cut-outs. */
+	public static final int ALPHA_TEST = 1 << 5;
+
+	/** Names of the feature defines, in the order of the feature bits. */
+	private static final String[] FEATURE_NAMES = { "TEXTURE", "LIGHTING",
+			"INSTANCING", "COLOR", "VERTEX_ATTENUATION", "ALPHA_TEST" };
+
+	/** Attribute locations, the same in every variant. */
+	public static final String[] ATTRIBUTES = { "a_Position", "a_Normal",
+			"a_TexCoordinate", "a_Color", "a_Offset" };
+
+	private static final String INCLUDE = "#include";
+
+	private final Context mContext;
+	private final ProgramCache mProgramCache;
+	private final int mVertexResourceId;
+	private final int mFragmentResourceId;
+
+	/** The expanded sources, read on first use. */
+	private String mVertexSource;
+	private String mFragmentSource;
+
+	/** Compiled variants, indexed by their light count and features. */
+	private final ShaderProgram[] mPrograms = new ShaderProgram[(PointLights.MAX_LIGHTS + 1) << FEATURE_NAMES.length];
+
+	private int mCompiledCount;
+
+	/**
+	 * @param programCache
+	 *            Used to load or compile the variants.
+	 * @param vertexResourceId
+	 *            Raw resource of the vertex uber-source.
+	 * @param fragmentResourceId
+	 *            Raw resource of the fragment uber-source.
+	 */
+	public ShaderVariants(final Context context,
+			final ProgramCache programCache, final int vertexResourceId,
+			final int fragmentResourceId) {
+		mContext = context;
+		mProgramCache = programCache;
+		mVertexResourceId = vertexResourceId;
+		mFragmentResourceId = fragmentResourceId;
+	}
+
+	/**
+	 * Returns the unlit program with the given features.
+	 *
+	 * @see #get(int, int)
+	 */
+	public ShaderProgram get(final int features) {
+		return get(features, 0);
+	}
+
+	/**
+	 * Returns the program with the given features, compiling it if it was not
+	 * used since the GL context was created. Must be called on the GL thread.
+	 *
+	 * @param features
+	 *            A combination of {@link #TEXTURE}, {@link #LIGHTING},
+	 *            {@link #INSTANCING}, {@link #COLOR},
+	 *            {@link #VERTEX_ATTENUATION} and {@link #ALPHA_TEST}.
+	 * @param lightCount
+	 *            Number of point lights, at least 1 with {@link #LIGHTING}.
+	 */
+	public ShaderProgram get(final int features, final int lightCount) {
+		if (features < 0 || features >= 1 << FEATURE_NAMES.length) {
+			throw new IllegalArgumentException("Unknown shader features: "
+					+ features);
+		}
+		final boolean lit = (features & LIGHTING) != 0;
+		if (lightCount < (lit ? 1 : 0)
+				|| lightCount > (lit ? PointLights.MAX_LIGHTS : 0)) {
+			throw new IllegalArgumentException("Unsupported light count: "
+					+ lightCount);
+		}
+
+		final int index = lightCount << FEATURE_NAMES.length | features;
+		ShaderProgram program = mPrograms[index];
+		if (program == null) {
+			if (mVertexSource == null) {
+				mVertexSource = expand(mVertexResourceId,
+						new ArrayList<String>());
+				mFragmentSource = expand(mFragmentResourceId,
+						new ArrayList<String>());
+			}
+
+			final String defines = getDefines(features, lightCount);
+			program = mProgramCache.createProgram(defines + mVertexSource,
+					defines + mFragmentSource, ATTRIBUTES);
+			mPrograms[index] = program;
+			mCompiledCount++;
+		}
+
+		return program;
+	}
+
+	/**
+	 * Forgets all variants without deleting them. Used after the GL context
+	 * was lost, which already deleted them.
+	 */
+	public void invalidate() {
+		for (int i = 0; i < mPrograms.length; i++) {
+			mPrograms[i] = null;
+		}
+	}
+
+	/**
+	 * @return The #define lines of the given features and light count.
+	 */
+	public static String getDefines(final int features, final int lightCount) {
+		final StringBuilder defines = new StringBuilder();
+		if (lightCount > 0) {
+			defines.append("#define LIGHT_COUNT ").append(lightCount)
+					.append('\n');
+		}
+		for (int i = 0; i < FEATURE_NAMES.length; i++) {
+			if ((features & (1 << i)) != 0) {
+				defines.append("#define ").append(FEATURE_NAMES[i])
+						.append('\n');
+			}
+		}
+		return defines.toString();
+	}
+
+	/**
+	 * Reads a raw resource and replaces its #include lines with the included
+	 * resources, recursively.
+	 *
+	 * @param including
+	 *            Resources currently being expanded, to detect cycles.
+	 */
+	private String expand(final int resourceId, final List<String> including) {
+		final String name = mContext.getResources().getResourceEntryName(
+				resourceId);
+		if (including.contains(name)) {
+			throw new RuntimeException("Shader " + name + " includes itself.");
+		}
+		including.add(name);
+
+		final String source = RawResourceReader.readTextFileFromRawResource(
+				mContext, resourceId);
+
+		final StringBuilder expanded = new StringBuilder(source.length());
+		for (String line : source.split("\n", -1)) {
+			final String trimmed = line.trim();
+			if (!trimmed.startsWith(INCLUDE)) {
+				expanded.append(line).append('\n');
+				continue;
+			}
+
+			final int start = trimmed.indexOf('"');
+			final int end = trimmed.lastIndexOf('"');
+			if (start < 0 || end <= start) {
+				throw new RuntimeException("Malformed include in shader "
+						+ name + ": " + trimmed);
+			}
+
+			String includeName = trimmed.substring(start + 1, end);
+			if (includeName.endsWith(".glsl")) {
+				includeName = includeName.substring(0,
+						includeName.length() - 5);
+			}
+
+			final int includeId = mContext.getResources().getIdentifier(
+					includeName, "raw", mContext.getPackageName());
+			if (includeId == 0) {
+				throw new RuntimeException("Shader " + name
+						+ " includes the missing " + includeName + ".");
+			}
+			expanded.append(expand(includeId, including));
+		}
+
+		including.remove(name);
+		return expanded.toString();
+	}
+
+	/**
+	 * @return Number of variants compiled or loaded so far.
+	 */
+	public int getCompiledCount() {
+		return mCompiledCount;
+	}
+}
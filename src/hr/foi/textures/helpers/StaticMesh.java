@@ -0,0 +1,472 @@
+package hr.foi.textures.helpers;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import android.opengl.GLES20;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Geometry which rarely changes after creation. Position, normal and texture
+ * coordinate data, optionally followed by extra per-vertex data, are
+ * interleaved into a single buffer, duplicate vertices are merged and the
+ * triangles are described by an index buffer.
+ *
+ * The data is uploaded once into vertex buffer objects. If that is not
+ * possible, the mesh keeps drawing from client memory. Individual vertices
+ * can be changed later; only the changed range is uploaded again.
+ */
+public class StaticMesh {
+	private static final String TAG = "StaticMesh";
+
+	/** How many bytes per float. */
+	public static final int BYTES_PER_FLOAT = 4;
+
+	/** How many bytes per index. */
+	public static final int BYTES_PER_SHORT = 2;
+
+	/** Size of the position data in elements. */
+	public static final int POSITION_DATA_SIZE = 3;
+
+	/** Size of the normal data in elements. */
+	public static final int NORMAL_DATA_SIZE = 3;
+
+	/** Size of the texture coordinate data in elements. */
+	public static final int TEXTURE_COORDINATE_DATA_SIZE = 2;
+
+	/** Number of floats per interleaved vertex without extra data. */
+	public static final int VERTEX_SIZE = POSITION_DATA_SIZE
+			+ NORMAL_DATA_SIZE + TEXTURE_COORDINATE_DATA_SIZE;
+
+	/** Offsets of the standard attributes inside a vertex, in floats. */
+	public static final int POSITION_OFFSET = 0;
+	public static final int NORMAL_OFFSET = POSITION_DATA_SIZE;
+	public static final int TEXTURE_COORDINATE_OFFSET = POSITION_DATA_SIZE
+			+ NORMAL_DATA_SIZE;
+
+	/** Number of floats per interleaved vertex. */
+	private final int mVertexSize;
+
+	/** Number of bytes per interleaved vertex. */
+	private final int mStride;
+
+	/** Interleaved vertex data in client memory. */
+	private final FloatBuffer mVertices;
+
+	/** Index data in client memory. */
+	private final ShortBuffer mIndices;
+
+	private final int mVertexCount;
+	private final int mIndexCount;
+
+	/** Handles to the vertex and index buffer objects, 0 if not uploaded. */
+	private int mVertexBufferHandle;
+	private int mIndexBufferHandle;
+
+	/** Center X, Y, Z and radius of a sphere around all positions. */
+	private final float[] mBoundingSphere = new float[4];
+
+	/** Range of vertices changed since the last upload, in floats. */
+	private int mDirtyStart = Integer.MAX_VALUE;
+	private int mDirtyEnd = 0;
+
+	/**
+	 * Creates a mesh from separate, non-indexed triangle data.
+	 *
+	 * @param positions
+	 *            X, Y, Z for each vertex.
+	 * @param normals
+	 *            X, Y, Z for each vertex.
+	 * @param textureCoordinates
+	 *            S, T for each vertex.
+	 */
+	public StaticMesh(final float[] positions, final float[] normals,
+			final float[] textureCoordinates) {
+		final int count = positions.length / POSITION_DATA_SIZE;
+
+		final float[] vertices = new float[count * VERTEX_SIZE];
+		final short[] indices = new short[count];
+		int unique = 0;
+
+		for (int i = 0; i < count; i++) {
+			final int offset = unique * VERTEX_SIZE;
+			System.arraycopy(positions, i * POSITION_DATA_SIZE, vertices,
+					offset, POSITION_DATA_SIZE);
+			System.arraycopy(normals, i * NORMAL_DATA_SIZE, vertices, offset
+					+ NORMAL_OFFSET, NORMAL_DATA_SIZE);
+			System.arraycopy(textureCoordinates, i
+					* TEXTURE_COORDINATE_DATA_SIZE, vertices, offset
+					+ TEXTURE_COORDINATE_OFFSET, TEXTURE_COORDINATE_DATA_SIZE);
+
+			// Reuse an identical vertex if we already have one.
+			int match = unique;
+			for (int j = 0; j < unique; j++) {
+				if (sameVertex(vertices, j * VERTEX_SIZE, offset)) {
+					match = j;
+					break;
+				}
+			}
+
+			indices[i] = (short) match;
+			if (match == unique) {
+				unique++;
+			}
+		}
+
+		mVertexSize = VERTEX_SIZE;
+		mStride = mVertexSize * BYTES_PER_FLOAT;
+		mVertexCount = unique;
+		mIndexCount = count;
+
+		mVertices = ByteBuffer
+				.allocateDirect(unique * VERTEX_SIZE * BYTES_PER_FLOAT)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		mVertices.put(vertices, 0, unique * VERTEX_SIZE).position(0);
+
+		mIndices = ByteBuffer.allocateDirect(count * BYTES_PER_SHORT)
+				.order(ByteOrder.nativeOrder()).asShortBuffer();
+		mIndices.put(indices).position(0);
+
+		computeBoundingSphere();
+	}
+
+	/**
+	 * Creates a mesh from already interleaved and indexed data.
+	 *
+	 * @param vertices
+	 *            Position, normal and texture coordinate for each vertex,
+	 *            followed by vertexSize - {@link #VERTEX_SIZE} floats of extra
+	 *            data.
+	 * @param vertexSize
+	 *            Number of floats per vertex.
+	 * @param indices
+	 *            Three indices for each triangle.
+	 */
+	public StaticMesh(final float[] vertices, final int vertexSize,
+			final short[] indices) {
+		if (vertexSize < VERTEX_SIZE) {
+			throw new IllegalArgumentException("Vertex size " + vertexSize
+					+ " is smaller than " + VERTEX_SIZE + ".");
+		}
+
+		mVertexSize = vertexSize;
+		mStride = mVertexSize * BYTES_PER_FLOAT;
+		mVertexCount = vertices.length / vertexSize;
+		mIndexCount = indices.length;
+
+		mVertices = ByteBuffer
+				.allocateDirect(mVertexCount * vertexSize * BYTES_PER_FLOAT)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		mVertices.put(vertices, 0, mVertexCount * vertexSize).position(0);
+
+		mIndices = ByteBuffer.allocateDirect(mIndexCount * BYTES_PER_SHORT)
+				.order(ByteOrder.nativeOrder()).asShortBuffer();
+		mIndices.put(indices).position(0);
+
+		computeBoundingSphere();
+	}
+
+	/**
+	 * Puts a sphere around the center of the bounding box of all positions.
+	 */
+	private void computeBoundingSphere() {
+		final float[] min = { Float.MAX_VALUE, Float.MAX_VALUE,
+				Float.MAX_VALUE };
+		final float[] max = { -Float.MAX_VALUE, -Float.MAX_VALUE,
+				-Float.MAX_VALUE };
+		for (int i = 0; i < mVertexCount; i++) {
+			for (int j = 0; j < POSITION_DATA_SIZE; j++) {
+				final float value = mVertices.get(i * mVertexSize
+						+ POSITION_OFFSET + j);
+				min[j] = Math.min(min[j], value);
+				max[j] = Math.max(max[j], value);
+			}
+		}
+
+		for (int j = 0; j < POSITION_DATA_SIZE; j++) {
+			mBoundingSphere[j] = (min[j] + max[j]) / 2.0f;
+		}
+
+		float radiusSquared = 0.0f;
+		for (int i = 0; i < mVertexCount; i++) {
+			float distanceSquared = 0.0f;
+			for (int j = 0; j < POSITION_DATA_SIZE; j++) {
+				final float d = mVertices.get(i * mVertexSize
+						+ POSITION_OFFSET + j)
+						- mBoundingSphere[j];
+				distanceSquared += d * d;
+			}
+			radiusSquared = Math.max(radiusSquared, distanceSquared);
+		}
+		mBoundingSphere[3] = (float) Math.sqrt(radiusSquared);
+	}
+
+	private static boolean sameVertex(final float[] vertices, final int a,
+			final int b) {
+		for (int i = 0; i < VERTEX_SIZE; i++) {
+			if (vertices[a + i] != vertices[b + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Uploads the mesh into vertex buffer objects. Must be called on the GL
+	 * thread, again after every loss of the GL context.
+	 *
+	 * @return true if the mesh will be drawn from buffer objects, false if it
+	 *         falls back to client memory.
+	 */
+	public boolean upload() {
+		// Older platforms are missing the offset variant of
+		// glVertexAttribPointer.
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD) {
+			mVertexBufferHandle = 0;
+			mIndexBufferHandle = 0;
+			return false;
+		}
+
+		final int[] buffers = new int[2];
+		GLES20.glGenBuffers(2, buffers, 0);
+
+		if (buffers[0] == 0 || buffers[1] == 0) {
+			Log.w(TAG, "Could not create buffer objects, using client memory.");
+			GLES20.glDeleteBuffers(2, buffers, 0);
+			mVertexBufferHandle = 0;
+			mIndexBufferHandle = 0;
+			return false;
+		}
+
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0]);
+		mVertices.position(0);
+		GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mVertices.capacity()
+				* BYTES_PER_FLOAT, mVertices, GLES20.GL_STATIC_DRAW);
+
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+		mIndices.position(0);
+		GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER,
+				mIndices.capacity() * BYTES_PER_SHORT, mIndices,
+				GLES20.GL_STATIC_DRAW);
+
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+		if (GLES20.glGetError() != GLES20.GL_NO_ERROR) {
+			Log.w(TAG, "Could not fill buffer objects, using client memory.");
+			GLES20.glDeleteBuffers(2, buffers, 0);
+			mVertexBufferHandle = 0;
+			mIndexBufferHandle = 0;
+			return false;
+		}
+
+		mVertexBufferHandle = buffers[0];
+		mIndexBufferHandle = buffers[1];
+		mDirtyStart = Integer.MAX_VALUE;
+		mDirtyEnd = 0;
+		return true;
+	}
+
+	/**
+	 * Changes three consecutive floats of one vertex, for example its
+	 * position. The change reaches the buffer object on the next
+	 * {@link #bind(Gl, int, int, int)}.
+	 *
+	 * @param vertex
+	 *            Index of the vertex.
+	 * @param offset
+	 *            Offset inside the vertex, in floats.
+	 */
+	public void setVertexData(final int vertex, final int offset,
+			final float x, final float y, final float z) {
+		final int start = vertex * mVertexSize + offset;
+		mVertices.put(start, x);
+		mVertices.put(start + 1, y);
+		mVertices.put(start + 2, z);
+
+		mDirtyStart = Math.min(mDirtyStart, start);
+		mDirtyEnd = Math.max(mDirtyEnd, start + 3);
+	}
+
+	/**
+	 * Uploads the vertices changed since the last upload.
+	 */
+	private void flush(final Gl gl) {
+		if (mDirtyStart < mDirtyEnd) {
+			mVertices.position(mDirtyStart);
+			gl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, mDirtyStart
+					* BYTES_PER_FLOAT, (mDirtyEnd - mDirtyStart)
+					* BYTES_PER_FLOAT, mVertices);
+			mVertices.position(0);
+
+			mDirtyStart = Integer.MAX_VALUE;
+			mDirtyEnd = 0;
+		}
+	}
+
+	/**
+	 * Deletes the buffer objects. The mesh keeps its client memory copy and
+	 * can be uploaded again.
+	 */
+	public void release() {
+		if (mVertexBufferHandle != 0) {
+			final int[] buffers = { mVertexBufferHandle, mIndexBufferHandle };
+			GLES20.glDeleteBuffers(2, buffers, 0);
+			mVertexBufferHandle = 0;
+			mIndexBufferHandle = 0;
+		}
+	}
+
+	/**
+	 * Points the given attributes at this mesh. Only needs to be called once
+	 * before any number of {@link #draw(Gl)} calls. Attributes the program
+	 * does not use have a handle of -1 and are skipped.
+	 */
+	public void bind(final Gl gl, final int positionHandle,
+			final int normalHandle, final int textureCoordinateHandle) {
+		if (mVertexBufferHandle != 0) {
+			gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferHandle);
+			gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER,
+					mIndexBufferHandle);
+			flush(gl);
+		} else {
+			gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+			gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+		}
+
+		bindAttribute(gl, positionHandle, POSITION_OFFSET, POSITION_DATA_SIZE);
+		bindAttribute(gl, normalHandle, NORMAL_OFFSET, NORMAL_DATA_SIZE);
+		bindAttribute(gl, textureCoordinateHandle, TEXTURE_COORDINATE_OFFSET,
+				TEXTURE_COORDINATE_DATA_SIZE);
+	}
+
+	/**
+	 * Points an additional attribute at the extra per-vertex data. Must be
+	 * called right after {@link #bind(Gl, int, int, int)}.
+	 *
+	 * @param handle
+	 *            Attribute handle.
+	 * @param offset
+	 *            Offset inside the vertex, in floats.
+	 * @param size
+	 *            Number of floats of the attribute.
+	 */
+	public void bindExtra(final Gl gl, final int handle, final int offset,
+			final int size) {
+		bindAttribute(gl, handle, offset, size);
+	}
+
+	/**
+	 * Points an attribute at the data of the bound buffer, or at client
+	 * memory if there is none, and enables it.
+	 */
+	private void bindAttribute(final Gl gl, final int handle,
+			final int offset, final int size) {
+		if (handle < 0) {
+			return;
+		}
+
+		if (mVertexBufferHandle != 0) {
+			gl.glVertexAttribPointer(handle, size, GLES20.GL_FLOAT, false,
+					mStride, offset * BYTES_PER_FLOAT);
+		} else {
+			mVertices.position(offset);
+			gl.glVertexAttribPointer(handle, size, GLES20.GL_FLOAT, false,
+					mStride, mVertices);
+			mVertices.position(0);
+		}
+
+		gl.glEnableVertexAttribArray(handle);
+	}
+
+	/**
+	 * Draws the mesh. {@link #bind(Gl, int, int, int)} must have been called
+	 * before.
+	 */
+	public void draw(final Gl gl) {
+		draw(gl, 0, mIndexCount);
+	}
+
+	/**
+	 * Draws a range of the indices. {@link #bind(Gl, int, int, int)} must
+	 * have been called before.
+	 *
+	 * @param first
+	 *            First index, a multiple of three.
+	 * @param count
+	 *            Number of indices, a multiple of three.
+	 */
+	public void draw(final Gl gl, final int first, final int count) {
+		if (mIndexBufferHandle != 0) {
+			gl.glDrawElements(GLES20.GL_TRIANGLES, count,
+					GLES20.GL_UNSIGNED_SHORT, first * BYTES_PER_SHORT);
+		} else {
+			mIndices.position(first);
+			gl.glDrawElements(GLES20.GL_TRIANGLES, count,
+					GLES20.GL_UNSIGNED_SHORT, mIndices);
+			mIndices.position(0);
+		}
+	}
+
+	/**
+	 * Unbinds the buffer objects, so later client memory draws are not
+	 * affected.
+	 */
+	public static void unbind(final Gl gl) {
+		gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * @return Interleaved vertex data. Must not be modified.
+	 */
+	public FloatBuffer getVertices() {
+		return mVertices.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return Index data. Must not be modified.
+	 */
+	public ShortBuffer getIndices() {
+		return mIndices.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return Center X, Y, Z and radius of a sphere around all positions.
+	 *         Must not be modified.
+	 */
+	public float[] getBoundingSphere() {
+		return mBoundingSphere;
+	}
+
+	/**
+	 * @return Number of floats per vertex.
+	 */
+	public int getVertexSize() {
+		return mVertexSize;
+	}
+
+	/**
+	 * @return Number of unique vertices.
+	 */
+	public int getVertexCount() {
+		return mVertexCount;
+	}
+
+	/**
+	 * @return Number of indices, three per triangle.
+	 */
+	public int getIndexCount() {
+		return mIndexCount;
+	}
+
+	/**
+	 * @return true if the mesh is currently drawn from buffer objects.
+	 */
+	public boolean isUploaded() {
+		return mVertexBufferHandle != 0;
+	}
+}
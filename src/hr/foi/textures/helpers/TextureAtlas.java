@@ -0,0 +1,291 @@
+package hr.foi.textures.helpers;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+/**
+ * Combines several images into one texture, so that meshes using any of them
+ * are drawn without binding another texture. Texture coordinates of a mesh
+ * are rewritten with {@link #remapTextureCoordinates(String, float[])}.
+ *
+ * Only images whose texture coordinates stay within 0 and 1 can share an
+ * atlas. Repeating textures, like the floor, must stay separate.
+ */
+public class TextureAtlas {
+
+	/** Filtered trilinearly, clamped so the border needs no gutter. */
+	private static final TextureParameters PARAMETERS = new TextureParameters(
+			GLES20.GL_LINEAR_MIPMAP_LINEAR, GLES20.GL_LINEAR,
+			GLES20.GL_CLAMP_TO_EDGE, GLES20.GL_CLAMP_TO_EDGE, 1.0f);
+
+	private final String[] mNames;
+	private final AtlasPacker.Region[] mRegions;
+	private final int mGutter;
+	private final int mSize;
+
+	/**
+	 * The texels of each mip level of the sheet, kept to restore a lost GL
+	 * context and to update only the texels below a replaced image.
+	 */
+	private final int[][] mLevels;
+
+	private int mHandle;
+
+	/**
+	 * Packs the images and composes the sheet. The images are not recycled.
+	 *
+	 * @param names
+	 *            Names of the images, normally the materials using them.
+	 * @param gutter
+	 *            Width of the gutter around each image, a power of two.
+	 * @param maxSize
+	 *            Largest allowed sheet size.
+	 */
+	public TextureAtlas(final String[] names, final Bitmap[] bitmaps,
+			final int gutter, final int maxSize) {
+		final int[] widths = new int[bitmaps.length];
+		final int[] heights = new int[bitmaps.length];
+		for (int i = 0; i < bitmaps.length; i++) {
+			widths[i] = bitmaps[i].getWidth();
+			heights[i] = bitmaps[i].getHeight();
+		}
+
+		final AtlasPacker packer = new AtlasPacker(gutter, maxSize);
+		mNames = names.clone();
+		mRegions = packer.pack(widths, heights);
+		mGutter = gutter;
+		mSize = packer.getSize();
+		mLevels = new int[PARAMETERS.usesMipmaps() ? Mipmaps.getLevelCount(
+				mSize, mSize) : 1][];
+		mLevels[0] = new int[mSize * mSize];
+
+		for (int i = 0; i < bitmaps.length; i++) {
+			compose(i, bitmaps[i]);
+		}
+		for (int level = 1; level < mLevels.length; level++) {
+			final int size = getLevelSize(level - 1);
+			mLevels[level] = Mipmaps.downsample(mLevels[level - 1], size, size);
+		}
+	}
+
+	/**
+	 * Copies an image into its region and fills the gutter around it with its
+	 * edge texels.
+	 */
+	private void compose(final int index, final Bitmap bitmap) {
+		final AtlasPacker.Region region = mRegions[index];
+		final int[] image = new int[region.width * region.height];
+		bitmap.getPixels(image, 0, region.width, 0, 0, region.width,
+				region.height);
+
+		final int left = getLeft(region);
+		final int top = getTop(region);
+		final int right = getRight(region);
+		final int bottom = getBottom(region);
+
+		for (int y = top; y < bottom; y++) {
+			final int sourceY = clamp(y - region.y, region.height);
+			for (int x = left; x < right; x++) {
+				final int sourceX = clamp(x - region.x, region.width);
+				mLevels[0][y * mSize + x] = image[sourceY * region.width
+						+ sourceX];
+			}
+		}
+	}
+
+	private static int clamp(final int value, final int size) {
+		return value < 0 ? 0 : (value >= size ? size - 1 : value);
+	}
+
+	/** Bounds of a region with its gutter, within the sheet. */
+	private int getLeft(final AtlasPacker.Region region) {
+		return Math.max(0, region.x - mGutter);
+	}
+
+	private int getTop(final AtlasPacker.Region region) {
+		return Math.max(0, region.y - mGutter);
+	}
+
+	private int getRight(final AtlasPacker.Region region) {
+		return Math.min(mSize, region.x + region.width + mGutter);
+	}
+
+	private int getBottom(final AtlasPacker.Region region) {
+		return Math.min(mSize, region.y + region.height + mGutter);
+	}
+
+	/**
+	 * @return Width and height of a mip level of the sheet.
+	 */
+	private int getLevelSize(final int level) {
+		return Math.max(1, mSize >> level);
+	}
+
+	/**
+	 * Uploads the sheet into a new texture with its mipmaps. Must be called
+	 * on the GL thread, again after the GL context was lost.
+	 */
+	public void upload() {
+		final int[] textureHandle = new int[1];
+		GLES20.glGenTextures(1, textureHandle, 0);
+		if (textureHandle[0] == 0) {
+			throw new RuntimeException("Error loading texture.");
+		}
+
+		mHandle = textureHandle[0];
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mHandle);
+		PARAMETERS.apply();
+		for (int level = 0; level < mLevels.length; level++) {
+			final int size = getLevelSize(level);
+			final Bitmap sheet = createSheet(level, 0, 0, size, size);
+			GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, level, sheet, 0);
+			sheet.recycle();
+		}
+	}
+
+	/**
+	 * @return A bitmap of the texels of a rectangle of a mip level.
+	 */
+	private Bitmap createSheet(final int level, final int left,
+			final int top, final int width, final int height) {
+		final int size = getLevelSize(level);
+		final Bitmap sheet = Bitmap.createBitmap(width, height,
+				Bitmap.Config.ARGB_8888);
+		sheet.setPixels(mLevels[level], top * size + left, size, 0, 0, width,
+				height);
+		return sheet;
+	}
+
+	/**
+	 * Replaces an image, scaling it to the size of its region. If the sheet
+	 * is uploaded, the texture is updated too, so this must then be called on
+	 * the GL thread. Only the region with its gutter, and the texels below it
+	 * in each mip level, are recomputed and uploaded, unless the texture was
+	 * lost with the GL context. The bitmap is not recycled.
+	 */
+	public void setImage(final String name, final Bitmap bitmap) {
+		final int index = indexOf(name);
+		final AtlasPacker.Region region = mRegions[index];
+
+		Bitmap scaled = bitmap;
+		if (bitmap.getWidth() != region.width
+				|| bitmap.getHeight() != region.height) {
+			scaled = Bitmap.createScaledBitmap(bitmap, region.width,
+					region.height, true);
+		}
+		compose(index, scaled);
+		if (scaled != bitmap) {
+			scaled.recycle();
+		}
+
+		final boolean uploaded = mHandle != 0 && GLES20.glIsTexture(mHandle);
+		if (uploaded) {
+			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mHandle);
+		}
+
+		// glGenerateMipmap would filter every level of the whole sheet again,
+		// so only the texels below the region are filtered here. Each one
+		// covers two texels of the level above, rounded outwards.
+		int left = getLeft(region);
+		int top = getTop(region);
+		int right = getRight(region);
+		int bottom = getBottom(region);
+		for (int level = 0; level < mLevels.length; level++) {
+			if (level > 0) {
+				final int size = getLevelSize(level - 1);
+				left /= 2;
+				top /= 2;
+				right = Math.min(getLevelSize(level), (right + 1) / 2);
+				bottom = Math.min(getLevelSize(level), (bottom + 1) / 2);
+				Mipmaps.downsample(mLevels[level - 1], size, size,
+						mLevels[level], left, top, right, bottom);
+			}
+
+			if (uploaded) {
+				final Bitmap sheet = createSheet(level, left, top, right
+						- left, bottom - top);
+				GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, level, left, top,
+						sheet);
+				sheet.recycle();
+			}
+		}
+
+		if (mHandle != 0 && !uploaded) {
+			upload();
+		}
+	}
+
+	/**
+	 * Rewrites texture coordinates between 0 and 1 of an image into the
+	 * coordinates of its region in the sheet.
+	 *
+	 * @param textureCoordinates
+	 *            S, T pairs.
+	 * @return New S, T pairs.
+	 */
+	public float[] remapTextureCoordinates(final String name,
+			final float[] textureCoordinates) {
+		final AtlasPacker.Region region = mRegions[indexOf(name)];
+		final float offsetS = (float) region.x / mSize;
+		final float offsetT = (float) region.y / mSize;
+		final float scaleS = (float) region.width / mSize;
+		final float scaleT = (float) region.height / mSize;
+
+		final float[] remapped = new float[textureCoordinates.length];
+		for (int i = 0; i < textureCoordinates.length; i += 2) {
+			final float s = textureCoordinates[i];
+			final float t = textureCoordinates[i + 1];
+			if (s < 0.0f || s > 1.0f || t < 0.0f || t > 1.0f) {
+				throw new RuntimeException("Texture coordinates of " + name
+						+ " repeat and cannot use the atlas.");
+			}
+			remapped[i] = offsetS + s * scaleS;
+			remapped[i + 1] = offsetT + t * scaleT;
+		}
+		return remapped;
+	}
+
+	/**
+	 * @return true if the atlas holds an image with the given name.
+	 */
+	public boolean contains(final String name) {
+		for (int i = 0; i < mNames.length; i++) {
+			if (mNames[i].equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int indexOf(final String name) {
+		for (int i = 0; i < mNames.length; i++) {
+			if (mNames[i].equals(name)) {
+				return i;
+			}
+		}
+		throw new RuntimeException("No image " + name + " in the atlas.");
+	}
+
+	/**
+	 * Forgets the texture without deleting it. Used after the GL context was
+	 * lost, which already deleted it.
+	 */
+	public void invalidate() {
+		mHandle = 0;
+	}
+
+	/**
+	 * @return The texture, 0 before it is uploaded.
+	 */
+	public int getHandle() {
+		return mHandle;
+	}
+
+	/**
+	 * @return Width and height of the sheet.
+	 */
+	public int getSize() {
+		return mSize;
+	}
+}
@@ -0,0 +1,258 @@
+package hr.foi.textures.helpers;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * Keeps recently used textures resident on the GPU. Textures are keyed by an
+ * integer, normally their resource ID: a drawable, or a raw KTX file with a
+ * precomputed compressed mip chain. When the estimated GPU memory of all
+ * cached textures exceeds the budget, the least recently used ones are
+ * deleted.
+ *
+ * Must only be used on the GL thread.
+ */
+public class TextureCache {
+
+	private static class Entry {
+		final int handle;
+		final long bytes;
+
+		Entry(int handle, long bytes) {
+			this.handle = handle;
+			this.bytes = bytes;
+		}
+	}
+
+	private final Context mContext;
+
+	/** Sampling parameters of all cached textures. */
+	private final TextureParameters mParameters;
+
+	/** Maximum estimated GPU memory of all cached textures, in bytes. */
+	private final long mBudget;
+
+	/** Cached textures, least recently used first. */
+	private final LinkedHashMap<Integer, Entry> mEntries = new LinkedHashMap<Integer, Entry>(
+			16, 0.75f, true);
+
+	private long mBytes;
+
+	private int mHits;
+	private int mMisses;
+	private int mEvictions;
+
+	/**
+	 * @param context
+	 *            Used to load drawable resources.
+	 * @param parameters
+	 *            Sampling parameters of all cached textures.
+	 * @param budget
+	 *            Maximum estimated GPU memory of all cached textures, in
+	 *            bytes.
+	 */
+	public TextureCache(final Context context,
+			final TextureParameters parameters, final long budget) {
+		mContext = context;
+		mParameters = parameters;
+		mBudget = budget;
+	}
+
+	/**
+	 * Returns the texture of a drawable or raw KTX resource, loading it if it
+	 * is not resident.
+	 */
+	public int get(final int resourceId) {
+		final Entry entry = mEntries.get(resourceId);
+		if (entry != null) {
+			mHits++;
+			return entry.handle;
+		}
+
+		mMisses++;
+
+		if (isCompressed(mContext, resourceId)) {
+			return put(resourceId, readCompressed(mContext, resourceId));
+		}
+
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inScaled = false; // No pre-scaling
+
+		// Read in the resource
+		final Bitmap bitmap = BitmapFactory.decodeResource(
+				mContext.getResources(), resourceId, options);
+
+		final int handle = put(resourceId, bitmap);
+
+		// Recycle the bitmap, since its data has been loaded into OpenGL.
+		bitmap.recycle();
+
+		return handle;
+	}
+
+	/**
+	 * @return true if the resource is a raw KTX file rather than a drawable.
+	 */
+	public static boolean isCompressed(final Context context,
+			final int resourceId) {
+		return "raw".equals(context.getResources().getResourceTypeName(
+				resourceId));
+	}
+
+	/**
+	 * Reads a raw KTX resource, memory-mapped if it is stored uncompressed.
+	 * May be called on any thread.
+	 */
+	public static KtxTexture readCompressed(final Context context,
+			final int resourceId) {
+		try {
+			return KtxTexture.read(RawResourceReader.readRawResource(context,
+					resourceId));
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading compressed texture.", e);
+		}
+	}
+
+	/**
+	 * @return true if the texture for the key is resident.
+	 */
+	public boolean contains(final int key) {
+		return mEntries.containsKey(key);
+	}
+
+	/**
+	 * Uploads a bitmap and caches it under the given key, replacing and
+	 * deleting any texture already cached under it. Mipmaps are generated if
+	 * the sampling parameters need them. The bitmap is not recycled.
+	 *
+	 * @return The texture handle.
+	 */
+	public int put(final int key, final Bitmap bitmap) {
+		final int handle = TextureHelper.loadTexture(bitmap, mParameters);
+
+		put(key, handle, estimateBytes(bitmap.getWidth(), bitmap.getHeight()));
+		return handle;
+	}
+
+	/**
+	 * Uploads a compressed texture with its mip chain and caches it under the
+	 * given key, replacing and deleting any texture already cached under it.
+	 *
+	 * @return The texture handle.
+	 */
+	public int put(final int key, final KtxTexture texture) {
+		final int handle = TextureHelper.loadTexture(texture, mParameters);
+
+		put(key, handle, texture.getByteCount());
+		return handle;
+	}
+
+	/**
+	 * Caches an already uploaded texture under the given key, replacing and
+	 * deleting any texture already cached under it. The cache takes ownership
+	 * of the texture.
+	 */
+	public void put(final int key, final int handle, final long bytes) {
+		final Entry previous = mEntries.put(key, new Entry(handle, bytes));
+		if (previous != null) {
+			mBytes -= previous.bytes;
+			if (previous.handle != handle) {
+				TextureHelper.deleteTexture(previous.handle);
+			}
+		}
+
+		mBytes += bytes;
+		trim(key);
+	}
+
+	/**
+	 * Deletes least recently used textures until the cache is within budget.
+	 * The texture under the given key is never deleted.
+	 */
+	private void trim(final int keep) {
+		final Iterator<Map.Entry<Integer, Entry>> iterator = mEntries
+				.entrySet().iterator();
+
+		while (mBytes > mBudget && iterator.hasNext()) {
+			final Map.Entry<Integer, Entry> eldest = iterator.next();
+			if (eldest.getKey() == keep) {
+				continue;
+			}
+
+			TextureHelper.deleteTexture(eldest.getValue().handle);
+			mBytes -= eldest.getValue().bytes;
+			mEvictions++;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Deletes all cached textures.
+	 */
+	public void clear() {
+		for (Entry entry : mEntries.values()) {
+			TextureHelper.deleteTexture(entry.handle);
+		}
+		mEntries.clear();
+		mBytes = 0;
+	}
+
+	/**
+	 * Forgets all cached textures without deleting them. Used after the GL
+	 * context was lost, which already deleted them.
+	 */
+	public void invalidate() {
+		mEntries.clear();
+		mBytes = 0;
+	}
+
+	/**
+	 * Estimates the GPU memory of an RGBA texture with a full mip chain, which
+	 * adds about a third to the base level.
+	 */
+	public static long estimateBytes(final int width, final int height) {
+		long bytes = 0;
+		int levelWidth = width;
+		int levelHeight = height;
+
+		while (true) {
+			bytes += (long) levelWidth * levelHeight * 4;
+			if (levelWidth == 1 && levelHeight == 1) {
+				break;
+			}
+			levelWidth = Math.max(1, levelWidth / 2);
+			levelHeight = Math.max(1, levelHeight / 2);
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * @return Estimated GPU memory of all cached textures, in bytes.
+	 */
+	public long getBytes() {
+		return mBytes;
+	}
+
+	public long getBudget() {
+		return mBudget;
+	}
+
+	public int getHitCount() {
+		return mHits;
+	}
+
+	public int getMissCount() {
+		return mMisses;
+	}
+
+	public int getEvictionCount() {
+		return mEvictions;
+	}
+}
@@ -1,39 +1,38 @@
 package hr.foi.textures.helpers;
 
-import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
 import android.opengl.GLUtils;
 
 public class TextureHelper {
-	public static int loadTexture(final Context context, final int resourceId) {
+	public static int loadTexture(Bitmap bitmap) {
+		return loadTexture(bitmap, TextureParameters.NEAREST);
+	}
+
+	/**
+	 * Uploads a bitmap into a new texture with the given sampling parameters.
+	 * If they sample mip levels, the mipmaps are generated from the bitmap.
+	 * The bitmap is not recycled.
+	 */
+	public static int loadTexture(final Bitmap bitmap,
+			final TextureParameters parameters) {
 		final int[] textureHandle = new int[1];
 
 		GLES20.glGenTextures(1, textureHandle, 0);
 
 		if (textureHandle[0] != 0) {
-			final BitmapFactory.Options options = new BitmapFactory.Options();
-			options.inScaled = false; // No pre-scaling
-
-			// Read in the resource
-			final Bitmap bitmap = BitmapFactory.decodeResource(
-					context.getResources(), resourceId, options);
-
 			// Bind to the texture in OpenGL
 			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
 
 			// Set filtering
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
-					GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
-					GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+			parameters.apply();
 
 			// Load the bitmap into the bound texture.
 			GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
 
-			// Recycle the bitmap, since its data has been loaded into OpenGL.
-			bitmap.recycle();
+			if (parameters.usesMipmaps()) {
+				GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+			}
 		}
 
 		if (textureHandle[0] == 0) {
@@ -43,7 +42,22 @@ public class TextureHelper {
 		return textureHandle[0];
 	}
 
-	public static int loadTexture(Bitmap bitmap) {
+	/**
+	 * Deletes a texture, ignoring the 0 handle.
+	 */
+	public static void deleteTexture(final int textureHandle) {
+		if (textureHandle != 0) {
+			GLES20.glDeleteTextures(1, new int[] { textureHandle }, 0);
+		}
+	}
+
+	/**
+	 * Uploads a compressed texture with all of its mip levels, which were
+	 * generated offline. Compressed textures cannot be mipmapped at run time,
+	 * so one without a full mip chain is not sampled from mip levels.
+	 */
+	public static int loadTexture(final KtxTexture texture,
+			final TextureParameters parameters) {
 		final int[] textureHandle = new int[1];
 
 		GLES20.glGenTextures(1, textureHandle, 0);
@@ -53,16 +67,16 @@ public class TextureHelper {
 			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
 
 			// Set filtering
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
-					GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
-					GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
-
-			// Load the bitmap into the bound texture.
-			GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-
-			// Recycle the bitmap, since its data has been loaded into OpenGL.
-			// bitmap.recycle();
+			parameters.apply();
+			if (parameters.usesMipmaps()
+					&& texture.getLevelCount() < Mipmaps.getLevelCount(
+							texture.getWidth(), texture.getHeight())) {
+				GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+						GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+			}
+
+			// Load the precomputed mip chain into the bound texture.
+			texture.upload();
 		}
 
 		if (textureHandle[0] == 0) {
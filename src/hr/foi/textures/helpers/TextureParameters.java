@@ -0,0 +1,119 @@
+package hr.foi.textures.helpers;
+
+import android.opengl.GLES20;
+
+/**
+ * Sampling parameters of a texture: filters, wrap modes and anisotropy.
+ * Applied to a texture when it is loaded.
+ */
+public class TextureParameters {
+
+	/** From EXT_texture_filter_anisotropic, not in GLES20. */
+	public static final int GL_TEXTURE_MAX_ANISOTROPY_EXT = 0x84FE;
+	public static final int GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT = 0x84FF;
+
+	private static final String EXTENSION_ANISOTROPIC = "GL_EXT_texture_filter_anisotropic";
+
+	/** Unfiltered, without mipmaps. The default of the original textures. */
+	public static final TextureParameters NEAREST = new TextureParameters(
+			GLES20.GL_NEAREST, GLES20.GL_NEAREST, GLES20.GL_REPEAT,
+			GLES20.GL_REPEAT, 1.0f);
+
+	/** Trilinear filtering. The texture must have a full mip chain. */
+	public static final TextureParameters TRILINEAR = new TextureParameters(
+			GLES20.GL_LINEAR_MIPMAP_LINEAR, GLES20.GL_LINEAR,
+			GLES20.GL_REPEAT, GLES20.GL_REPEAT, 1.0f);
+
+	/**
+	 * Trilinear and anisotropic filtering for textures seen at grazing
+	 * angles, like the tiled floor. Anisotropy is skipped where the
+	 * extension is missing.
+	 */
+	public static final TextureParameters TRILINEAR_ANISOTROPIC = new TextureParameters(
+			GLES20.GL_LINEAR_MIPMAP_LINEAR, GLES20.GL_LINEAR,
+			GLES20.GL_REPEAT, GLES20.GL_REPEAT, 4.0f);
+
+	private final int mMinFilter;
+	private final int mMagFilter;
+	private final int mWrapS;
+	private final int mWrapT;
+
+	/** Requested anisotropy, 1 for none. Clamped to what the GPU supports. */
+	private final float mAnisotropy;
+
+	public TextureParameters(final int minFilter, final int magFilter,
+			final int wrapS, final int wrapT, final float anisotropy) {
+		mMinFilter = minFilter;
+		mMagFilter = magFilter;
+		mWrapS = wrapS;
+		mWrapT = wrapT;
+		mAnisotropy = anisotropy;
+	}
+
+	/**
+	 * Sets the parameters on the currently bound 2D texture. Must be called
+	 * on the GL thread.
+	 */
+	public void apply() {
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_MIN_FILTER, mMinFilter);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_MAG_FILTER, mMagFilter);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S,
+				mWrapS);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T,
+				mWrapT);
+
+		if (mAnisotropy > 1.0f) {
+			final float maxAnisotropy = getMaxAnisotropy();
+			if (maxAnisotropy > 1.0f) {
+				GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+						GL_TEXTURE_MAX_ANISOTROPY_EXT,
+						Math.min(mAnisotropy, maxAnisotropy));
+			}
+		}
+	}
+
+	/**
+	 * @return true if the minification filter samples mip levels.
+	 */
+	public boolean usesMipmaps() {
+		return mMinFilter != GLES20.GL_NEAREST
+				&& mMinFilter != GLES20.GL_LINEAR;
+	}
+
+	/**
+	 * @return The largest anisotropy of the current context, 1 if anisotropic
+	 *         filtering is not supported.
+	 */
+	public static float getMaxAnisotropy() {
+		final String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+		if (extensions == null || !extensions.contains(EXTENSION_ANISOTROPIC)) {
+			return 1.0f;
+		}
+
+		final float[] maxAnisotropy = new float[1];
+		GLES20.glGetFloatv(GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT, maxAnisotropy, 0);
+		return Math.max(1.0f, maxAnisotropy[0]);
+	}
+
+	public int getMinFilter() {
+		return mMinFilter;
+	}
+
+	public int getMagFilter() {
+		return mMagFilter;
+	}
+
+	public int getWrapS() {
+		return mWrapS;
+	}
+
+	public int getWrapT() {
+		return mWrapT;
+	}
+
+	public float getAnisotropy() {
+		return mAnisotropy;
+	}
+}
@@ -0,0 +1,207 @@
+package hr.foi.textures.helpers;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * Decodes drawable resources, or reads raw KTX resources, in parallel on
+ * worker threads and uploads them into a {@link TextureCache} a few at a time
+ * on the GL thread, so that switching to one of them later is just a bind.
+ */
+public class TexturePrefetcher {
+
+	private static class Decoded {
+		final int resourceId;
+		final Bitmap bitmap;
+		final KtxTexture texture;
+
+		Decoded(int resourceId, Bitmap bitmap, KtxTexture texture) {
+			this.resourceId = resourceId;
+			this.bitmap = bitmap;
+			this.texture = texture;
+		}
+
+		void recycle() {
+			if (bitmap != null) {
+				bitmap.recycle();
+			}
+		}
+	}
+
+	private final Context mContext;
+	private final TextureCache mCache;
+	private final int[] mResourceIds;
+
+	/** Maximum number of textures uploaded in one frame. */
+	private final int mMaxUploadsPerFrame;
+
+	/**
+	 * Time into a frame after which no further texture is uploaded in it.
+	 */
+	private final long mFrameBudgetNanos;
+
+	/** Textures decoded by the workers, waiting for upload. */
+	private final ConcurrentLinkedQueue<Decoded> mDecoded = new ConcurrentLinkedQueue<Decoded>();
+
+	private ExecutorService mExecutor;
+
+	/** Run on a worker thread after each decoded texture, may be null. */
+	private volatile Runnable mOnDecoded;
+
+	/**
+	 * @param cache
+	 *            The cache the textures are uploaded into.
+	 * @param resourceIds
+	 *            Drawable or raw KTX resources to prefetch.
+	 * @param maxUploadsPerFrame
+	 *            Maximum number of textures uploaded in one frame.
+	 * @param frameBudgetNanos
+	 *            Time into a frame after which no further texture is uploaded
+	 *            in it.
+	 */
+	public TexturePrefetcher(final Context context, final TextureCache cache,
+			final int[] resourceIds, final int maxUploadsPerFrame,
+			final long frameBudgetNanos) {
+		mContext = context;
+		mCache = cache;
+		mResourceIds = resourceIds;
+		mMaxUploadsPerFrame = maxUploadsPerFrame;
+		mFrameBudgetNanos = frameBudgetNanos;
+	}
+
+	/**
+	 * Sets what to run on a worker thread whenever a texture was decoded and
+	 * waits for upload, for example requesting a frame to upload it in.
+	 */
+	public void setOnDecoded(final Runnable onDecoded) {
+		mOnDecoded = onDecoded;
+	}
+
+	/**
+	 * Starts decoding all resources which are not resident yet. Must be called
+	 * on the GL thread, again after the GL context was lost.
+	 */
+	public synchronized void start() {
+		stop();
+
+		final int threads = Math.max(1, Math.min(mResourceIds.length, Runtime
+				.getRuntime().availableProcessors()));
+		mExecutor = Executors.newFixedThreadPool(threads);
+
+		for (int i = 0; i < mResourceIds.length; i++) {
+			final int resourceId = mResourceIds[i];
+			if (mCache.contains(resourceId)) {
+				continue;
+			}
+
+			mExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (TextureCache.isCompressed(mContext, resourceId)) {
+						mDecoded.add(new Decoded(resourceId, null, TextureCache
+								.readCompressed(mContext, resourceId)));
+						notifyDecoded();
+						return;
+					}
+
+					final BitmapFactory.Options options = new BitmapFactory.Options();
+					options.inScaled = false; // No pre-scaling
+
+					final Bitmap bitmap = BitmapFactory.decodeResource(
+							mContext.getResources(), resourceId, options);
+					if (bitmap != null) {
+						mDecoded.add(new Decoded(resourceId, bitmap, null));
+						notifyDecoded();
+					}
+				}
+			});
+		}
+
+		mExecutor.shutdown();
+	}
+
+	private void notifyDecoded() {
+		final Runnable onDecoded = mOnDecoded;
+		if (onDecoded != null) {
+			onDecoded.run();
+		}
+	}
+
+	/**
+	 * Stops decoding and drops all decoded bitmaps which were not uploaded.
+	 */
+	public synchronized void stop() {
+		if (mExecutor != null) {
+			mExecutor.shutdownNow();
+			mExecutor = null;
+		}
+
+		Decoded decoded;
+		while ((decoded = mDecoded.poll()) != null) {
+			decoded.recycle();
+		}
+	}
+
+	/**
+	 * Uploads decoded textures, at most the configured number, while the
+	 * frame is within the configured time. Called on the GL thread once per
+	 * frame.
+	 *
+	 * @param frameStartNanos
+	 *            When the frame began, by {@link System#nanoTime()}.
+	 */
+	public void uploadPending(final long frameStartNanos) {
+		for (int i = 0; i < mMaxUploadsPerFrame; i++) {
+			if (System.nanoTime() - frameStartNanos > mFrameBudgetNanos) {
+				break;
+			}
+
+			final Decoded decoded = mDecoded.poll();
+			if (decoded == null) {
+				break;
+			}
+
+			upload(decoded);
+		}
+	}
+
+	/**
+	 * @return True if decoded textures are still waiting for upload.
+	 */
+	public boolean hasPending() {
+		return !mDecoded.isEmpty();
+	}
+
+	/**
+	 * Uploads the given resource right away if it has already been decoded.
+	 * Called on the GL thread when the texture is needed now.
+	 */
+	public void upload(final int resourceId) {
+		final Iterator<Decoded> iterator = mDecoded.iterator();
+		while (iterator.hasNext()) {
+			final Decoded decoded = iterator.next();
+			if (decoded.resourceId == resourceId) {
+				iterator.remove();
+				upload(decoded);
+				return;
+			}
+		}
+	}
+
+	private void upload(final Decoded decoded) {
+		if (!mCache.contains(decoded.resourceId)) {
+			if (decoded.texture != null) {
+				mCache.put(decoded.resourceId, decoded.texture);
+			} else {
+				mCache.put(decoded.resourceId, decoded.bitmap);
+			}
+		}
+		decoded.recycle();
+	}
+}
@@ -0,0 +1,61 @@
+package hr.foi.textures.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accumulates two-dimensional movement from one thread and hands it over to
+ * another without locks or allocation. Both components are packed into a
+ * single atomic long, so a producer add and a consumer drain can never lose or
+ * tear an update.
+ */
+public class TouchAccumulator {
+
+	/** Both components as float bits, X in the high and Y in the low half. */
+	private final AtomicLong mPacked = new AtomicLong(pack(0.0f, 0.0f));
+
+	/**
+	 * Adds a movement. Safe to call concurrently with {@link #drain()}.
+	 */
+	public void add(final float deltaX, final float deltaY) {
+		if (deltaX == 0.0f && deltaY == 0.0f) {
+			return;
+		}
+
+		long current;
+		long next;
+		do {
+			current = mPacked.get();
+			next = pack(x(current) + deltaX, y(current) + deltaY);
+		} while (!mPacked.compareAndSet(current, next));
+	}
+
+	/**
+	 * Takes all movement added since the last drain and resets the
+	 * accumulator.
+	 *
+	 * @return Both components packed, read them with {@link #x(long)} and
+	 *         {@link #y(long)}.
+	 */
+	public long drain() {
+		return mPacked.getAndSet(pack(0.0f, 0.0f));
+	}
+
+	/**
+	 * @return The X component of a drained value.
+	 */
+	public static float x(final long packed) {
+		return Float.intBitsToFloat((int) (packed >>> 32));
+	}
+
+	/**
+	 * @return The Y component of a drained value.
+	 */
+	public static float y(final long packed) {
+		return Float.intBitsToFloat((int) packed);
+	}
+
+	private static long pack(final float x, final float y) {
+		return ((long) Float.floatToRawIntBits(x) << 32)
+				| (Float.floatToRawIntBits(y) & 0xFFFFFFFFL);
+	}
+}
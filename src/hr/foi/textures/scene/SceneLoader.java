@@ -0,0 +1,167 @@
+package hr.foi.textures.scene;
+
+import hr.foi.textures.helpers.RawResourceReader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.Context;
+
+/**
+ * Loads a scene from a text layout. Every line holds one statement, empty
+ * lines and lines starting with '#' are ignored.
+ *
+ * <pre>
+ * node &lt;name&gt; &lt;parent&gt; &lt;mesh&gt; &lt;material&gt; &lt;x&gt; &lt;y&gt; &lt;z&gt; [&lt;sx&gt; &lt;sy&gt; &lt;sz&gt;]
+ * </pre>
+ *
+ * Adds a node translated, and optionally scaled, relative to its parent. Use
+ * '-' for no parent, mesh or material.
+ *
+ * <pre>
+ * blocks &lt;parent&gt; &lt;mesh&gt; &lt;material&gt; &lt;spacing&gt;
+ * X.X
+ * XXX
+ * end
+ * </pre>
+ *
+ * Adds a picture of blocks, top row first. Every 'X' becomes a child node of
+ * the parent, any other character leaves a gap. The bottom left block sits at
+ * the origin of the parent.
+ */
+public class SceneLoader {
+
+	private static final String NONE = "-";
+
+	/**
+	 * Loads a scene from a raw resource.
+	 *
+	 * @return The root node of the scene.
+	 */
+	public static SceneNode load(final Context context, final int resourceId) {
+		return parse(RawResourceReader.readTextFileFromRawResource(context,
+				resourceId));
+	}
+
+	/**
+	 * Parses a scene layout.
+	 *
+	 * @return The root node of the scene.
+	 */
+	public static SceneNode parse(final String layout) {
+		final SceneNode root = new SceneNode(null, null, null);
+		final Map<String, SceneNode> nodes = new HashMap<String, SceneNode>();
+
+		final String[] lines = layout.split("\n");
+		for (int i = 0; i < lines.length; i++) {
+			final String line = lines[i].trim();
+			if (line.length() == 0 || line.startsWith("#")) {
+				continue;
+			}
+
+			final String[] tokens = line.split("\\s+");
+			if (tokens[0].equals("node")) {
+				parseNode(tokens, i, root, nodes);
+			} else if (tokens[0].equals("blocks")) {
+				i = parseBlocks(tokens, lines, i, root, nodes);
+			} else {
+				throw error(i, "Unknown statement " + tokens[0] + ".");
+			}
+		}
+
+		return root;
+	}
+
+	private static void parseNode(final String[] tokens, final int line,
+			final SceneNode root, final Map<String, SceneNode> nodes) {
+		if (tokens.length != 8 && tokens.length != 11) {
+			throw error(line, "Expected 7 or 10 arguments for node.");
+		}
+
+		final SceneNode node = new SceneNode(tokens[1], optional(tokens[3]),
+				optional(tokens[4]));
+
+		final float x = number(tokens[5], line);
+		final float y = number(tokens[6], line);
+		final float z = number(tokens[7], line);
+		if (tokens.length == 11) {
+			node.setTransform(x, y, z, number(tokens[8], line),
+					number(tokens[9], line), number(tokens[10], line));
+		} else {
+			node.setTransform(x, y, z, 1.0f, 1.0f, 1.0f);
+		}
+
+		if (nodes.put(tokens[1], node) != null) {
+			throw error(line, "Duplicate node " + tokens[1] + ".");
+		}
+		parent(tokens[2], line, root, nodes).addChild(node);
+	}
+
+	private static int parseBlocks(final String[] tokens, final String[] lines,
+			final int line, final SceneNode root,
+			final Map<String, SceneNode> nodes) {
+		if (tokens.length != 5) {
+			throw error(line, "Expected 4 arguments for blocks.");
+		}
+
+		final SceneNode parent = parent(tokens[1], line, root, nodes);
+		final String mesh = optional(tokens[2]);
+		final String material = optional(tokens[3]);
+		final float spacing = number(tokens[4], line);
+
+		// Find the end of the picture first, rows are counted from the bottom.
+		int end = line + 1;
+		while (end < lines.length && !lines[end].trim().equals("end")) {
+			end++;
+		}
+		if (end == lines.length) {
+			throw error(line, "Missing end of blocks.");
+		}
+
+		for (int row = line + 1; row < end; row++) {
+			final String picture = lines[row].trim();
+			final float y = (end - 1 - row) * spacing;
+
+			for (int column = 0; column < picture.length(); column++) {
+				if (picture.charAt(column) == 'X') {
+					final SceneNode block = new SceneNode(null, mesh, material);
+					block.setTransform(column * spacing, y, 0.0f, 1.0f, 1.0f,
+							1.0f);
+					parent.addChild(block);
+				}
+			}
+		}
+
+		return end;
+	}
+
+	private static SceneNode parent(final String name, final int line,
+			final SceneNode root, final Map<String, SceneNode> nodes) {
+		if (name.equals(NONE)) {
+			return root;
+		}
+
+		final SceneNode parent = nodes.get(name);
+		if (parent == null) {
+			throw error(line, "Unknown parent " + name + ".");
+		}
+		return parent;
+	}
+
+	private static String optional(final String token) {
+		return token.equals(NONE) ? null : token;
+	}
+
+	private static float number(final String token, final int line) {
+		try {
+			return Float.parseFloat(token);
+		} catch (NumberFormatException e) {
+			throw error(line, "Invalid number " + token + ".");
+		}
+	}
+
+	private static RuntimeException error(final int line, final String message) {
+		return new RuntimeException("Error in scene layout at line "
+				+ (line + 1) + ": " + message);
+	}
+}
@@ -0,0 +1,210 @@
+package hr.foi.textures.scene;
+
+import hr.foi.textures.helpers.Matrices;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A node of the scene graph. A node has a transform relative to its parent and
+ * optionally a mesh and a material, referenced by name.
+ *
+ * The world matrix is cached. It is only recomputed when the node's own
+ * transform or the transform of one of its ancestors has changed, so unchanged
+ * parts of the scene cost no matrix math.
+ *
+ * Transforms must be affine, without projection.
+ */
+public class SceneNode {
+
+	/**
+	 * Receives nodes whose world matrix has been recomputed.
+	 */
+	public interface Visitor {
+		void onWorldMatrixChanged(SceneNode node);
+	}
+
+	private final String mName;
+	private final String mMesh;
+	private final String mMaterial;
+
+	private SceneNode mParent;
+	private final List<SceneNode> mChildren = new ArrayList<SceneNode>();
+
+	/** Transform relative to the parent. */
+	private final float[] mLocalMatrix = new float[16];
+
+	/** Cached transform relative to the scene root. */
+	private final float[] mWorldMatrix = new float[16];
+
+	/** True if the world matrix of this node must be recomputed. */
+	private boolean mWorldDirty = true;
+
+	/** True if the world matrix changed since the last update(). */
+	private boolean mWorldChanged = true;
+
+	/** True if this node or one of its descendants is dirty. */
+	private boolean mSubtreeDirty = true;
+
+	/** Index of the node inside the batch it is drawn with, or -1. */
+	private int mBatchIndex = -1;
+
+	/**
+	 * @param name
+	 *            Name of the node, may be null.
+	 * @param mesh
+	 *            Name of the mesh drawn at this node, or null.
+	 * @param material
+	 *            Name of the material the mesh is drawn with, or null.
+	 */
+	public SceneNode(final String name, final String mesh,
+			final String material) {
+		mName = name;
+		mMesh = mesh;
+		mMaterial = material;
+
+		Matrices.setIdentity(mLocalMatrix, 0);
+		Matrices.setIdentity(mWorldMatrix, 0);
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	public String getMesh() {
+		return mMesh;
+	}
+
+	public String getMaterial() {
+		return mMaterial;
+	}
+
+	public SceneNode getParent() {
+		return mParent;
+	}
+
+	public List<SceneNode> getChildren() {
+		return mChildren;
+	}
+
+	public int getBatchIndex() {
+		return mBatchIndex;
+	}
+
+	public void setBatchIndex(final int batchIndex) {
+		mBatchIndex = batchIndex;
+	}
+
+	/**
+	 * Attaches a child node. The child must not have a parent yet.
+	 */
+	public void addChild(final SceneNode child) {
+		if (child.mParent != null) {
+			throw new IllegalStateException("Node " + child.mName
+					+ " already has a parent.");
+		}
+
+		child.mParent = this;
+		mChildren.add(child);
+		child.markWorldDirty();
+	}
+
+	/**
+	 * Sets the transform relative to the parent to a translation followed by a
+	 * scale.
+	 */
+	public void setTransform(final float x, final float y, final float z,
+			final float scaleX, final float scaleY, final float scaleZ) {
+		Matrices.setTranslateScale(mLocalMatrix, 0, x, y, z, scaleX, scaleY,
+				scaleZ);
+		markWorldDirty();
+	}
+
+	/**
+	 * Sets the transform relative to the parent, which must be affine.
+	 */
+	public void setLocalMatrix(final float[] matrix, final int offset) {
+		System.arraycopy(matrix, offset, mLocalMatrix, 0, 16);
+		markWorldDirty();
+	}
+
+	/**
+	 * @return The transform relative to the parent. Must not be modified.
+	 */
+	public float[] getLocalMatrix() {
+		return mLocalMatrix;
+	}
+
+	/**
+	 * @return The transform relative to the scene root, recomputed only if
+	 *         needed. Must not be modified.
+	 */
+	public float[] getWorldMatrix() {
+		if (mWorldDirty) {
+			if (mParent != null) {
+				Matrices.multiplyAffine(mWorldMatrix, 0,
+						mParent.getWorldMatrix(), 0, mLocalMatrix, 0);
+			} else {
+				System.arraycopy(mLocalMatrix, 0, mWorldMatrix, 0, 16);
+			}
+			mWorldDirty = false;
+		}
+		return mWorldMatrix;
+	}
+
+	/**
+	 * Recomputes the world matrices of all dirty nodes in this subtree. Clean
+	 * subtrees are skipped without being visited.
+	 *
+	 * @param visitor
+	 *            Receives every node whose world matrix was recomputed, may
+	 *            be null.
+	 */
+	public void update(final Visitor visitor) {
+		if (!mSubtreeDirty) {
+			return;
+		}
+
+		if (mWorldChanged) {
+			getWorldMatrix();
+			if (visitor != null) {
+				visitor.onWorldMatrixChanged(this);
+			}
+			mWorldChanged = false;
+		}
+
+		for (int i = 0; i < mChildren.size(); i++) {
+			mChildren.get(i).update(visitor);
+		}
+
+		mSubtreeDirty = false;
+	}
+
+	/**
+	 * Visits every node of this subtree, dirty or not.
+	 */
+	public void visit(final Visitor visitor) {
+		visitor.onWorldMatrixChanged(this);
+		for (int i = 0; i < mChildren.size(); i++) {
+			mChildren.get(i).visit(visitor);
+		}
+	}
+
+	private void markWorldDirty() {
+		mWorldChanged = true;
+		if (!mWorldDirty) {
+			mWorldDirty = true;
+			for (int i = 0; i < mChildren.size(); i++) {
+				mChildren.get(i).markWorldDirty();
+			}
+		}
+
+		// Make sure update() reaches this node from the root.
+		mSubtreeDirty = true;
+		SceneNode node = mParent;
+		while (node != null && !node.mSubtreeDirty) {
+			node.mSubtreeDirty = true;
+			node = node.mParent;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package hr.foi.textures.helpers;
+
+import hr.foi.textures.tests.Check;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Checks that {@link FrameStats} counts a late frame as jank, but not the
+ * idle time before a frame drawn on demand. Frames are recorded at given
+ * times, so the results do not depend on the speed of the machine.
+ */
+public class FrameStatsTest {
+
+	/** At 60 Hz, intervals above 25 ms are jank. */
+	private static final float REFRESH_RATE = 60.0f;
+
+	private static final long MILLIS = 1000000L;
+
+	/** Time each frame spends drawing. */
+	private static final long DRAW = 5 * MILLIS;
+
+	public static void main(final String[] args) throws IOException {
+		final FrameStats stats = new FrameStats(16, REFRESH_RATE);
+
+		// The first frame after a reset has no interval.
+		drawFrame(stats, 0, true);
+		drawFrame(stats, 16 * MILLIS, true);
+		drawFrame(stats, 32 * MILLIS, false);
+
+		// Idle for a second, then drawn on demand.
+		drawFrame(stats, 1032 * MILLIS, true);
+		drawFrame(stats, 1048 * MILLIS, true);
+
+		Check.equal(5, stats.getFrameCount(), "frames");
+		Check.equal(0, stats.getJankCount(), "jank after idle time");
+		Check.equal(16 * MILLIS, stats.getPercentile(FrameStats.INTERVAL, 0),
+				"shortest interval after idle time");
+		Check.equal(16 * MILLIS,
+				stats.getPercentile(FrameStats.INTERVAL, 100),
+				"longest interval after idle time");
+		Check.equal(DRAW, stats.getPercentile(FrameStats.STAGE_DRAW, 100),
+				"draw time");
+		Check.equal(DRAW, stats.getPercentile(FrameStats.TOTAL, 100),
+				"frame time");
+
+		// Late while animating.
+		drawFrame(stats, 1088 * MILLIS, false);
+		Check.equal(1, stats.getJankCount(), "jank of a late frame");
+		Check.equal(40 * MILLIS,
+				stats.getPercentile(FrameStats.INTERVAL, 100),
+				"longest interval of a late frame");
+
+		final StringWriter csv = new StringWriter();
+		stats.writeCsv(csv);
+		final String[] lines = csv.toString().split("\n");
+		Check.equal(7, lines.length, "CSV lines");
+		Check.isTrue(lines[1].endsWith(","), "first interval left empty");
+		Check.isTrue(lines[4].endsWith(","), "idle interval left empty");
+		Check.isTrue(!lines[5].endsWith(","), "following interval written");
+
+		stats.reset();
+		Check.equal(0, stats.getFrameCount(), "frames after reset");
+		Check.equal(0, stats.getPercentile(FrameStats.INTERVAL, 50),
+				"interval without frames");
+		drawFrame(stats, 2000 * MILLIS, true);
+		Check.equal(0, stats.getPercentile(FrameStats.INTERVAL, 50),
+				"interval of the first frame");
+		System.out.println("FrameStatsTest: OK");
+	}
+
+	private static void drawFrame(final FrameStats stats, final long start,
+			final boolean continued) {
+		stats.beginFrame(start);
+		stats.mark(FrameStats.STAGE_DRAW, start + DRAW);
+		stats.endFrame(start + DRAW, continued);
+	}
+}
@@ -0,0 +1,321 @@
+package hr.foi.textures.helpers;
+
+import hr.foi.textures.tests.Check;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.opengl.GLES20;
+
+/**
+ * Checks that {@link GlState} drops calls which would not change the state,
+ * forwards those which do, and copes with attribute handles it cannot track.
+ */
+public class GlStateTest {
+
+	/**
+	 * Records the calls forwarded to it, by name and arguments.
+	 */
+	private static class RecordingGl implements Gl {
+
+		final List<String> mCalls = new ArrayList<String>();
+
+		private void record(final String call) {
+			mCalls.add(call);
+		}
+
+		/** @return The calls recorded since the last take, and forgets them. */
+		List<String> take() {
+			final List<String> calls = new ArrayList<String>(mCalls);
+			mCalls.clear();
+			return calls;
+		}
+
+		@Override
+		public void glUseProgram(final int program) {
+			record("glUseProgram " + program);
+		}
+
+		@Override
+		public void glActiveTexture(final int texture) {
+			record("glActiveTexture " + texture);
+		}
+
+		@Override
+		public void glBindTexture(final int target, final int texture) {
+			record("glBindTexture " + target + " " + texture);
+		}
+
+		@Override
+		public void glBindBuffer(final int target, final int buffer) {
+			record("glBindBuffer " + target + " " + buffer);
+		}
+
+		@Override
+		public void glBufferSubData(final int target, final int offset,
+				final int size, final Buffer data) {
+			record("glBufferSubData " + target + " " + offset + " " + size);
+		}
+
+		@Override
+		public void glEnable(final int capability) {
+			record("glEnable " + capability);
+		}
+
+		@Override
+		public void glDisable(final int capability) {
+			record("glDisable " + capability);
+		}
+
+		@Override
+		public void glBlendFunc(final int sourceFactor,
+				final int destinationFactor) {
+			record("glBlendFunc " + sourceFactor + " " + destinationFactor);
+		}
+
+		@Override
+		public void glDepthMask(final boolean flag) {
+			record("glDepthMask " + flag);
+		}
+
+		@Override
+		public void glCullFace(final int mode) {
+			record("glCullFace " + mode);
+		}
+
+		@Override
+		public void glEnableVertexAttribArray(final int index) {
+			record("glEnableVertexAttribArray " + index);
+		}
+
+		@Override
+		public void glDisableVertexAttribArray(final int index) {
+			record("glDisableVertexAttribArray " + index);
+		}
+
+		@Override
+		public void glVertexAttribPointer(final int index, final int size,
+				final int type, final boolean normalized, final int stride,
+				final int offset) {
+			record("glVertexAttribPointer " + index + " " + offset);
+		}
+
+		@Override
+		public void glVertexAttribPointer(final int index, final int size,
+				final int type, final boolean normalized, final int stride,
+				final Buffer pointer) {
+			record("glVertexAttribPointer " + index + " @"
+					+ pointer.position());
+		}
+
+		@Override
+		public void glUniform1i(final int location, final int x) {
+			record("glUniform1i " + location + " " + x);
+		}
+
+		@Override
+		public void glUniform3fv(final int location, final int count,
+				final float[] v, final int offset) {
+			record("glUniform3fv " + location);
+		}
+
+		@Override
+		public void glUniformMatrix4fv(final int location, final int count,
+				final boolean transpose, final float[] value,
+				final int offset) {
+			record("glUniformMatrix4fv " + location);
+		}
+
+		@Override
+		public void glClear(final int mask) {
+			record("glClear " + mask);
+		}
+
+		@Override
+		public void glDrawElements(final int mode, final int count,
+				final int type, final int offset) {
+			record("glDrawElements " + count);
+		}
+
+		@Override
+		public void glDrawElements(final int mode, final int count,
+				final int type, final Buffer indices) {
+			record("glDrawElements " + count);
+		}
+
+		@Override
+		public void glFinish() {
+			record("glFinish");
+		}
+	}
+
+	public static void main(final String[] args) {
+		repeatedCallsAreDropped();
+		changesAreForwarded();
+		invalidateForwardsEverything();
+		uniformsAreRememberedPerProgram();
+		untrackedAttributesAreHandled();
+		System.out.println("GlStateTest: OK");
+	}
+
+	private static void repeatedCallsAreDropped() {
+		final RecordingGl recorder = new RecordingGl();
+		final GlState gl = new GlState(recorder);
+
+		for (int i = 0; i < 3; i++) {
+			gl.glUseProgram(5);
+			gl.glActiveTexture(GLES20.GL_TEXTURE0);
+			gl.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+			gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 2);
+			gl.glEnable(GLES20.GL_DEPTH_TEST);
+			gl.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ZERO);
+			gl.glDepthMask(true);
+			gl.glCullFace(GLES20.GL_BACK);
+			gl.glEnableVertexAttribArray(1);
+			gl.glVertexAttribPointer(1, 3, GLES20.GL_FLOAT, false, 32, 12);
+		}
+
+		Check.equal(10, recorder.take().size(), "calls of the first round");
+		Check.equal(10, gl.getIssuedCount(), "issued calls");
+		Check.equal(20, gl.getSkippedCount(), "skipped calls");
+
+		// Draws and clears change no shadowed state, so always go through.
+		gl.resetCounts();
+		gl.glDrawElements(GLES20.GL_TRIANGLES, 36, GLES20.GL_UNSIGNED_SHORT, 0);
+		gl.glDrawElements(GLES20.GL_TRIANGLES, 36, GLES20.GL_UNSIGNED_SHORT, 0);
+		Check.equal(2, recorder.take().size(), "repeated draws");
+		Check.equal(0, gl.getSkippedCount(), "skipped draws");
+	}
+
+	private static void changesAreForwarded() {
+		final RecordingGl recorder = new RecordingGl();
+		final GlState gl = new GlState(recorder);
+
+		gl.glUseProgram(5);
+		gl.glUseProgram(6);
+		gl.glUseProgram(5);
+		Check.equal(3, recorder.take().size(), "alternating programs");
+
+		// Each unit keeps its own texture.
+		gl.glActiveTexture(GLES20.GL_TEXTURE0);
+		gl.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+		gl.glActiveTexture(GLES20.GL_TEXTURE0 + 1);
+		gl.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+		gl.glActiveTexture(GLES20.GL_TEXTURE0);
+		gl.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+		final List<String> calls = recorder.take();
+		Check.equal(5, calls.size(), "texture units");
+		Check.equal("glActiveTexture " + GLES20.GL_TEXTURE0, calls.get(4),
+				"last call");
+
+		gl.glEnable(GLES20.GL_BLEND);
+		gl.glDisable(GLES20.GL_BLEND);
+		gl.glDisable(GLES20.GL_BLEND);
+		Check.equal(2, recorder.take().size(), "blend toggles");
+
+		gl.glEnableVertexAttribArray(3);
+		gl.glDisableVertexAttribArray(3);
+		gl.glEnableVertexAttribArray(3);
+		Check.equal(3, recorder.take().size(), "attribute toggles");
+
+		// The same offset in another buffer is another pointer.
+		gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 2);
+		gl.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 32, 0);
+		gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 4);
+		gl.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 32, 0);
+		gl.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 32, 0);
+		Check.equal(4, recorder.take().size(), "pointers of two buffers");
+
+		// As is the same buffer at another position.
+		final FloatBuffer offsets = FloatBuffer.allocate(12);
+		gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		recorder.take();
+		gl.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 0, offsets);
+		gl.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 0, offsets);
+		offsets.position(3);
+		gl.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 0, offsets);
+		Check.equal(2, recorder.take().size(), "client memory pointers");
+	}
+
+	private static void invalidateForwardsEverything() {
+		final RecordingGl recorder = new RecordingGl();
+		final GlState gl = new GlState(recorder);
+
+		gl.glUseProgram(5);
+		gl.glActiveTexture(GLES20.GL_TEXTURE0);
+		gl.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+		gl.glEnableVertexAttribArray(1);
+		recorder.take();
+
+		gl.invalidateTextures();
+		gl.glUseProgram(5);
+		gl.glActiveTexture(GLES20.GL_TEXTURE0);
+		gl.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+		gl.glEnableVertexAttribArray(1);
+		Check.equal(2, recorder.take().size(), "after invalidateTextures");
+
+		gl.invalidate();
+		gl.glUseProgram(5);
+		gl.glActiveTexture(GLES20.GL_TEXTURE0);
+		gl.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+		gl.glEnableVertexAttribArray(1);
+		Check.equal(4, recorder.take().size(), "after invalidate");
+	}
+
+	private static void uniformsAreRememberedPerProgram() {
+		final RecordingGl recorder = new RecordingGl();
+		final GlState gl = new GlState(recorder);
+		final float[] matrix = new float[16];
+		Matrices.setIdentity(matrix, 0);
+
+		gl.glUseProgram(5);
+		gl.glUniformMatrix4fv(0, 1, false, matrix, 0);
+		gl.glUniformMatrix4fv(0, 1, false, matrix, 0);
+		gl.glUniform1i(1, 0);
+		gl.glUniform1i(1, 0);
+		Check.equal(3, recorder.take().size(), "repeated uniforms");
+
+		matrix[12] = 1.0f;
+		gl.glUniformMatrix4fv(0, 1, false, matrix, 0);
+		gl.glUniform1i(1, 1);
+		Check.equal(2, recorder.take().size(), "changed uniforms");
+
+		// Another program has its own values at the same locations.
+		gl.glUseProgram(6);
+		gl.glUniformMatrix4fv(0, 1, false, matrix, 0);
+		gl.glUseProgram(5);
+		gl.glUniformMatrix4fv(0, 1, false, matrix, 0);
+		Check.equal(3, recorder.take().size(), "uniforms of two programs");
+
+		// Locations of uniforms a program does not use are not remembered.
+		gl.glUniform1i(-1, 0);
+		gl.glUniform1i(-1, 0);
+		Check.equal(2, recorder.take().size(), "unused uniform");
+	}
+
+	private static void untrackedAttributesAreHandled() {
+		final RecordingGl recorder = new RecordingGl();
+		final GlState gl = new GlState(recorder);
+		final FloatBuffer offsets = FloatBuffer.allocate(12);
+
+		// A handle of an attribute the program does not use is dropped.
+		gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		recorder.take();
+		gl.glEnableVertexAttribArray(-1);
+		gl.glDisableVertexAttribArray(-1);
+		gl.glVertexAttribPointer(-1, 3, GLES20.GL_FLOAT, false, 32, 0);
+		gl.glVertexAttribPointer(-1, 3, GLES20.GL_FLOAT, false, 0, offsets);
+		Check.equal(0, recorder.take().size(), "negative attribute calls");
+
+		// Attributes beyond the tracked ones are always forwarded.
+		gl.glEnableVertexAttribArray(8);
+		gl.glEnableVertexAttribArray(8);
+		gl.glDisableVertexAttribArray(8);
+		gl.glDisableVertexAttribArray(8);
+		gl.glVertexAttribPointer(8, 3, GLES20.GL_FLOAT, false, 0, offsets);
+		gl.glVertexAttribPointer(8, 3, GLES20.GL_FLOAT, false, 0, offsets);
+		Check.equal(6, recorder.take().size(), "out of range attribute calls");
+	}
+}
@@ -0,0 +1,152 @@
+package hr.foi.textures.helpers;
+
+import hr.foi.textures.tests.GeneralMatrices;
+
+import java.util.Random;
+
+/**
+ * Times the affine routines of {@link Matrices} against the general 4x4
+ * products of android.opengl.Matrix, as computed by {@link GeneralMatrices},
+ * on the work of one frame: world, model view and model view projection
+ * matrices of the scene nodes, and view space points of batch copies.
+ *
+ * Usage: MatricesBenchmark [frames]
+ *
+ * Prints the nanoseconds per node and per point of both kinds of routines.
+ * Run it on the JVM of a desktop, so the numbers compare the arithmetic,
+ * not the JNI calls android.opengl.Matrix makes on a device.
+ */
+public class MatricesBenchmark {
+
+	private static final int NODES = 64;
+	private static final int POINTS = 512;
+	private static final int RUNS = 5;
+
+	private final float[] mView = new float[16];
+	private final float[] mProjection = new float[16];
+	private final float[] mLocal = new float[NODES * 16];
+	private final float[] mWorld = new float[NODES * 16];
+	private final float[] mModelView = new float[16];
+	private final float[] mModelViewProjection = new float[16];
+
+	private final float[] mX = new float[POINTS];
+	private final float[] mY = new float[POINTS];
+	private final float[] mZ = new float[POINTS];
+	private final float[] mResultX = new float[POINTS];
+	private final float[] mResultY = new float[POINTS];
+	private final float[] mResultZ = new float[POINTS];
+	private final float[] mPoints = new float[POINTS * 4];
+	private final float[] mResult = new float[4];
+
+	/** Sums a value of each frame, so no work can be optimized away. */
+	private float mChecksum;
+
+	public static void main(final String[] args) {
+		final int frames = args.length > 0 ? Integer.parseInt(args[0])
+				: 20000;
+		final MatricesBenchmark benchmark = new MatricesBenchmark();
+
+		// The first runs warm up the compiler, the last one is printed.
+		for (int run = 0; run < RUNS; run++) {
+			final boolean print = run == RUNS - 1;
+			benchmark.time("Nodes, affine", frames, print, true, false);
+			benchmark.time("Nodes, general", frames, print, false, false);
+			benchmark.time("Points, affine", frames, print, true, true);
+			benchmark.time("Points, general", frames, print, false, true);
+		}
+		System.out.println("Checksum " + benchmark.mChecksum);
+	}
+
+	private MatricesBenchmark() {
+		final Random random = new Random(3);
+		for (int i = 0; i < 16; i++) {
+			mView[i] = random.nextFloat();
+			mProjection[i] = random.nextFloat();
+		}
+		mView[3] = 0.0f;
+		mView[7] = 0.0f;
+		mView[11] = 0.0f;
+		mView[15] = 1.0f;
+		Matrices.setIdentity(mWorld, 0);
+
+		for (int node = 0; node < NODES; node++) {
+			Matrices.setTranslateScale(mLocal, node * 16, random.nextFloat(),
+					random.nextFloat(), random.nextFloat(), 0.5f, 0.5f, 0.5f);
+		}
+		for (int i = 0; i < POINTS; i++) {
+			mX[i] = random.nextFloat();
+			mY[i] = random.nextFloat();
+			mZ[i] = random.nextFloat();
+			mPoints[i * 4] = mX[i];
+			mPoints[i * 4 + 1] = mY[i];
+			mPoints[i * 4 + 2] = mZ[i];
+			mPoints[i * 4 + 3] = 1.0f;
+		}
+	}
+
+	private void time(final String name, final int frames,
+			final boolean print, final boolean affine, final boolean points) {
+		final long start = System.nanoTime();
+		for (int frame = 0; frame < frames; frame++) {
+			if (points) {
+				if (affine) {
+					transformPointsAffine();
+				} else {
+					transformPointsGeneral();
+				}
+			} else if (affine) {
+				multiplyNodesAffine();
+			} else {
+				multiplyNodesGeneral();
+			}
+		}
+		final long elapsed = System.nanoTime() - start;
+
+		if (print) {
+			System.out.printf("%-16s %8.2f ns per %s%n", name,
+					(double) elapsed / frames / (points ? POINTS : NODES - 1),
+					points ? "point" : "node");
+		}
+	}
+
+	/**
+	 * Each node as the renderer draws it: the world matrix from its parent,
+	 * then the model view and model view projection matrices.
+	 */
+	private void multiplyNodesAffine() {
+		for (int node = 1; node < NODES; node++) {
+			Matrices.multiplyAffine(mWorld, node * 16, mWorld, (node - 1) / 2
+					* 16, mLocal, node * 16);
+			Matrices.multiplyAffine(mModelView, 0, mView, 0, mWorld,
+					node * 16);
+			Matrices.multiplyByAffine(mModelViewProjection, 0, mProjection,
+					0, mModelView, 0);
+		}
+		mChecksum += mModelViewProjection[14];
+	}
+
+	private void multiplyNodesGeneral() {
+		for (int node = 1; node < NODES; node++) {
+			GeneralMatrices.multiplyMM(mWorld, node * 16, mWorld, (node - 1)
+					/ 2 * 16, mLocal, node * 16);
+			GeneralMatrices.multiplyMM(mModelView, 0, mView, 0, mWorld,
+					node * 16);
+			GeneralMatrices.multiplyMM(mModelViewProjection, 0, mProjection,
+					0, mModelView, 0);
+		}
+		mChecksum += mModelViewProjection[14];
+	}
+
+	private void transformPointsAffine() {
+		Matrices.transformPoints(mView, 0, mX, mY, mZ, mResultX, mResultY,
+				mResultZ, POINTS);
+		mChecksum += mResultZ[POINTS - 1];
+	}
+
+	private void transformPointsGeneral() {
+		for (int i = 0; i < POINTS; i++) {
+			GeneralMatrices.multiplyMV(mResult, 0, mView, 0, mPoints, i * 4);
+		}
+		mChecksum += mResult[2];
+	}
+}
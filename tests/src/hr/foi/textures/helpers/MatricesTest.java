@@ -0,0 +1,262 @@
+package hr.foi.textures.helpers;
+
+import hr.foi.textures.tests.Check;
+import hr.foi.textures.tests.GeneralMatrices;
+
+import java.util.Random;
+
+/**
+ * Checks each routine of {@link Matrices} against the general 4x4 products
+ * of {@link GeneralMatrices}, on random matrices at offsets into larger
+ * arrays, and with the result written over either operand.
+ */
+public class MatricesTest {
+
+	private static final int ROUNDS = 1000;
+
+	/** Largest difference to the general products, relative to 1. */
+	private static final float TOLERANCE = 1e-5f;
+
+	private static final Random RANDOM = new Random(7);
+
+	public static void main(final String[] args) {
+		setIdentity();
+		setTranslateScale();
+		setInverseRotation();
+		multiplyAffine();
+		multiplyByAffine();
+		transformPoints();
+		transformRow();
+		System.out.println("MatricesTest: OK");
+	}
+
+	private static void setIdentity() {
+		final float[] m = new float[20];
+		fillGeneral(m, 4);
+		Matrices.setIdentity(m, 4);
+
+		final float[] product = new float[16];
+		final float[] other = new float[16];
+		fillGeneral(other, 0);
+		GeneralMatrices.multiplyMM(product, 0, m, 4, other, 0);
+		checkEqual(other, 0, product, 0, 16, "identity times a matrix");
+	}
+
+	private static void setTranslateScale() {
+		final float[] translate = new float[16];
+		final float[] scale = new float[16];
+		final float[] expected = new float[16];
+		final float[] actual = new float[19];
+
+		for (int i = 0; i < ROUNDS; i++) {
+			final float x = next();
+			final float y = next();
+			final float z = next();
+			final float scaleX = next();
+			final float scaleY = next();
+			final float scaleZ = next();
+
+			Matrices.setIdentity(translate, 0);
+			translate[12] = x;
+			translate[13] = y;
+			translate[14] = z;
+			Matrices.setIdentity(scale, 0);
+			scale[0] = scaleX;
+			scale[5] = scaleY;
+			scale[10] = scaleZ;
+			GeneralMatrices.multiplyMM(expected, 0, translate, 0, scale, 0);
+
+			Matrices.setTranslateScale(actual, 3, x, y, z, scaleX, scaleY,
+					scaleZ);
+			checkEqual(expected, 0, actual, 3, 16, "translate scale");
+		}
+	}
+
+	private static void setInverseRotation() {
+		final Quaternion rotation = new Quaternion();
+		final float[] m = new float[18];
+		final float[] inverse = new float[20];
+		final float[] product = new float[16];
+		final float[] identity = new float[16];
+		Matrices.setIdentity(identity, 0);
+
+		for (int i = 0; i < ROUNDS; i++) {
+			rotation.setAxisAngle(RANDOM.nextFloat() * 360.0f, 0.48f, 0.6f,
+					0.64f);
+			rotation.toMatrix(m, 2);
+			m[14] = next();
+			m[15] = next();
+			m[16] = next();
+
+			Matrices.setInverseRotation(inverse, 4, m, 2);
+			Check.near(0.0f, inverse[16] * inverse[16] + inverse[17]
+					* inverse[17] + inverse[18] * inverse[18], 0.0f,
+					"translation of the inverse");
+
+			// Without its translation, the matrix times its inverse.
+			m[14] = 0.0f;
+			m[15] = 0.0f;
+			m[16] = 0.0f;
+			GeneralMatrices.multiplyMM(product, 0, m, 2, inverse, 4);
+			checkEqual(identity, 0, product, 0, 16, "inverse rotation");
+		}
+	}
+
+	private static void multiplyAffine() {
+		final float[] lhs = new float[21];
+		final float[] rhs = new float[18];
+		final float[] expected = new float[16];
+		final float[] actual = new float[23];
+		final float[] aliased = new float[21];
+
+		for (int i = 0; i < ROUNDS; i++) {
+			fillAffine(lhs, 5);
+			fillAffine(rhs, 2);
+			GeneralMatrices.multiplyMM(expected, 0, lhs, 5, rhs, 2);
+
+			Matrices.multiplyAffine(actual, 7, lhs, 5, rhs, 2);
+			checkEqual(expected, 0, actual, 7, 16, "affine product");
+
+			System.arraycopy(lhs, 0, aliased, 0, lhs.length);
+			Matrices.multiplyAffine(aliased, 5, aliased, 5, rhs, 2);
+			checkEqual(expected, 0, aliased, 5, 16, "affine product into lhs");
+
+			System.arraycopy(rhs, 2, aliased, 5, 16);
+			Matrices.multiplyAffine(aliased, 5, lhs, 5, aliased, 5);
+			checkEqual(expected, 0, aliased, 5, 16, "affine product into rhs");
+		}
+	}
+
+	private static void multiplyByAffine() {
+		final float[] lhs = new float[17];
+		final float[] rhs = new float[20];
+		final float[] expected = new float[16];
+		final float[] actual = new float[16];
+		final float[] aliased = new float[20];
+
+		for (int i = 0; i < ROUNDS; i++) {
+			fillGeneral(lhs, 1);
+			fillAffine(rhs, 4);
+			GeneralMatrices.multiplyMM(expected, 0, lhs, 1, rhs, 4);
+
+			Matrices.multiplyByAffine(actual, 0, lhs, 1, rhs, 4);
+			checkEqual(expected, 0, actual, 0, 16, "product by affine");
+
+			System.arraycopy(lhs, 1, aliased, 4, 16);
+			Matrices.multiplyByAffine(aliased, 4, aliased, 4, rhs, 4);
+			checkEqual(expected, 0, aliased, 4, 16, "product into lhs");
+
+			System.arraycopy(rhs, 0, aliased, 0, rhs.length);
+			Matrices.multiplyByAffine(aliased, 4, lhs, 1, aliased, 4);
+			checkEqual(expected, 0, aliased, 4, 16, "product into rhs");
+		}
+	}
+
+	private static void transformPoints() {
+		final int count = 50;
+		final float[] m = new float[22];
+		final float[] x = new float[count];
+		final float[] y = new float[count];
+		final float[] z = new float[count];
+		final float[] resultX = new float[count];
+		final float[] resultY = new float[count];
+		final float[] resultZ = new float[count];
+		final float[] point = new float[4];
+		final float[] expected = new float[4 * count];
+
+		for (int i = 0; i < ROUNDS / 10; i++) {
+			fillAffine(m, 6);
+			for (int j = 0; j < count; j++) {
+				x[j] = next();
+				y[j] = next();
+				z[j] = next();
+				point[0] = x[j];
+				point[1] = y[j];
+				point[2] = z[j];
+				point[3] = 1.0f;
+				GeneralMatrices.multiplyMV(expected, j * 4, m, 6, point, 0);
+			}
+
+			Matrices.transformPoints(m, 6, x, y, z, resultX, resultY,
+					resultZ, count);
+			checkPoints(expected, resultX, resultY, resultZ, count,
+					"transformed points");
+
+			// In place, as the arrays may be shared.
+			Matrices.transformPoints(m, 6, x, y, z, x, y, z, count);
+			checkPoints(expected, x, y, z, count, "points in place");
+		}
+	}
+
+	private static void transformRow() {
+		final int count = 50;
+		final float[] m = new float[16];
+		final float[] x = new float[count];
+		final float[] y = new float[count];
+		final float[] z = new float[count];
+		final float[] result = new float[count];
+		final float[] point = new float[4];
+		final float[] expected = new float[4];
+
+		for (int i = 0; i < ROUNDS / 10; i++) {
+			fillAffine(m, 0);
+			for (int j = 0; j < count; j++) {
+				x[j] = next();
+				y[j] = next();
+				z[j] = next();
+			}
+
+			for (int row = 0; row < 3; row++) {
+				Matrices.transformRow(m, 0, row, x, y, z, result, count);
+				for (int j = 0; j < count; j++) {
+					point[0] = x[j];
+					point[1] = y[j];
+					point[2] = z[j];
+					point[3] = 1.0f;
+					GeneralMatrices.multiplyMV(expected, 0, m, 0, point, 0);
+					checkEqual(expected, row, result, j, 1, "row " + row);
+				}
+			}
+		}
+	}
+
+	private static float next() {
+		return RANDOM.nextFloat() * 4.0f - 2.0f;
+	}
+
+	private static void fillGeneral(final float[] m, final int offset) {
+		for (int i = 0; i < 16; i++) {
+			m[offset + i] = next();
+		}
+	}
+
+	private static void fillAffine(final float[] m, final int offset) {
+		fillGeneral(m, offset);
+		m[offset + 3] = 0.0f;
+		m[offset + 7] = 0.0f;
+		m[offset + 11] = 0.0f;
+		m[offset + 15] = 1.0f;
+	}
+
+	private static void checkPoints(final float[] expected, final float[] x,
+			final float[] y, final float[] z, final int count,
+			final String message) {
+		for (int j = 0; j < count; j++) {
+			checkEqual(expected, j * 4, x, j, 1, message + " X");
+			checkEqual(expected, j * 4 + 1, y, j, 1, message + " Y");
+			checkEqual(expected, j * 4 + 2, z, j, 1, message + " Z");
+			Check.near(1.0f, expected[j * 4 + 3], 0.0f, message + " W");
+		}
+	}
+
+	private static void checkEqual(final float[] expected,
+			final int expectedOffset, final float[] actual,
+			final int actualOffset, final int length, final String message) {
+		for (int i = 0; i < length; i++) {
+			final float value = expected[expectedOffset + i];
+			Check.near(value, actual[actualOffset + i], TOLERANCE
+					* Math.max(1.0f, Math.abs(value)), message + ", element "
+					+ i);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package hr.foi.textures.helpers;
+
+import hr.foi.textures.tests.Check;
+
+/**
+ * Checks how {@link MeshBatch#selectLevels} hands copies over to the far
+ * batch: below the far size, back only above the near size, and never the
+ * copies which are culled or behind the camera.
+ */
+public class MeshBatchTest {
+
+	private static final float FAR_SIZE = 24.0f;
+	private static final float NEAR_SIZE = 32.0f;
+
+	/** Keeps every copy except those whose center is at the given Z. */
+	private static class ZFrustum extends Frustum {
+
+		private final float mCulledZ;
+
+		ZFrustum(final float culledZ) {
+			mCulledZ = culledZ;
+		}
+
+		@Override
+		public boolean intersectsSphere(final float x, final float y,
+				final float z, final float radius) {
+			return z != mCulledZ;
+		}
+	}
+
+	public static void main(final String[] args) {
+		// A square one unit in front of its center. The copies rotate
+		// around their center, so their radius is 1 + sqrt(2), and the
+		// diameter on screen is 2 (1 + sqrt(2)) pixelsPerUnit / depth.
+		final float[] positions = { -1.0f, -1.0f, 1.0f, 1.0f, -1.0f, 1.0f,
+				1.0f, 1.0f, 1.0f, -1.0f, 1.0f, 1.0f };
+		final StaticMesh template = new StaticMesh(positions, new float[12],
+				new float[8]);
+
+		// Depths 5, 100 and 50 in front of the camera, 10 behind it, and
+		// one culled.
+		final float[] offsets = { 0.0f, 0.0f, -5.0f, 0.0f, 0.0f, -100.0f,
+				0.0f, 0.0f, -50.0f, 0.0f, 0.0f, 10.0f, 0.0f, 0.0f, -200.0f };
+		final MeshBatch near = new MeshBatch(template, offsets);
+		final MeshBatch far = new MeshBatch(template, offsets);
+		final Frustum frustum = new ZFrustum(-200.0f);
+		final float[] view = new float[16];
+		Matrices.setIdentity(view, 0);
+
+		// The copy at depth 100 is 24.1 pixels large.
+		check(near, far, frustum, view, 500.0f, 0, "above the far size");
+
+		// 19.3 pixels, small.
+		check(near, far, frustum, view, 400.0f, 1, "below the far size");
+
+		// 29.0 pixels, above the far size but still below the near size.
+		check(near, far, frustum, view, 600.0f, 1, "below the near size");
+
+		// 33.8 pixels, large again.
+		check(near, far, frustum, view, 700.0f, 0, "above the near size");
+
+		// 29.0 pixels again, now above the far size of a large copy.
+		check(near, far, frustum, view, 600.0f, 0, "large again");
+
+		// At 4 pixels per unit, every copy in front is small, but neither
+		// the culled one nor the one behind the camera is handed over.
+		check(near, far, frustum, view, 4.0f, 3, "all small");
+		Check.near(5.0f, far.getNearestDepth(view), 0.0f, "nearest far copy");
+
+		// Moving the camera back by 100 makes the copy behind it small too.
+		view[14] = -100.0f;
+		check(near, far, frustum, view, 4.0f, 4, "camera moved");
+
+		final MeshBatch other = new MeshBatch(template, new float[3]);
+		try {
+			near.selectLevels(other, view, 500.0f, FAR_SIZE, NEAR_SIZE);
+			throw new AssertionError("Batches of different sizes");
+		} catch (final IllegalArgumentException e) {
+			// Expected.
+		}
+		System.out.println("MeshBatchTest: OK");
+	}
+
+	/**
+	 * Culls and selects the levels of a frame, and checks how many copies
+	 * each batch draws.
+	 */
+	private static void check(final MeshBatch near, final MeshBatch far,
+			final Frustum frustum, final float[] view,
+			final float pixelsPerUnit, final int expectedFar,
+			final String message) {
+		final int visible = near.cull(frustum);
+		Check.equal(4, visible, message + ", visible");
+
+		final int handedOver = near.selectLevels(far, view, pixelsPerUnit,
+				FAR_SIZE, NEAR_SIZE);
+		Check.equal(expectedFar, handedOver, message + ", far");
+		Check.equal(expectedFar, far.getVisibleCount(), message
+				+ ", drawn far");
+		Check.equal(visible - expectedFar, near.getVisibleCount(), message
+				+ ", drawn near");
+	}
+}
@@ -0,0 +1,67 @@
+package hr.foi.textures.helpers;
+
+import hr.foi.textures.tests.Check;
+
+import java.util.Random;
+
+/**
+ * Checks that updating the mip levels below a changed rectangle of an image,
+ * as {@link TextureAtlas} does, gives the same chain as filtering every level
+ * of the whole image again.
+ */
+public class MipmapsTest {
+
+	private static final int SIZE = 64;
+
+	private static final Random RANDOM = new Random(3);
+
+	public static void main(final String[] args) {
+		final int[][] levels = new int[Mipmaps.getLevelCount(SIZE, SIZE)][];
+		levels[0] = new int[SIZE * SIZE];
+		fill(levels[0], 0, 0, SIZE, SIZE);
+		for (int level = 1; level < levels.length; level++) {
+			final int size = SIZE >> (level - 1);
+			levels[level] = Mipmaps.downsample(levels[level - 1], size, size);
+		}
+		Check.equal(7, levels.length, "levels");
+
+		// Odd bounds, so the rectangle grows on every level.
+		for (int round = 0; round < 20; round++) {
+			int left = RANDOM.nextInt(SIZE);
+			int top = RANDOM.nextInt(SIZE);
+			int right = left + 1 + RANDOM.nextInt(SIZE - left);
+			int bottom = top + 1 + RANDOM.nextInt(SIZE - top);
+			fill(levels[0], left, top, right, bottom);
+
+			for (int level = 1; level < levels.length; level++) {
+				final int size = SIZE >> (level - 1);
+				left /= 2;
+				top /= 2;
+				right = Math.min(size / 2, (right + 1) / 2);
+				bottom = Math.min(size / 2, (bottom + 1) / 2);
+				Mipmaps.downsample(levels[level - 1], size, size,
+						levels[level], left, top, right, bottom);
+			}
+
+			int[] expected = levels[0];
+			for (int level = 1; level < levels.length; level++) {
+				final int size = SIZE >> (level - 1);
+				expected = Mipmaps.downsample(expected, size, size);
+				for (int i = 0; i < expected.length; i++) {
+					Check.equal(expected[i], levels[level][i], "round " + round
+							+ ", level " + level + ", texel " + i);
+				}
+			}
+		}
+		System.out.println("MipmapsTest: OK");
+	}
+
+	private static void fill(final int[] argb, final int left, final int top,
+			final int right, final int bottom) {
+		for (int y = top; y < bottom; y++) {
+			for (int x = left; x < right; x++) {
+				argb[y * SIZE + x] = RANDOM.nextInt();
+			}
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package hr.foi.textures.helpers;
+
+import hr.foi.textures.tests.Check;
+import hr.foi.textures.tests.GeneralMatrices;
+
+import java.util.Random;
+
+/**
+ * Checks the rotations of {@link Quaternion} against their matrices, and the
+ * rotations {@link Arcball} turns drags into.
+ */
+public class QuaternionTest {
+
+	private static final float TOLERANCE = 1e-5f;
+
+	private static final Random RANDOM = new Random(5);
+
+	public static void main(final String[] args) {
+		rotatesAroundAxis();
+		composesLikeMatrices();
+		staysUnitAfterNormalizing();
+		turnsArcs();
+		dragsThroughCenter();
+		dragsAroundEdge();
+		System.out.println("QuaternionTest: OK");
+	}
+
+	private static void rotatesAroundAxis() {
+		final Quaternion q = new Quaternion();
+		q.setAxisAngle(90.0f, 0.0f, 0.0f, 1.0f);
+		checkRotates(q, 1.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f, "X around Z");
+		checkRotates(q, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f, "Z around Z");
+		Check.near(90.0f, q.getAngle(), 1e-3f, "angle");
+
+		q.setAxisAngle(90.0f, 1.0f, 0.0f, 0.0f);
+		checkRotates(q, 0.0f, 1.0f, 0.0f, 0.0f, 0.0f, 1.0f, "Y around X");
+
+		q.setAxisAngle(-90.0f, 0.0f, 1.0f, 0.0f);
+		checkRotates(q, 1.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, "X around -Y");
+
+		q.setIdentity();
+		checkRotates(q, 0.3f, -0.4f, 0.5f, 0.3f, -0.4f, 0.5f, "identity");
+		Check.near(0.0f, q.getAngle(), 1e-3f, "identity angle");
+	}
+
+	private static void composesLikeMatrices() {
+		final Quaternion first = new Quaternion();
+		final Quaternion second = new Quaternion();
+		final float[] firstMatrix = new float[16];
+		final float[] secondMatrix = new float[16];
+		final float[] expected = new float[16];
+		final float[] actual = new float[16];
+
+		for (int i = 0; i < 1000; i++) {
+			randomRotation(first);
+			randomRotation(second);
+			first.toMatrix(firstMatrix, 0);
+			second.toMatrix(secondMatrix, 0);
+			GeneralMatrices.multiplyMM(expected, 0, secondMatrix, 0,
+					firstMatrix, 0);
+
+			// The second rotation applies after the first.
+			first.rotateBy(second);
+			first.toMatrix(actual, 0);
+			for (int j = 0; j < 16; j++) {
+				Check.near(expected[j], actual[j], TOLERANCE, "product " + i
+						+ ", element " + j);
+			}
+		}
+	}
+
+	private static void staysUnitAfterNormalizing() {
+		final Quaternion orientation = new Quaternion();
+		final Quaternion step = new Quaternion();
+		step.setAxisAngle(0.7f, 0.6f, 0.0f, 0.8f);
+
+		// As the renderer does, accumulating many small rotations.
+		for (int i = 1; i <= 100000; i++) {
+			orientation.rotateBy(step);
+			if (i % 32 == 0) {
+				orientation.normalize();
+			}
+		}
+		Check.near(1.0f, length(orientation), 1e-4f, "length");
+
+		final float[] m = new float[16];
+		orientation.toMatrix(m, 0);
+		for (int column = 0; column < 3; column++) {
+			for (int other = 0; other < 3; other++) {
+				float dot = 0.0f;
+				for (int row = 0; row < 3; row++) {
+					dot += m[column * 4 + row] * m[other * 4 + row];
+				}
+				Check.near(column == other ? 1.0f : 0.0f, dot, 1e-4f,
+						"orthonormal columns " + column + ", " + other);
+			}
+		}
+
+		final Quaternion degenerate = new Quaternion();
+		degenerate.setArc(1.0f, 0.0f, 0.0f, -1.0f, 0.0f, 0.0f);
+		Check.near(1.0f, degenerate.getW(), 0.0f, "opposite arc");
+	}
+
+	private static void turnsArcs() {
+		final Quaternion q = new Quaternion();
+		for (int i = 0; i < 1000; i++) {
+			final float[] from = randomUnitVector();
+			final float[] to = randomUnitVector();
+			q.setArc(from[0], from[1], from[2], to[0], to[1], to[2]);
+			checkRotates(q, from[0], from[1], from[2], to[0], to[1], to[2],
+					"arc " + i);
+
+			final double cosine = from[0] * to[0] + from[1] * to[1] + from[2]
+					* to[2];
+			Check.near(Math.toDegrees(Math.acos(cosine)), q.getAngle(), 0.05,
+					"arc angle " + i);
+		}
+	}
+
+	private static void dragsThroughCenter() {
+		final Arcball arcball = new Arcball();
+		arcball.setSize(200, 100);
+		final Quaternion q = new Quaternion();
+
+		// From the center to the right edge, the front turns right.
+		arcball.getRotation(100.0f, 50.0f, 150.0f, 50.0f, q);
+		checkRotates(q, 0.0f, 0.0f, 1.0f, 1.0f, 0.0f, 0.0f, "drag right");
+		Check.near(90.0f, q.getAngle(), 1e-3f, "drag right angle");
+
+		// View Y points down, so dragging up turns the front up.
+		arcball.getRotation(100.0f, 50.0f, 100.0f, 0.0f, q);
+		checkRotates(q, 0.0f, 0.0f, 1.0f, 0.0f, 1.0f, 0.0f, "drag up");
+
+		// Points outside the ball count as its edge.
+		arcball.getRotation(100.0f, 50.0f, 1000.0f, 50.0f, q);
+		Check.near(90.0f, q.getAngle(), 1e-3f, "drag outside");
+
+		// Across nearly the whole ball, nearly half around.
+		arcball.getRotation(51.0f, 50.0f, 149.0f, 50.0f, q);
+		Check.isTrue(q.getAngle() > 150.0f, "drag across: " + q.getAngle());
+
+		arcball.getRotation(120.0f, 70.0f, 120.0f, 70.0f, q);
+		Check.near(0.0f, q.getAngle(), 1e-3f, "no drag");
+	}
+
+	private static void dragsAroundEdge() {
+		final Arcball arcball = new Arcball();
+		arcball.setSize(200, 100);
+		final Quaternion q = new Quaternion();
+
+		// From the right edge to the top edge turns around the view axis.
+		arcball.getRotation(150.0f, 50.0f, 100.0f, 0.0f, q);
+		checkRotates(q, 1.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f, "drag on edge");
+		checkRotates(q, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f, "view axis");
+	}
+
+	private static void randomRotation(final Quaternion q) {
+		final float[] axis = randomUnitVector();
+		q.setAxisAngle(RANDOM.nextFloat() * 720.0f - 360.0f, axis[0],
+				axis[1], axis[2]);
+	}
+
+	private static float[] randomUnitVector() {
+		final float[] v = new float[3];
+		float length;
+		do {
+			for (int i = 0; i < 3; i++) {
+				v[i] = RANDOM.nextFloat() * 2.0f - 1.0f;
+			}
+			length = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2]
+					* v[2]);
+		} while (length < 0.1f || length > 1.0f);
+
+		for (int i = 0; i < 3; i++) {
+			v[i] /= length;
+		}
+		return v;
+	}
+
+	private static float length(final Quaternion q) {
+		return (float) Math.sqrt(q.getX() * q.getX() + q.getY() * q.getY()
+				+ q.getZ() * q.getZ() + q.getW() * q.getW());
+	}
+
+	/**
+	 * Checks that the matrix of a rotation turns one vector into another.
+	 */
+	private static void checkRotates(final Quaternion q, final float x,
+			final float y, final float z, final float expectedX,
+			final float expectedY, final float expectedZ,
+			final String message) {
+		final float[] m = new float[16];
+		final float[] vector = { x, y, z, 0.0f };
+		final float[] result = new float[4];
+		q.toMatrix(m, 0);
+		GeneralMatrices.multiplyMV(result, 0, m, 0, vector, 0);
+
+		Check.near(expectedX, result[0], 1e-4f, message + " X");
+		Check.near(expectedY, result[1], 1e-4f, message + " Y");
+		Check.near(expectedZ, result[2], 1e-4f, message + " Z");
+	}
+}
@@ -0,0 +1,174 @@
+package hr.foi.textures.helpers;
+
+import hr.foi.textures.tests.Check;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks {@link RadixSort} against a comparison sort, also when passes are
+ * skipped, and the order {@link RenderQueue} draws in: front to back first,
+ * then by program and texture, in the order of adding when all are equal.
+ */
+public class RenderQueueTest {
+
+	private static final Random RANDOM = new Random(11);
+
+	public static void main(final String[] args) {
+		sortsLikeComparisonSort();
+		skipsSharedDigits();
+		keepsOrderOfEqualDraws();
+		sortsByDepthFirst();
+		groupsByProgramThenTexture();
+		sortsBehindCameraFirst();
+		System.out.println("RenderQueueTest: OK");
+	}
+
+	private static void sortsLikeComparisonSort() {
+		final RadixSort sort = new RadixSort(16);
+		for (int count = 0; count < 300; count += 7) {
+			final long[] keys = new long[count + 3];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = RANDOM.nextLong();
+			}
+			checkSort(sort, keys, count, "random keys, " + count);
+		}
+	}
+
+	private static void skipsSharedDigits() {
+		final RadixSort sort = new RadixSort(100);
+		final long shared = 0x8123456789ABCDEFL;
+
+		// Keys differing in none to three digits, so the passes which are
+		// not skipped leave the sorted keys in the scratch space as well as
+		// in place.
+		final long[] masks = { 0xFFL, 0xFF00FFL, 0xFF000000FF0000FFL,
+				0xFF00000000000000L, 0L };
+		for (final long mask : masks) {
+			final long[] keys = new long[100];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = shared & ~mask | RANDOM.nextLong() & mask;
+			}
+			checkSort(sort, keys, keys.length,
+					"keys differing in " + Long.toHexString(mask));
+		}
+
+		final long[] one = { shared };
+		checkSort(sort, one, 1, "one key");
+	}
+
+	private static void keepsOrderOfEqualDraws() {
+		// Two groups of draws equal but for the item index, interleaved.
+		// The renderer adds items in ascending order, and gets each group
+		// back in the order of adding.
+		final RenderQueue queue = new RenderQueue(4);
+		for (int item = 0; item < 20; item++) {
+			queue.add(2.5f, 1, item % 2 == 0 ? 7 : 3, item);
+		}
+		queue.sort();
+
+		Check.equal(20, queue.size(), "size");
+		for (int i = 0; i < 10; i++) {
+			Check.equal(i * 2 + 1, queue.getItem(i), "first group " + i);
+			Check.equal(i * 2, queue.getItem(10 + i), "second group " + i);
+		}
+
+		// Each pass must keep the order of keys with an equal digit, or
+		// the order of the earlier, lower digits is lost. Few distinct keys
+		// make most digits equal.
+		final RadixSort sort = new RadixSort(16);
+		final long[] values = { 0x0102030405060708L, 0x0102030405060807L,
+				0x0807060504030201L, 0x0102030405060708L ^ Long.MIN_VALUE,
+				0x01020304L };
+		final long[] keys = new long[1000];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = values[RANDOM.nextInt(values.length)];
+		}
+		checkSort(sort, keys, keys.length, "repeated keys");
+	}
+
+	private static void sortsByDepthFirst() {
+		final RenderQueue queue = new RenderQueue(16);
+		final float[] depths = { 9.0f, 0.25f, 100.0f, 3.0f, 3.5f, 0.001f,
+				42.0f, 1.0f };
+		for (int i = 0; i < depths.length; i++) {
+			// Later draws use lower programs and textures, which must not
+			// move them ahead of nearer ones.
+			queue.add(depths[i], 200 - i * 20, 60000 - i * 1000, i);
+		}
+		queue.sort();
+
+		for (int i = 1; i < queue.size(); i++) {
+			final float previous = depths[queue.getItem(i - 1)];
+			final float current = depths[queue.getItem(i)];
+			Check.isTrue(previous < current, "front to back at " + i + ": "
+					+ previous + " before " + current);
+		}
+	}
+
+	private static void groupsByProgramThenTexture() {
+		// Depths which differ only in bits dropped from the key sort as
+		// equal, and their draws are grouped instead.
+		final float depth = 5.0f;
+		final float nearlyDepth = Float.intBitsToFloat(Float
+				.floatToIntBits(depth) + 1);
+		Check.isTrue(
+				RenderQueue.getKey(depth, 0, 0, 0) == RenderQueue.getKey(
+						nearlyDepth, 0, 0, 0), "dropped depth bits");
+
+		final RenderQueue queue = new RenderQueue(8);
+		queue.add(depth, 2, 5, 0);
+		queue.add(nearlyDepth, 1, 9, 1);
+		queue.add(depth, 2, 1, 2);
+		queue.add(nearlyDepth, 1, 3, 3);
+		queue.add(depth, 0, 0x10004, 4);
+		queue.sort();
+
+		// Only the low 16 bits of the texture handle take part.
+		final int[] expected = { 4, 3, 1, 2, 0 };
+		for (int i = 0; i < expected.length; i++) {
+			Check.equal(expected[i], queue.getItem(i), "grouped draw " + i);
+		}
+	}
+
+	private static void sortsBehindCameraFirst() {
+		final RenderQueue queue = new RenderQueue(8);
+		queue.add(1.0f, 0, 0, 0);
+		queue.add(-3.0f, 0, 0, 1);
+		queue.add(1e-30f, 0, 0, 2);
+		queue.add(Float.NaN, 0, 0, 3);
+		queue.add(-0.0f, 0, 0, 4);
+		queue.add(Float.MAX_VALUE, 0, 0, 5);
+		queue.sort();
+
+		final int[] expected = { 1, 3, 4, 2, 0, 5 };
+		for (int i = 0; i < expected.length; i++) {
+			Check.equal(expected[i], queue.getItem(i), "draw " + i);
+		}
+
+		queue.clear();
+		Check.equal(0, queue.size(), "cleared size");
+	}
+
+	/**
+	 * Sorts the first count keys and compares them with a comparison sort,
+	 * and checks the keys after them are untouched.
+	 */
+	private static void checkSort(final RadixSort sort, final long[] keys,
+			final int count, final String message) {
+		// Flipping the sign bit orders signed like unsigned.
+		final long[] expected = keys.clone();
+		for (int i = 0; i < count; i++) {
+			expected[i] ^= Long.MIN_VALUE;
+		}
+		Arrays.sort(expected, 0, count);
+		for (int i = 0; i < count; i++) {
+			expected[i] ^= Long.MIN_VALUE;
+		}
+
+		sort.sort(keys, count);
+		for (int i = 0; i < keys.length; i++) {
+			Check.equal(expected[i], keys[i], message + ", key " + i);
+		}
+	}
+}
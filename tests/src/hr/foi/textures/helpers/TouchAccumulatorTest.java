@@ -0,0 +1,82 @@
+package hr.foi.textures.helpers;
+
+import hr.foi.textures.tests.Check;
+
+import java.util.Random;
+
+/**
+ * Adds movement to a {@link TouchAccumulator} from one thread while another
+ * drains it, and checks that no movement is lost or counted twice, and that
+ * no drain tears the two components apart.
+ */
+public class TouchAccumulatorTest {
+
+	private static final int ADDS = 2000000;
+
+	public static void main(final String[] args) throws InterruptedException {
+		final TouchAccumulator accumulator = new TouchAccumulator();
+		final long[] produced = new long[2];
+		// Sums of the drained X and Y, the drains, and the torn drains.
+		final long[] drained = new long[4];
+		final boolean[] done = new boolean[1];
+
+		// Every add moves Y by twice X, so every drain whose Y is not twice
+		// its X mixes components of different adds. Whole deltas keep the
+		// float sums exact: the accumulated values are a random walk, far
+		// below the 2^24 floats count exactly to.
+		final Thread producer = new Thread() {
+			@Override
+			public void run() {
+				final Random random = new Random(42);
+				for (int i = 0; i < ADDS; i++) {
+					final int deltaX = random.nextInt(17) - 8;
+					final int deltaY = 2 * deltaX;
+					accumulator.add(deltaX, deltaY);
+					produced[0] += deltaX;
+					produced[1] += deltaY;
+				}
+			}
+		};
+
+		final Thread consumer = new Thread() {
+			@Override
+			public void run() {
+				while (!isDone(done)) {
+					add(drained, accumulator.drain());
+				}
+				add(drained, accumulator.drain());
+			}
+		};
+
+		consumer.start();
+		producer.start();
+		producer.join();
+		synchronized (done) {
+			done[0] = true;
+		}
+		consumer.join();
+
+		Check.equal(produced[0], drained[0], "drained X");
+		Check.equal(produced[1], drained[1], "drained Y");
+		Check.equal(0, drained[3], "torn drains");
+		System.out.println("TouchAccumulatorTest: OK, " + drained[2]
+				+ " drains");
+	}
+
+	private static boolean isDone(final boolean[] done) {
+		synchronized (done) {
+			return done[0];
+		}
+	}
+
+	private static void add(final long[] sums, final long packed) {
+		final float x = TouchAccumulator.x(packed);
+		final float y = TouchAccumulator.y(packed);
+		if (y != 2.0f * x) {
+			sums[3]++;
+		}
+		sums[0] += (long) x;
+		sums[1] += (long) y;
+		sums[2]++;
+	}
+}
@@ -0,0 +1,32 @@
+package hr.foi.textures.tests;
+
+import hr.foi.textures.helpers.FrameStatsTest;
+import hr.foi.textures.helpers.GlStateTest;
+import hr.foi.textures.helpers.MatricesTest;
+import hr.foi.textures.helpers.MeshBatchTest;
+import hr.foi.textures.helpers.MipmapsTest;
+import hr.foi.textures.helpers.QuaternionTest;
+import hr.foi.textures.helpers.RenderQueueTest;
+import hr.foi.textures.helpers.TouchAccumulatorTest;
+
+/**
+ * Runs every plain Java test of the app's helpers, which need no device.
+ *
+ * Usage: AllTests
+ *
+ * Prints one line per passed test, and stops at the first failure with an
+ * error.
+ */
+public class AllTests {
+
+	public static void main(final String[] args) throws Exception {
+		GlStateTest.main(args);
+		TouchAccumulatorTest.main(args);
+		MatricesTest.main(args);
+		RenderQueueTest.main(args);
+		QuaternionTest.main(args);
+		FrameStatsTest.main(args);
+		MeshBatchTest.main(args);
+		MipmapsTest.main(args);
+	}
+}
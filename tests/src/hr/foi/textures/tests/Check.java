@@ -0,0 +1,41 @@
+package hr.foi.textures.tests;
+
+/**
+ * Assertions of the plain Java tests. A failed one throws an
+ * {@link AssertionError}, which ends the test run with an error.
+ */
+public final class Check {
+
+	private Check() {
+	}
+
+	public static void isTrue(final boolean condition, final String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	public static void equal(final long expected, final long actual,
+			final String message) {
+		if (expected != actual) {
+			throw new AssertionError(message + ": expected " + expected
+					+ ", was " + actual);
+		}
+	}
+
+	public static void equal(final Object expected, final Object actual,
+			final String message) {
+		if (expected == null ? actual != null : !expected.equals(actual)) {
+			throw new AssertionError(message + ": expected " + expected
+					+ ", was " + actual);
+		}
+	}
+
+	public static void near(final double expected, final double actual,
+			final double tolerance, final String message) {
+		if (!(Math.abs(expected - actual) <= tolerance)) {
+			throw new AssertionError(message + ": expected " + expected
+					+ ", was " + actual);
+		}
+	}
+}
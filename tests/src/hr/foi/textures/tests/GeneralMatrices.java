@@ -0,0 +1,46 @@
+package hr.foi.textures.tests;
+
+/**
+ * General 4x4 matrix products, computed like multiplyMM and multiplyMV of
+ * android.opengl.Matrix, which cannot run outside a device. The affine
+ * products of the app are checked and measured against these.
+ */
+public final class GeneralMatrices {
+
+	private GeneralMatrices() {
+	}
+
+	/**
+	 * Multiplies two matrices in column-major layout. The result must not be
+	 * either operand, as with multiplyMM.
+	 */
+	public static void multiplyMM(final float[] result,
+			final int resultOffset, final float[] lhs, final int lhsOffset,
+			final float[] rhs, final int rhsOffset) {
+		for (int column = 0; column < 4; column++) {
+			for (int row = 0; row < 4; row++) {
+				float sum = 0.0f;
+				for (int k = 0; k < 4; k++) {
+					sum += lhs[lhsOffset + k * 4 + row]
+							* rhs[rhsOffset + column * 4 + k];
+				}
+				result[resultOffset + column * 4 + row] = sum;
+			}
+		}
+	}
+
+	/**
+	 * Multiplies a matrix by a column vector of four components.
+	 */
+	public static void multiplyMV(final float[] result,
+			final int resultOffset, final float[] lhs, final int lhsOffset,
+			final float[] rhs, final int rhsOffset) {
+		for (int row = 0; row < 4; row++) {
+			float sum = 0.0f;
+			for (int k = 0; k < 4; k++) {
+				sum += lhs[lhsOffset + k * 4 + row] * rhs[rhsOffset + k];
+			}
+			result[resultOffset + row] = sum;
+		}
+	}
+}
@@ -0,0 +1,336 @@
+package hr.foi.textures.tools;
+
+/**
+ * Encodes RGB images into ETC1 blocks. Every 4x4 block is tried in individual
+ * and differential mode, split vertically and horizontally, and the variant
+ * with the smallest squared error is kept.
+ *
+ * Plain Java without any Android or AWT dependencies.
+ */
+public class Etc1Encoder {
+
+	/** Size of one encoded 4x4 block, in bytes. */
+	public static final int BLOCK_SIZE = 8;
+
+	/** Intensity modifiers, {small, large} for each table codeword. */
+	private static final int[][] MODIFIERS = { { 2, 8 }, { 5, 17 }, { 9, 29 },
+			{ 13, 42 }, { 18, 60 }, { 24, 80 }, { 33, 106 }, { 47, 183 } };
+
+	/** Best encoding of one half block. */
+	private static class SubBlock {
+		/** Quantized base color, 4 or 5 bits per channel. */
+		final int[] base = new int[3];
+		int table;
+		final int[] indices = new int[8];
+		long error = Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return Size of the encoded image, in bytes.
+	 */
+	public static int getEncodedSize(final int width, final int height) {
+		return ((width + 3) / 4) * ((height + 3) / 4) * BLOCK_SIZE;
+	}
+
+	/**
+	 * Encodes an image. Pixels outside the image, in partial blocks, repeat
+	 * the nearest edge pixel.
+	 *
+	 * @param argb
+	 *            Pixels, row by row, as 0xAARRGGBB. Alpha is ignored.
+	 * @return The encoded blocks, row by row.
+	 */
+	public static byte[] encode(final int[] argb, final int width,
+			final int height) {
+		final byte[] out = new byte[getEncodedSize(width, height)];
+		final int[][] block = new int[16][3];
+
+		int offset = 0;
+		for (int by = 0; by < height; by += 4) {
+			for (int bx = 0; bx < width; bx += 4) {
+				for (int y = 0; y < 4; y++) {
+					for (int x = 0; x < 4; x++) {
+						final int pixel = argb[Math.min(by + y, height - 1)
+								* width + Math.min(bx + x, width - 1)];
+						block[y * 4 + x][0] = (pixel >> 16) & 0xFF;
+						block[y * 4 + x][1] = (pixel >> 8) & 0xFF;
+						block[y * 4 + x][2] = pixel & 0xFF;
+					}
+				}
+
+				final long bits = encodeBlock(block);
+				for (int i = 0; i < 8; i++) {
+					out[offset++] = (byte) (bits >>> (56 - i * 8));
+				}
+			}
+		}
+
+		return out;
+	}
+
+	/**
+	 * Encodes one 4x4 block.
+	 *
+	 * @param block
+	 *            RGB of the 16 pixels, row by row.
+	 * @return The block as a big endian 64-bit word.
+	 */
+	static long encodeBlock(final int[][] block) {
+		long best = 0;
+		long bestError = Long.MAX_VALUE;
+
+		for (int flip = 0; flip < 2; flip++) {
+			final int[][] first = half(block, flip, 0);
+			final int[][] second = half(block, flip, 1);
+
+			// Individual mode, two 4-bit base colors.
+			final SubBlock individual1 = fit(first, 4);
+			final SubBlock individual2 = fit(second, 4);
+			if (individual1.error + individual2.error < bestError) {
+				bestError = individual1.error + individual2.error;
+				best = pack(individual1, individual2, false, flip);
+			}
+
+			// Differential mode, a 5-bit base color and a 3-bit difference.
+			final SubBlock differential1 = fit(first, 5);
+			final SubBlock differential2 = fit(second, 5);
+			if (!fitsDifference(differential1, differential2)) {
+				// Clamp the second base color towards the first one.
+				for (int c = 0; c < 3; c++) {
+					differential2.base[c] = Math.max(
+							differential1.base[c] - 4,
+							Math.min(differential1.base[c] + 3,
+									differential2.base[c]));
+				}
+				fitTables(second, differential2, 5);
+			}
+			if (differential1.error + differential2.error < bestError) {
+				bestError = differential1.error + differential2.error;
+				best = pack(differential1, differential2, true, flip);
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Returns the pixels of one half block in the pixel index order of ETC1.
+	 */
+	private static int[][] half(final int[][] block, final int flip,
+			final int which) {
+		final int[][] pixels = new int[8][];
+		int i = 0;
+		for (int x = 0; x < 4; x++) {
+			for (int y = 0; y < 4; y++) {
+				final boolean inSecond = flip == 0 ? x >= 2 : y >= 2;
+				if (inSecond == (which == 1)) {
+					pixels[i++] = block[y * 4 + x];
+				}
+			}
+		}
+		return pixels;
+	}
+
+	/**
+	 * Finds a base color and table for a half block. Quantized base colors
+	 * around the average color are tried.
+	 */
+	private static SubBlock fit(final int[][] pixels, final int bits) {
+		final int max = (1 << bits) - 1;
+		final int[] average = new int[3];
+		for (int c = 0; c < 3; c++) {
+			int sum = 0;
+			for (int i = 0; i < 8; i++) {
+				sum += pixels[i][c];
+			}
+			average[c] = Math.round(sum / 8.0f * max / 255.0f);
+		}
+
+		final SubBlock best = new SubBlock();
+		final SubBlock candidate = new SubBlock();
+		for (int dr = -1; dr <= 1; dr++) {
+			for (int dg = -1; dg <= 1; dg++) {
+				for (int db = -1; db <= 1; db++) {
+					candidate.base[0] = clamp(average[0] + dr, 0, max);
+					candidate.base[1] = clamp(average[1] + dg, 0, max);
+					candidate.base[2] = clamp(average[2] + db, 0, max);
+					candidate.error = Long.MAX_VALUE;
+					fitTables(pixels, candidate, bits);
+
+					if (candidate.error < best.error) {
+						System.arraycopy(candidate.base, 0, best.base, 0, 3);
+						System.arraycopy(candidate.indices, 0, best.indices,
+								0, 8);
+						best.table = candidate.table;
+						best.error = candidate.error;
+					}
+				}
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Finds the best table and pixel indices for the base color of a half
+	 * block.
+	 */
+	private static void fitTables(final int[][] pixels,
+			final SubBlock subBlock, final int bits) {
+		final int[] base = new int[3];
+		for (int c = 0; c < 3; c++) {
+			base[c] = expand(subBlock.base[c], bits);
+		}
+
+		subBlock.error = Long.MAX_VALUE;
+		final int[] indices = new int[8];
+		for (int table = 0; table < MODIFIERS.length; table++) {
+			long error = 0;
+			for (int i = 0; i < 8; i++) {
+				long pixelError = Long.MAX_VALUE;
+				for (int index = 0; index < 4; index++) {
+					final int modifier = modifier(table, index);
+					long e = 0;
+					for (int c = 0; c < 3; c++) {
+						final int d = clamp(base[c] + modifier, 0, 255)
+								- pixels[i][c];
+						e += d * d;
+					}
+					if (e < pixelError) {
+						pixelError = e;
+						indices[i] = index;
+					}
+				}
+				error += pixelError;
+			}
+
+			if (error < subBlock.error) {
+				subBlock.error = error;
+				subBlock.table = table;
+				System.arraycopy(indices, 0, subBlock.indices, 0, 8);
+			}
+		}
+	}
+
+	private static boolean fitsDifference(final SubBlock first,
+			final SubBlock second) {
+		for (int c = 0; c < 3; c++) {
+			final int difference = second.base[c] - first.base[c];
+			if (difference < -4 || difference > 3) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long pack(final SubBlock first, final SubBlock second,
+			final boolean differential, final int flip) {
+		long bits = 0;
+
+		for (int c = 0; c < 3; c++) {
+			final int shift = 56 - c * 8;
+			if (differential) {
+				final int difference = (second.base[c] - first.base[c]) & 0x7;
+				bits |= (long) ((first.base[c] << 3) | difference) << shift;
+			} else {
+				bits |= (long) ((first.base[c] << 4) | second.base[c]) << shift;
+			}
+		}
+
+		bits |= (long) first.table << 37;
+		bits |= (long) second.table << 34;
+		bits |= (differential ? 1L : 0L) << 33;
+		bits |= (long) flip << 32;
+
+		// Pixel indices are stored column by column, the most significant
+		// bits in the upper half.
+		int i1 = 0;
+		int i2 = 0;
+		for (int x = 0; x < 4; x++) {
+			for (int y = 0; y < 4; y++) {
+				final boolean inSecond = flip == 0 ? x >= 2 : y >= 2;
+				final int index = inSecond ? second.indices[i2++]
+						: first.indices[i1++];
+				final int bit = x * 4 + y;
+				bits |= (long) (index >> 1) << (bit + 16);
+				bits |= (long) (index & 1) << bit;
+			}
+		}
+
+		return bits;
+	}
+
+	/**
+	 * Decodes an image, used to measure the quality of the encoding.
+	 *
+	 * @return Pixels, row by row, as 0xFFRRGGBB.
+	 */
+	public static int[] decode(final byte[] data, final int width,
+			final int height) {
+		final int[] argb = new int[width * height];
+
+		int offset = 0;
+		for (int by = 0; by < height; by += 4) {
+			for (int bx = 0; bx < width; bx += 4) {
+				long bits = 0;
+				for (int i = 0; i < 8; i++) {
+					bits = (bits << 8) | (data[offset++] & 0xFF);
+				}
+
+				final boolean differential = ((bits >>> 33) & 1) != 0;
+				final boolean flip = ((bits >>> 32) & 1) != 0;
+				final int[][] bases = new int[2][3];
+				for (int c = 0; c < 3; c++) {
+					final int value = (int) (bits >>> (56 - c * 8)) & 0xFF;
+					if (differential) {
+						final int first = value >> 3;
+						final int difference = ((value & 0x7) ^ 0x4) - 0x4;
+						bases[0][c] = expand(first, 5);
+						bases[1][c] = expand(first + difference, 5);
+					} else {
+						bases[0][c] = expand(value >> 4, 4);
+						bases[1][c] = expand(value & 0xF, 4);
+					}
+				}
+				final int[] tables = { (int) (bits >>> 37) & 0x7,
+						(int) (bits >>> 34) & 0x7 };
+
+				for (int x = 0; x < 4; x++) {
+					for (int y = 0; y < 4; y++) {
+						if (bx + x >= width || by + y >= height) {
+							continue;
+						}
+						final int bit = x * 4 + y;
+						final int index = (int) ((bits >>> (bit + 16)) & 1) << 1
+								| (int) ((bits >>> bit) & 1);
+						final int half = (flip ? y >= 2 : x >= 2) ? 1 : 0;
+						final int modifier = modifier(tables[half], index);
+
+						int pixel = 0xFF000000;
+						for (int c = 0; c < 3; c++) {
+							pixel |= clamp(bases[half][c] + modifier, 0, 255) << (16 - c
+									* 8);
+						}
+						argb[(by + y) * width + bx + x] = pixel;
+					}
+				}
+			}
+		}
+
+		return argb;
+	}
+
+	private static int modifier(final int table, final int index) {
+		final int value = MODIFIERS[table][index & 1];
+		return (index & 2) != 0 ? -value : value;
+	}
+
+	/** Extends a 4 or 5 bit channel to 8 bits. */
+	private static int expand(final int value, final int bits) {
+		return bits == 4 ? (value << 4) | value : (value << 3) | (value >> 2);
+	}
+
+	private static int clamp(final int value, final int min, final int max) {
+		return value < min ? min : (value > max ? max : value);
+	}
+}
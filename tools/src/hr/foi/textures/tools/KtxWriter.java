@@ -0,0 +1,60 @@
+package hr.foi.textures.tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Writes compressed 2D textures with a mip chain into KTX containers, in the
+ * layout read by hr.foi.textures.helpers.KtxTexture.
+ */
+public class KtxWriter {
+
+	private static final byte[] IDENTIFIER = { (byte) 0xAB, 'K', 'T', 'X',
+			' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n' };
+
+	private static final int ENDIANNESS = 0x04030201;
+
+	public static final int GL_ETC1_RGB8_OES = 0x8D64;
+	private static final int GL_RGB = 0x1907;
+
+	/**
+	 * Writes a texture. The stream is not closed.
+	 *
+	 * @param levels
+	 *            Compressed data of each mip level, largest first.
+	 */
+	public static void write(final OutputStream out, final int internalFormat,
+			final int width, final int height, final List<byte[]> levels)
+			throws IOException {
+		final ByteBuffer header = ByteBuffer.allocate(13 * 4).order(
+				ByteOrder.LITTLE_ENDIAN);
+		header.putInt(ENDIANNESS);
+		header.putInt(0); // glType, 0 for compressed textures
+		header.putInt(1); // glTypeSize
+		header.putInt(0); // glFormat, 0 for compressed textures
+		header.putInt(internalFormat);
+		header.putInt(GL_RGB);
+		header.putInt(width);
+		header.putInt(height);
+		header.putInt(0); // pixelDepth
+		header.putInt(0); // numberOfArrayElements
+		header.putInt(1); // numberOfFaces
+		header.putInt(levels.size());
+		header.putInt(0); // bytesOfKeyValueData
+
+		out.write(IDENTIFIER);
+		out.write(header.array());
+
+		final ByteBuffer size = ByteBuffer.allocate(4).order(
+				ByteOrder.LITTLE_ENDIAN);
+		for (byte[] level : levels) {
+			size.putInt(0, level.length);
+			out.write(size.array());
+			out.write(level);
+			out.write(new byte[3 - ((level.length + 3) % 4)]);
+		}
+	}
+}
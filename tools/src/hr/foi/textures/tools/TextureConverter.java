@@ -0,0 +1,103 @@
+package hr.foi.textures.tools;
+
+import hr.foi.textures.helpers.Mipmaps;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Converts PNG images into ETC1 compressed KTX files with a full mip chain,
+ * so that the app does not have to decode or generate mipmaps at run time.
+ * The mip levels are filtered in linear light by {@link Mipmaps}, which is
+ * shared with the app and compiled from its sources.
+ *
+ * Usage: TextureConverter input.png... output-directory
+ *
+ * Each input is written to output-directory/name.ktx, and the peak signal to
+ * noise ratio of the base level is printed.
+ */
+public class TextureConverter {
+
+	public static void main(final String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: TextureConverter input.png... "
+					+ "output-directory");
+			System.exit(1);
+		}
+
+		final File outputDirectory = new File(args[args.length - 1]);
+		for (int i = 0; i < args.length - 1; i++) {
+			final File input = new File(args[i]);
+			String name = input.getName();
+			if (name.lastIndexOf('.') > 0) {
+				name = name.substring(0, name.lastIndexOf('.'));
+			}
+
+			final File output = new File(outputDirectory, name + ".ktx");
+			final double psnr = convert(input, output);
+			System.out.printf("%s -> %s, PSNR %.2f dB%n", input, output, psnr);
+		}
+	}
+
+	/**
+	 * Converts one image.
+	 *
+	 * @return Peak signal to noise ratio of the encoded base level, in dB.
+	 */
+	public static double convert(final File input, final File output)
+			throws IOException {
+		final BufferedImage image = ImageIO.read(input);
+		if (image == null) {
+			throw new IOException("Unsupported image: " + input);
+		}
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+		final List<byte[]> levels = new ArrayList<byte[]>();
+		final byte[] base = Etc1Encoder.encode(pixels, width, height);
+		final double psnr = psnr(pixels,
+				Etc1Encoder.decode(base, width, height));
+		levels.add(base);
+
+		while (width > 1 || height > 1) {
+			pixels = Mipmaps.downsample(pixels, width, height);
+			width = Math.max(1, width / 2);
+			height = Math.max(1, height / 2);
+			levels.add(Etc1Encoder.encode(pixels, width, height));
+		}
+
+		final OutputStream out = new FileOutputStream(output);
+		try {
+			KtxWriter.write(out, KtxWriter.GL_ETC1_RGB8_OES, image.getWidth(),
+					image.getHeight(), levels);
+		} finally {
+			out.close();
+		}
+
+		return psnr;
+	}
+
+	private static double psnr(final int[] original, final int[] decoded) {
+		double error = 0;
+		for (int i = 0; i < original.length; i++) {
+			for (int shift = 0; shift < 24; shift += 8) {
+				final int d = ((original[i] >>> shift) & 0xFF)
+						- ((decoded[i] >>> shift) & 0xFF);
+				error += d * d;
+			}
+		}
+
+		final double mse = error / (original.length * 3.0);
+		return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255
+				/ mse);
+	}
+}